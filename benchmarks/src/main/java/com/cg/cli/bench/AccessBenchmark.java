@@ -0,0 +1,62 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+import com.cg.cli.CLIRules;
+
+/**
+ * Reading arguments after parsing, string based versus typed accessors.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class AccessBenchmark {
+
+	CLIParsed parsed;
+
+	@Setup
+	public void setup() throws CLIParsedException {
+		CLIRules rules = new CLIRules("access benchmark");
+		rules.addOptional("batchsize", "5000").asInt();
+		rules.addOptional("threads", "8");
+		rules.addOptional("timeout", "30s").asDuration();
+		parsed = new CLIParsed(rules, new String[] { "--batchsize", "250000", "--threads", "12" });
+	}
+
+	@Benchmark
+	public Integer getIntegerArgument() {
+		return parsed.getIntegerArgument("threads");
+	}
+
+	@Benchmark
+	public int getInt() {
+		return parsed.getInt("batchsize");
+	}
+
+	@Benchmark
+	public Duration getDuration() {
+		return parsed.getDuration("timeout");
+	}
+}
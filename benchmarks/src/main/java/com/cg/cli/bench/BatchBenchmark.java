@@ -0,0 +1,76 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIBatch;
+import com.cg.cli.CLIGrammar;
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+
+/**
+ * Validating 100000 command lines, one parse after the other versus
+ * {@link CLIBatch}. Every 100th line is invalid.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+	@Param({ "100", "1000" })
+	int paramCount;
+
+	CLIGrammar grammar;
+	CLIBatch batch;
+	String[][] lines;
+
+	@Setup
+	public void setup() {
+		grammar = Fixtures.rules(paramCount).compile();
+		batch = new CLIBatch(grammar, System.getenv(), 1024);
+		String[] valid = Fixtures.argv(paramCount, 10);
+		String[] invalid = Arrays.copyOf(valid, valid.length + 1);
+		invalid[valid.length] = "--unknown";
+		lines = new String[100_000][];
+		for (int i = 0; i < lines.length; i++)
+			lines[i] = i % 100 == 0 ? invalid : valid;
+	}
+
+	@Benchmark
+	public long sequential() {
+		long failures = 0;
+		for (String[] argv : lines) {
+			try {
+				new CLIParsed(grammar, argv);
+			} catch (CLIParsedException e) {
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	@Benchmark
+	public long batch() {
+		return batch.failures(Arrays.stream(lines)).count();
+	}
+}
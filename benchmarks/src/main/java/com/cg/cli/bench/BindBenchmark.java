@@ -0,0 +1,68 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIBinder;
+import com.cg.cli.CLIOption;
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+
+/**
+ * Copying a parse result into a config record: by hand with the getters,
+ * versus the cached binder. The parse result is prepared once, only the copy
+ * is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BindBenchmark {
+
+	public record Config(@CLIOption(required = true) String source, @CLIOption(defaultValue = "4") int threads,
+			@CLIOption long size, @CLIOption boolean force, @CLIOption boolean verbose, @CLIOption String user) {
+	}
+
+	CLIBinder<Config> binder;
+	CLIParsed parsed;
+
+	@Setup
+	public void setup() throws CLIParsedException {
+		binder = CLIBinder.of(Config.class);
+		parsed = new CLIParsed(binder.grammar(),
+				new String[] { "--source", "/tmp/x", "--size", "1024", "--force", "--user", "scott" });
+	}
+
+	@Benchmark
+	public Config byName() {
+		return new Config(parsed.getArgument("source"), parsed.getInt("threads"), parsed.getLong("size"),
+				parsed.hasFlag("force"), parsed.hasFlag("verbose"), parsed.getArgument("user"));
+	}
+
+	@Benchmark
+	public Config binder() {
+		return binder.bind(parsed);
+	}
+
+	@Benchmark
+	public Config byClass() {
+		return parsed.bind(Config.class);
+	}
+}
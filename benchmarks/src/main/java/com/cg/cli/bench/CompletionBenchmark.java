@@ -0,0 +1,56 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLICompletion;
+
+/**
+ * One TAB press in a warm JVM: completing an option prefix after a few given
+ * parameters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CompletionBenchmark {
+
+	@Param({ "5", "100", "1000", "10000" })
+	int paramCount;
+
+	CLICompletion completion;
+	String[] argv;
+
+	@Setup
+	public void setup() {
+		completion = Fixtures.rules(paramCount).compile().completion();
+		String[] given = Fixtures.argv(paramCount, Math.min(paramCount, 10));
+		argv = new String[given.length + 1];
+		System.arraycopy(given, 0, argv, 0, given.length);
+		argv[given.length] = "--" + Fixtures.name(paramCount - 1).substring(0, 6);
+	}
+
+	@Benchmark
+	public List<String> complete() {
+		return completion.complete(argv, argv.length - 1);
+	}
+}
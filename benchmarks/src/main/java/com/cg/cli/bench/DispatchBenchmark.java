@@ -0,0 +1,98 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIDispatcher;
+import com.cg.cli.CLIGrammar;
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+import com.cg.cli.CLIRoute;
+import com.cg.cli.CLIRules;
+
+/**
+ * Finding and calling the handler of a parsed command line: hasFlag and
+ * getArgument chains with a switch on the subcommand, versus the dispatch
+ * table. The parse result is prepared once, only the dispatch is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+	public static final class Handlers {
+		@CLIRoute(command = "copy", parameters = { "threads", "source", "force" })
+		public int copy(int threads, String source, boolean force) {
+			return threads + source.length() + (force ? 1 : 0);
+		}
+
+		@CLIRoute(command = "copy", flags = "dry", parameters = { "source" })
+		public int dryCopy(String source) {
+			return source.length();
+		}
+
+		@CLIRoute(command = "list", parameters = { "threads" })
+		public int list(int threads) {
+			return threads;
+		}
+	}
+
+	Handlers handlers = new Handlers();
+	CLIDispatcher dispatcher;
+	CLIParsed parsed;
+
+	@Setup
+	public void setup() throws CLIParsedException {
+		CLIRules rules = Fixtures.rules(10);
+		rules.addOptional("threads", "4").asInt();
+		rules.addSubcommand("copy", "copy", () -> {
+			CLIRules r = new CLIRules("copy");
+			r.addRequired("source");
+			r.addFlag("force");
+			r.addFlag("dry");
+			return r;
+		});
+		rules.addSubcommand("list", "list", () -> new CLIRules("list"));
+		CLIGrammar grammar = rules.compile();
+		dispatcher = new CLIDispatcher(grammar).register(handlers);
+		parsed = new CLIParsed(grammar, new String[] { "--threads", "8", "copy", "--source", "/tmp/x", "--force" });
+	}
+
+	@Benchmark
+	public int byName() {
+		switch (parsed.getSubcommand()) {
+		case "copy":
+			CLIParsed sub = parsed.getSubcommandParsed();
+			if (sub.hasFlag("dry"))
+				return handlers.dryCopy(sub.getArgument("source"));
+			return handlers.copy(parsed.getInt("threads"), sub.getArgument("source"), sub.hasFlag("force"));
+		case "list":
+			return handlers.list(parsed.getInt("threads"));
+		default:
+			return -1;
+		}
+	}
+
+	@Benchmark
+	public int dispatcher() throws Exception {
+		return dispatcher.dispatch(parsed);
+	}
+}
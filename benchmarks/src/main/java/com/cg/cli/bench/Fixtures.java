@@ -0,0 +1,72 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.Random;
+
+import com.cg.cli.CLIRules;
+
+/**
+ * Deterministic rules and argument vectors shared by the benchmarks. All
+ * random choices use a fixed seed, so every run measures the same input.
+ */
+final class Fixtures {
+
+	static final long SEED = 42;
+
+	private Fixtures() {
+	}
+
+	static String name(int i) {
+		return "param" + i;
+	}
+
+	/**
+	 * @return rules with paramCount optional parameters "param0".."paramN", every
+	 *         third parameter is a flag
+	 */
+	static CLIRules rules(int paramCount) {
+		CLIRules rules = new CLIRules("benchmark with " + paramCount + " parameters");
+		for (int i = 0; i < paramCount; i++) {
+			if (i % 3 == 2)
+				rules.addFlag(name(i), "f" + i).setDescription("flag number " + i);
+			else
+				rules.addOptional(name(i), "p" + i, "default" + i).setDescription("parameter number " + i);
+		}
+		return rules;
+	}
+
+	/**
+	 * @return argv with given distinct parameters of {@link #rules(int)}, picked
+	 *         at random with a fixed seed
+	 */
+	static String[] argv(int paramCount, int given) {
+		given = Math.min(given, paramCount);
+		Random random = new Random(SEED);
+		int[] picks = random.ints(0, paramCount).distinct().limit(given).toArray();
+		String[] argv = new String[given * 2];
+		int n = 0;
+		for (int i : picks) {
+			boolean abbreviation = random.nextBoolean();
+			if (i % 3 == 2) {
+				argv[n++] = abbreviation ? "-f" + i : "--" + name(i);
+			} else {
+				argv[n++] = abbreviation ? "-p" + i : "--" + name(i);
+				argv[n++] = "value" + i;
+			}
+		}
+		String[] res = new String[n];
+		System.arraycopy(argv, 0, res, 0, n);
+		return res;
+	}
+
+	static String[] parameterOrder(int paramCount) {
+		String[] order = new String[paramCount];
+		for (int i = 0; i < paramCount; i++)
+			order[i] = name(i);
+		return order;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.ArgumentList;
+import com.cg.cli.CLIGrammar;
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+import com.cg.cli.CLIRules;
+
+/**
+ * Parsing and reading list arguments of different sizes, like the tablenames
+ * parameter in the Example.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ListBenchmark {
+
+	@Param({ "1", "100", "10000" })
+	int listSize;
+
+	CLIGrammar grammar;
+	String[] argv;
+	CLIParsed parsed;
+
+	@Setup
+	public void setup() throws CLIParsedException {
+		CLIRules rules = new CLIRules("list benchmark");
+		rules.addRequired("tablenames", "t").treatArgumentAsList();
+		grammar = rules.compile();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < listSize; i++)
+			sb.append(i == 0 ? "" : ",").append("TABLE_").append(i);
+		argv = new String[] { "--tablenames", sb.toString() };
+		parsed = new CLIParsed(grammar, argv);
+	}
+
+	@Benchmark
+	public CLIParsed parse() throws CLIParsedException {
+		return new CLIParsed(grammar, argv);
+	}
+
+	@Benchmark
+	public String[] getArray() {
+		return parsed.getArray("tablenames");
+	}
+
+	@Benchmark
+	public CharSequence sliceLast() {
+		ArgumentList list = parsed.getList("tablenames");
+		return list.slice(list.size() - 1);
+	}
+
+	@Benchmark
+	public long streamLengths() {
+		return parsed.getList("tablenames").stream().mapToLong(String::length).sum();
+	}
+
+	@Benchmark
+	public long parallelStreamLengths() {
+		return parsed.getList("tablenames").parallelStream().mapToLong(String::length).sum();
+	}
+}
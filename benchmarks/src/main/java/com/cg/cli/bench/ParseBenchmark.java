@@ -0,0 +1,70 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIGrammar;
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+import com.cg.cli.CLIRules;
+
+/**
+ * Parse throughput over the number of declared parameters and the number of
+ * parameters given in argv. Run with "-prof gc" for the allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+	@Param({ "5", "100", "1000", "10000" })
+	int paramCount;
+
+	@Param({ "1", "10", "100" })
+	int given;
+
+	CLIRules rules;
+	CLIGrammar grammar;
+	String[] argv;
+
+	@Setup
+	public void setup() {
+		rules = Fixtures.rules(paramCount);
+		grammar = rules.compile();
+		argv = Fixtures.argv(paramCount, given);
+	}
+
+	@Benchmark
+	public CLIParsed parse() throws CLIParsedException {
+		return new CLIParsed(grammar, argv);
+	}
+
+	@Benchmark
+	public CLIParsed parseRules() throws CLIParsedException {
+		return new CLIParsed(rules, argv);
+	}
+
+	@Benchmark
+	public CLIGrammar buildRules() {
+		return Fixtures.rules(paramCount).compile();
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+import com.cg.cli.CLIRules;
+
+/**
+ * Parsing "-Dkey=value" pairs and reading a few of them: split by hand into a
+ * HashMap, versus a properties parameter of a reused parse result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PropertiesBenchmark {
+
+	@Param({ "10", "1000" })
+	int pairCount;
+
+	String[] argv, keys;
+	CLIParsed parsed;
+
+	@Setup
+	public void setup() {
+		argv = new String[pairCount];
+		for (int i = 0; i < pairCount; i++)
+			argv[i] = "-Dkey" + i + "=value" + i;
+		keys = new String[] { "key0", "key" + pairCount / 2, "key" + (pairCount - 1), "missing" };
+		CLIRules rules = new CLIRules(null);
+		rules.addOptional("define", "D", null).asProperties();
+		parsed = new CLIParsed(rules.compile());
+	}
+
+	@Benchmark
+	public int byHand() {
+		HashMap<String, String> props = new HashMap<>();
+		for (String a : argv) {
+			if (a.startsWith("-D")) {
+				int eq = a.indexOf('=');
+				props.put(a.substring(2, eq), a.substring(eq + 1));
+			}
+		}
+		int n = 0;
+		for (String k : keys) {
+			String v = props.get(k);
+			n += v != null ? v.length() : 0;
+		}
+		return n;
+	}
+
+	@Benchmark
+	public int properties() throws CLIParsedException {
+		parsed.parse(argv);
+		int n = 0;
+		for (String k : keys) {
+			String v = parsed.getProperty("define", k);
+			n += v != null ? v.length() : 0;
+		}
+		return n;
+	}
+}
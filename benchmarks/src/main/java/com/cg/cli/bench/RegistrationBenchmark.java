@@ -0,0 +1,69 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIGrammar;
+import com.cg.cli.CLIRules;
+
+/**
+ * Registering and compiling many generated flags with abbreviations, one by
+ * one and as bulk registration. The time per flag must not grow with the
+ * number of flags.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class RegistrationBenchmark {
+
+	@Param({ "100", "1000", "20000" })
+	int flagCount;
+
+	String[] names, abbreviations;
+
+	@Setup
+	public void setup() {
+		names = new String[flagCount];
+		abbreviations = new String[flagCount];
+		for (int i = 0; i < flagCount; i++) {
+			names[i] = "feature" + i;
+			abbreviations[i] = "f" + i;
+		}
+	}
+
+	@Benchmark
+	public CLIGrammar single() {
+		CLIRules rules = new CLIRules(null);
+		for (int i = 0; i < flagCount; i++)
+			rules.addFlag(names[i], abbreviations[i]);
+		return rules.compile();
+	}
+
+	@Benchmark
+	public CLIGrammar bulk() {
+		CLIRules rules = new CLIRules(null);
+		rules.beginBulk(flagCount);
+		for (int i = 0; i < flagCount; i++)
+			rules.addFlag(names[i], abbreviations[i]);
+		return rules.endBulk();
+	}
+}
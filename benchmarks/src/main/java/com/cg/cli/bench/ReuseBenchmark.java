@@ -0,0 +1,82 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIGrammar;
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+import com.cg.cli.CLIRules;
+
+/**
+ * A new result per parse versus one reused result. Run with "-prof gc", the
+ * reused parse must report gc.alloc.rate.norm of 0 B/op. With arguments
+ * attached to their option ("--jdbc=...", "-t12") one string per argument is
+ * allocated, 192 B/op for the four attached arguments here.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ReuseBenchmark {
+
+	@Param({ "10", "1000" })
+	int paramCount;
+
+	CLIGrammar grammar;
+	CLIParsed reused;
+	String[] argv, attached;
+
+	@Setup
+	public void setup() throws CLIParsedException {
+		CLIRules rules = Fixtures.rules(paramCount);
+		rules.addRequired("jdbc", "j");
+		rules.addOptional("threads", "4").asInt().setMaxValue(64);
+		rules.addOptional("tables", "%").treatArgumentAsList().setValidValues("emp", "dept", "bonus");
+		rules.addOptional("format", "csv").setValidValues("csv", "json");
+		grammar = rules.compile();
+		String[] given = Fixtures.argv(paramCount, 5);
+		String[] typed = { "--jdbc", "jdbc:db", "--threads", "12", "--tables", "emp,dept", "--format", "json" };
+		argv = new String[given.length + typed.length];
+		System.arraycopy(given, 0, argv, 0, given.length);
+		System.arraycopy(typed, 0, argv, given.length, typed.length);
+		String[] glued = { "--jdbc=jdbc:db", "--threads=12", "--tables=emp,dept", "--format=json" };
+		attached = new String[given.length + glued.length];
+		System.arraycopy(given, 0, attached, 0, given.length);
+		System.arraycopy(glued, 0, attached, given.length, glued.length);
+		reused = new CLIParsed(grammar);
+	}
+
+	@Benchmark
+	public CLIParsed parseNew() throws CLIParsedException {
+		return new CLIParsed(grammar, argv);
+	}
+
+	@Benchmark
+	public CLIParsed parseReused() throws CLIParsedException {
+		return reused.parse(argv);
+	}
+
+	@Benchmark
+	public CLIParsed parseReusedAttached() throws CLIParsedException {
+		return reused.parse(attached);
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIGrammar;
+import com.cg.cli.CLIRuleException;
+import com.cg.cli.CLISpec;
+
+/**
+ * Creating the grammar of {@link Fixtures#rules(int)} at startup: declared in
+ * code, parsed from a spec file, and loaded from the grammar cache of the spec.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SpecBenchmark {
+
+	@Param({ "10", "200" })
+	int paramCount;
+
+	Path dir, spec, cache;
+
+	@Setup
+	public void setup() throws IOException, CLIRuleException {
+		StringBuilder sb = new StringBuilder("purpose \"benchmark with " + paramCount + " parameters\"\n");
+		for (int i = 0; i < paramCount; i++) {
+			if (i % 3 == 2)
+				sb.append("flag ").append(Fixtures.name(i)).append(" abbreviation=f").append(i)
+						.append(" description=\"flag number ").append(i).append("\"\n");
+			else
+				sb.append("optional ").append(Fixtures.name(i)).append(" abbreviation=p").append(i)
+						.append(" default=default").append(i).append(" description=\"parameter number ").append(i)
+						.append("\"\n");
+		}
+		dir = Files.createTempDirectory("gcli-spec");
+		spec = Files.write(dir.resolve("bench.spec"), sb.toString().getBytes(StandardCharsets.UTF_8));
+		cache = dir.resolve("bench.spec.bin");
+		CLISpec.load(spec, cache);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(cache);
+		Files.deleteIfExists(spec);
+		Files.deleteIfExists(dir);
+	}
+
+	@Benchmark
+	public CLIGrammar code() {
+		return Fixtures.rules(paramCount).compile();
+	}
+
+	@Benchmark
+	public CLIGrammar spec() throws IOException, CLIRuleException {
+		return CLISpec.read(spec).compile();
+	}
+
+	@Benchmark
+	public CLIGrammar cache() throws IOException, CLIRuleException {
+		return CLISpec.load(spec, cache);
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+import com.cg.cli.CLIRules;
+
+/**
+ * Startup of a tool with subcommandCount subcommands of which one is used:
+ * declaring the rules, compiling them and parsing one call. lazy declares the
+ * subcommands by supplier as intended, eager builds and compiles the rules of
+ * every subcommand up front like a tool without subcommand support. The time
+ * of lazy must grow by far less per unused subcommand.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SubcommandBenchmark {
+
+	@Param({ "10", "100" })
+	int subcommandCount;
+
+	@Param({ "20" })
+	int paramCount;
+
+	String[] names;
+	String[] argv;
+
+	@Setup
+	public void setup() {
+		names = new String[subcommandCount];
+		for (int i = 0; i < subcommandCount; i++)
+			names[i] = "command" + i;
+		String[] sub = Fixtures.argv(paramCount, 5);
+		argv = new String[sub.length + 1];
+		argv[0] = names[subcommandCount / 2];
+		System.arraycopy(sub, 0, argv, 1, sub.length);
+	}
+
+	@Benchmark
+	public CLIParsed lazy() throws CLIParsedException {
+		CLIRules rules = new CLIRules("benchmark with " + subcommandCount + " subcommands");
+		for (String name : names)
+			rules.addSubcommand(name, "subcommand " + name, () -> Fixtures.rules(paramCount));
+		return new CLIParsed(rules.compile(), argv);
+	}
+
+	@Benchmark
+	public CLIParsed eager() throws CLIParsedException {
+		CLIRules rules = new CLIRules("benchmark with " + subcommandCount + " subcommands");
+		for (String name : names) {
+			CLIRules sub = Fixtures.rules(paramCount);
+			sub.compile();
+			rules.addSubcommand(name, "subcommand " + name, () -> sub);
+		}
+		return new CLIParsed(rules.compile(), argv);
+	}
+}
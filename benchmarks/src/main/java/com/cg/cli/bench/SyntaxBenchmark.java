@@ -0,0 +1,69 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+import com.cg.cli.CLIRules;
+
+/**
+ * The same command line in separate tokens, as "--name=value" and as short
+ * options with attached arguments and clustered flags, parsed into a reused
+ * result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SyntaxBenchmark {
+
+	String[] separate, equals, clustered;
+	CLIParsed parsed;
+
+	@Setup
+	public void setup() {
+		CLIRules rules = new CLIRules(null);
+		rules.addFlag("verbose", "v");
+		rules.addFlag("force", "f");
+		rules.addFlag("recursive", "r");
+		rules.addOptional("output", "o", null);
+		rules.addOptional("threads", "t", "1").asInt();
+		parsed = new CLIParsed(rules.compile());
+		separate = new String[] { "-v", "-f", "-r", "--output", "out.txt", "--threads", "8", "in.txt" };
+		equals = new String[] { "--verbose", "--force", "--recursive", "--output=out.txt", "--threads=8", "in.txt" };
+		clustered = new String[] { "-vfro", "out.txt", "-t8", "--", "in.txt" };
+	}
+
+	@Benchmark
+	public CLIParsed separate() throws CLIParsedException {
+		return parsed.parse(separate);
+	}
+
+	@Benchmark
+	public CLIParsed equals() throws CLIParsedException {
+		return parsed.parse(equals);
+	}
+
+	@Benchmark
+	public CLIParsed clustered() throws CLIParsedException {
+		return parsed.parse(clustered);
+	}
+}
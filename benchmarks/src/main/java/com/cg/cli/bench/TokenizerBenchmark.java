@@ -0,0 +1,62 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+import com.cg.cli.CLIRules;
+
+/**
+ * A command string split by a regular expression and parsed as String[],
+ * versus parsed directly with the shell tokenizer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TokenizerBenchmark {
+
+	private static final Pattern BLANKS = Pattern.compile("\\s+");
+
+	CLIParsed parsed;
+	String command;
+
+	@Setup
+	public void setup() {
+		CLIRules rules = Fixtures.rules(10);
+		rules.addRequired("jdbc", "j");
+		rules.addOptional("threads", "4").asInt().setMaxValue(64);
+		rules.addOptional("tables", "%").treatArgumentAsList();
+		parsed = new CLIParsed(rules.compile());
+		command = "--jdbc jdbc:db://host/db --threads 12 --tables emp,dept -p0 a -p1 b -f2";
+	}
+
+	@Benchmark
+	public CLIParsed regexSplit() throws CLIParsedException {
+		return parsed.parse(BLANKS.split(command));
+	}
+
+	@Benchmark
+	public CLIParsed tokenizer() throws CLIParsedException {
+		return parsed.parse((CharSequence) command);
+	}
+}
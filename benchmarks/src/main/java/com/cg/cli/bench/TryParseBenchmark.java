@@ -0,0 +1,68 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIParseResult;
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+import com.cg.cli.CLIRules;
+
+/**
+ * Cost of an invalid command line (a number that is not a number) compared to
+ * a valid one, caught from parse and collected by tryParse.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TryParseBenchmark {
+
+	@Param({ "true", "false" })
+	boolean valid;
+
+	CLIParsed parsed;
+	String[] argv;
+
+	@Setup
+	public void setup() {
+		CLIRules rules = Fixtures.rules(10);
+		rules.addRequired("jdbc", "j");
+		rules.addOptional("threads", "4").asInt().setMaxValue(64);
+		rules.addOptional("format", "csv").setValidValues("csv", "json");
+		parsed = new CLIParsed(rules.compile());
+		argv = new String[] { "--jdbc", "jdbc:db", "--threads", valid ? "12" : "twelve", "--format", "json" };
+	}
+
+	@Benchmark
+	public Object parseCatch() {
+		try {
+			return parsed.parse(argv);
+		} catch (CLIParsedException e) {
+			return e;
+		}
+	}
+
+	@Benchmark
+	public CLIParseResult tryParse() {
+		return parsed.tryParse(argv);
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cg.cli.CLIGrammar;
+import com.cg.cli.CLIParsed;
+import com.cg.cli.CLIParsedException;
+import com.cg.cli.CLIRules;
+
+/**
+ * Validation paths: min/max range checks and valid value lists of different
+ * sizes. The given value is the last valid value, the worst case for a linear
+ * search.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+
+	@Param({ "10", "1000", "10000" })
+	int validValues;
+
+	CLIGrammar grammar;
+	String[] argv;
+
+	@Setup
+	public void setup() {
+		CLIRules rules = new CLIRules("validation benchmark");
+		rules.addRequired("threads", "t").setMinValue(1).setMaxValue(512);
+		rules.addRequired("batchsize", "b").setMinValue(1);
+		String[] values = new String[validValues];
+		for (int i = 0; i < validValues; i++)
+			values[i] = "region-" + i;
+		rules.addRequired("region", "r").setValidValues(values);
+		grammar = rules.compile();
+		argv = new String[] { "--threads", "16", "--batchsize", "5000", "--region", values[validValues - 1] };
+	}
+
+	@Benchmark
+	public CLIParsed validate() throws CLIParsedException {
+		return new CLIParsed(grammar, argv);
+	}
+}
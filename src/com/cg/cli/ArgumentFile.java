@@ -0,0 +1,135 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads "@path" argument files. The file is memory mapped and scanned byte by
+ * byte, every argument is decoded (UTF-8) and handed to the parser as soon as
+ * it is complete. Only the current argument is held on the heap, the file
+ * content is never copied as a whole. In SHELL mode the file is split by
+ * {@link ShellTokenizer}.
+ */
+final class ArgumentFile {
+
+	interface TokenSink {
+		void token(String token) throws CLIParsedException;
+	}
+
+	private ArgumentFile() {
+	}
+
+	/**
+	 * @return the real path of the file, to recognize a file that is included
+	 *         again, or null if it cannot be resolved (read reports why)
+	 */
+	static Path canonical(String path) {
+		try {
+			return Paths.get(path).toRealPath();
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	static void read(String path, CLIRules.ArgumentFiles mode, TokenSink sink) throws CLIParsedException {
+		MappedByteBuffer buf;
+		try {
+			Path file = Paths.get(path);
+			try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+				long size = ch.size();
+				if (size > Integer.MAX_VALUE)
+					throw new CLIParsedException("Argument file " + path + " is bigger than 2GB");
+				buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+		} catch (IOException | RuntimeException e) {
+			throw new CLIParsedException("Cannot read argument file " + path + ": " + e, e);
+		}
+		if (mode == CLIRules.ArgumentFiles.LINES)
+			readLines(buf, sink);
+		else
+			readShell(path, buf, sink);
+	}
+
+	// one argument per line, empty lines are skipped
+	private static void readLines(MappedByteBuffer buf, TokenSink sink) throws CLIParsedException {
+		int limit = buf.limit();
+		int start = 0;
+		for (int i = 0; i <= limit; i++) {
+			if (i == limit || buf.get(i) == '\n') {
+				int end = i;
+				if (end > start && buf.get(end - 1) == '\r')
+					end--;
+				if (end > start)
+					sink.token(decode(buf, start, end));
+				start = i + 1;
+			}
+		}
+	}
+
+	// POSIX shell quoting, see ShellTokenizer
+	private static void readShell(String path, MappedByteBuffer buf, TokenSink sink) throws CLIParsedException {
+		try {
+			new ShellTokenizer().tokenize(new Bytes(buf), 0, buf.limit(),
+					(s, start, end) -> sink.token(decode(s, start, end)));
+		} catch (CLIParsedException e) {
+			if (e.getDiagnostic() != null)
+				throw e;
+			throw new CLIParsedException(e.getMessage() + " in argument file " + path);
+		}
+	}
+
+	private static String decode(MappedByteBuffer buf, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		buf.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// s holds bytes as chars 0..255, see Bytes
+	private static String decode(CharSequence s, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = start; i < end; i++)
+			bytes[i - start] = (byte) s.charAt(i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// The file as chars 0..255, one per byte. UTF-8 encodes every non ASCII
+	// character with bytes >= 0x80 only, so blanks, quotes and escapes are found
+	// without decoding, tokens are decoded when they are complete.
+	private static final class Bytes implements CharSequence {
+		private final MappedByteBuffer buf;
+
+		Bytes(MappedByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		@Override
+		public int length() {
+			return buf.limit();
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buf.get(index) & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return decode(buf, start, end);
+		}
+
+		@Override
+		public String toString() {
+			return decode(buf, 0, buf.limit());
+		}
+	}
+}
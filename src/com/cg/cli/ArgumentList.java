@@ -0,0 +1,246 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable view of a list argument like "A,B,C". The argument is split once
+ * into an index of offsets, elements are cut out of the original string only
+ * on access. Empty elements are skipped.
+ */
+public final class ArgumentList extends AbstractList<String> implements RandomAccess {
+
+	static final ArgumentList EMPTY = new ArgumentList("", new int[0], 0);
+
+	private final String source;
+	// start and end offset of element i at bounds[2*i] and bounds[2*i+1]
+	private final int[] bounds;
+	private final int size;
+
+	private ArgumentList(String source, int[] bounds, int size) {
+		this.source = source;
+		this.bounds = bounds;
+		this.size = size;
+	}
+
+	static ArgumentList split(String s, char separator) {
+		if (s == null || s.length() == 0)
+			return EMPTY;
+		int count = 1;
+		for (int i = 0; i < s.length(); i++)
+			if (s.charAt(i) == separator)
+				count++;
+		int[] bounds = new int[count * 2];
+		int n = 0, start = 0;
+		for (int i = 0; i <= s.length(); i++) {
+			if (i == s.length() || s.charAt(i) == separator) {
+				if (i > start) {
+					bounds[n++] = start;
+					bounds[n++] = i;
+				}
+				start = i + 1;
+			}
+		}
+		return new ArgumentList(s, bounds, n / 2);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String get(int i) {
+		checkIndex(i);
+		return source.substring(bounds[2 * i], bounds[2 * i + 1]);
+	}
+
+	/**
+	 * @return element i as a CharSequence sharing the characters of the original
+	 *         argument, nothing is copied
+	 */
+	public CharSequence slice(int i) {
+		checkIndex(i);
+		return new Slice(source, bounds[2 * i], bounds[2 * i + 1]);
+	}
+
+	public int start(int i) {
+		checkIndex(i);
+		return bounds[2 * i];
+	}
+
+	public int end(int i) {
+		checkIndex(i);
+		return bounds[2 * i + 1];
+	}
+
+	/**
+	 * @return the complete, unsplit argument
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+	}
+
+	@Override
+	public String[] toArray() {
+		String[] arr = new String[size];
+		for (int i = 0; i < size; i++)
+			arr[i] = source.substring(bounds[2 * i], bounds[2 * i + 1]);
+		return arr;
+	}
+
+	@Override
+	public Spliterator<String> spliterator() {
+		return new Splitter(0, size);
+	}
+
+	@Override
+	public Stream<String> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	@Override
+	public Stream<String> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+
+	/**
+	 * @return all elements as slices of the original argument, see
+	 *         {@link #slice(int)}
+	 */
+	public Stream<CharSequence> slices(boolean parallel) {
+		return StreamSupport.stream(new SliceSplitter(0, size), parallel);
+	}
+
+	private abstract class IndexSplitter<T> implements Spliterator<T> {
+		int from;
+		final int to;
+
+		IndexSplitter(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		abstract T element(int i);
+
+		abstract IndexSplitter<T> create(int from, int to);
+
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			if (from >= to)
+				return false;
+			action.accept(element(from++));
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super T> action) {
+			for (; from < to; from++)
+				action.accept(element(from));
+		}
+
+		@Override
+		public Spliterator<T> trySplit() {
+			int mid = (from + to) >>> 1;
+			if (mid <= from)
+				return null;
+			IndexSplitter<T> prefix = create(from, mid);
+			from = mid;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return to - from;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+		}
+	}
+
+	private final class Splitter extends IndexSplitter<String> {
+		Splitter(int from, int to) {
+			super(from, to);
+		}
+
+		@Override
+		String element(int i) {
+			return source.substring(bounds[2 * i], bounds[2 * i + 1]);
+		}
+
+		@Override
+		IndexSplitter<String> create(int from, int to) {
+			return new Splitter(from, to);
+		}
+	}
+
+	private final class SliceSplitter extends IndexSplitter<CharSequence> {
+		SliceSplitter(int from, int to) {
+			super(from, to);
+		}
+
+		@Override
+		CharSequence element(int i) {
+			return new Slice(source, bounds[2 * i], bounds[2 * i + 1]);
+		}
+
+		@Override
+		IndexSplitter<CharSequence> create(int from, int to) {
+			return new SliceSplitter(from, to);
+		}
+	}
+
+	/**
+	 * CharSequence over a range of a String, without copying.
+	 */
+	static final class Slice implements CharSequence {
+		private final String s;
+		private final int start, end;
+
+		Slice(String s, int start, int end) {
+			this.s = s;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= end - start)
+				throw new IndexOutOfBoundsException("index " + index + ", length " + (end - start));
+			return s.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			if (from < 0 || to > end - start || from > to)
+				throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", length " + (end - start));
+			return new Slice(s, start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			return s.substring(start, end);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * All arguments of a repeatable parameter in the order they were given, see
+ * {@link Parameter#repeatable()}. The arguments are appended while parsing and
+ * are the strings of the command line, only the argument of a "-Dkey=value"
+ * token is cut out of it.
+ * <p>
+ * For {@link Parameter#asProperties()} every argument is a "key=value" pair.
+ * The position of '=' and the hash of the key are computed once when the
+ * argument is appended, the keys are kept in an open addressing table, so
+ * {@link #getProperty(String)} is one hash probe sequence and cuts out the
+ * value without scanning. A later pair overrides an earlier one with the same
+ * key, like -D of java.
+ * <p>
+ * The object belongs to its {@link CLIParsed} and is refilled by the next
+ * parse.
+ */
+public final class ArgumentValues extends AbstractList<String> implements RandomAccess {
+
+	static final ArgumentValues EMPTY = new ArgumentValues(false);
+
+	private final boolean properties;
+	private String[] args = new String[4];
+	private int size;
+	// properties only: position of '=' in args[i] (length if there is none), and
+	// the table of the keys, entries are index + 1, 0 is empty
+	private int[] separators;
+	private int[] table;
+	private int mask;
+
+	ArgumentValues(boolean properties) {
+		this.properties = properties;
+		if (properties) {
+			separators = new int[4];
+			table = new int[8];
+			mask = 7;
+		}
+	}
+
+	/**
+	 * @return values holding only arg, for a parameter that was not given but
+	 *         has a default or source
+	 */
+	static ArgumentValues of(boolean properties, String arg) {
+		ArgumentValues v = new ArgumentValues(properties);
+		v.append(arg);
+		return v;
+	}
+
+	void append(String arg) {
+		if (size == args.length)
+			args = Arrays.copyOf(args, size * 2);
+		args[size] = arg;
+		if (properties)
+			index(arg);
+		size++;
+	}
+
+	// finds '=' and hashes the key in one scan, like String.hashCode
+	private void index(String arg) {
+		if (size == separators.length)
+			separators = Arrays.copyOf(separators, size * 2);
+		if ((size + 1) * 2 > table.length)
+			rehash(table.length * 2);
+		int h = 0, sep = 0, n = arg.length();
+		for (char c; sep < n && (c = arg.charAt(sep)) != '='; sep++)
+			h = 31 * h + c;
+		separators[size] = sep;
+		int i = h & mask, e;
+		while ((e = table[i]) != 0) {
+			if (sameKey(e - 1, arg, sep))
+				break;
+			i = (i + 1) & mask;
+		}
+		table[i] = size + 1;
+	}
+
+	private boolean sameKey(int index, String arg, int sep) {
+		return separators[index] == sep && args[index].regionMatches(0, arg, 0, sep);
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		mask = capacity - 1;
+		for (int j = 0; j < size; j++) {
+			// only the last pair of a key is in the table, the others are overridden
+			int i = keyHash(j) & mask, e;
+			while ((e = table[i]) != 0 && !sameKey(e - 1, args[j], separators[j]))
+				i = (i + 1) & mask;
+			table[i] = j + 1;
+		}
+	}
+
+	private int keyHash(int index) {
+		String arg = args[index];
+		int h = 0;
+		for (int j = 0; j < separators[index]; j++)
+			h = 31 * h + arg.charAt(j);
+		return h;
+	}
+
+	void reset() {
+		Arrays.fill(args, 0, size, null);
+		if (properties)
+			Arrays.fill(table, 0);
+		size = 0;
+	}
+
+	@Override
+	public String get(int i) {
+		checkIndex(i);
+		return args[i];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String[] toArray() {
+		return Arrays.copyOf(args, size);
+	}
+
+	/**
+	 * @return the key of pair i of a properties parameter
+	 */
+	public String key(int i) {
+		checkIndex(i);
+		checkProperties();
+		return args[i].substring(0, separators[i]);
+	}
+
+	/**
+	 * @return the value of pair i of a properties parameter, "" for "key" without
+	 *         '='
+	 */
+	public String value(int i) {
+		checkIndex(i);
+		checkProperties();
+		String arg = args[i];
+		int sep = separators[i];
+		return sep < arg.length() ? arg.substring(sep + 1) : "";
+	}
+
+	/**
+	 * @return the value of the last pair with key, or null
+	 */
+	public String getProperty(String key) {
+		checkProperties();
+		if (size == 0)
+			return null;
+		int i = key.hashCode() & mask, e;
+		while ((e = table[i]) != 0) {
+			int index = e - 1;
+			if (separators[index] == key.length() && args[index].startsWith(key)) {
+				String arg = args[index];
+				return key.length() < arg.length() ? arg.substring(key.length() + 1) : "";
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * @return a copy of the pairs in the order of their keys' first appearance,
+	 *         later values override earlier ones
+	 */
+	public Map<String, String> toMap() {
+		checkProperties();
+		LinkedHashMap<String, String> map = new LinkedHashMap<>(size * 2);
+		for (int i = 0; i < size; i++)
+			map.put(key(i), value(i));
+		return map;
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+	}
+
+	private void checkProperties() {
+		if (!properties && this != EMPTY)
+			throw new IllegalStateException("not a properties parameter");
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parses a stream of argv vectors with one shared {@link CLIGrammar}, in
+ * parallel on the common fork/join pool. Every slice of batchSize argv
+ * vectors reuses one {@link CLIParsed}, which is dropped with its slice, so no
+ * parse state stays behind in the pool threads. The input is taken in fixed
+ * size chunks, and parsing runs one chunk ahead of the consumer, so memory
+ * stays bounded by a few chunks no matter how long the input is.
+ */
+public final class CLIBatch {
+
+	/**
+	 * Outcome of one argv, either a value or the problems found by
+	 * {@link CLIParsed#tryParse(String[])}.
+	 */
+	public static final class Result<T> {
+		private final long index;
+		private final String[] args;
+		private final T value;
+		private final List<CLIDiagnostic> diagnostics;
+
+		Result(long index, String[] args, T value, List<CLIDiagnostic> diagnostics) {
+			this.index = index;
+			this.args = args;
+			this.value = value;
+			this.diagnostics = diagnostics;
+		}
+
+		/**
+		 * @return position of the argv in the input, starting with 0
+		 */
+		public long getIndex() {
+			return index;
+		}
+
+		public String[] getArgs() {
+			return args;
+		}
+
+		public boolean isOk() {
+			return diagnostics.isEmpty();
+		}
+
+		/**
+		 * @return the result of the mapper, null for failures
+		 */
+		public T getValue() {
+			return value;
+		}
+
+		/**
+		 * @return all problems of the argv, empty if it was valid
+		 */
+		public List<CLIDiagnostic> getDiagnostics() {
+			return diagnostics;
+		}
+
+		/**
+		 * @return the messages of all problems, separated by "; ", null if the argv
+		 *         was valid
+		 */
+		public String getError() {
+			return diagnostics.isEmpty() ? null : CLIParseResult.message(diagnostics);
+		}
+
+		@Override
+		public String toString() {
+			return index + (isOk() ? ": ok" : ": " + getError());
+		}
+	}
+
+	private final CLIGrammar grammar;
+	private final Map<String, String> env;
+	private final int batchSize;
+
+	public CLIBatch(CLIRules rules) {
+		this(rules.compile(), System.getenv(), 1024);
+	}
+
+	/**
+	 * @param batchSize argv vectors parsed with one parse state, the input is
+	 *                  read in chunks of batchSize times the parallelism of the
+	 *                  common pool
+	 */
+	public CLIBatch(CLIGrammar grammar, Map<String, String> env, int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batchSize must be >= 1: " + batchSize);
+		this.grammar = grammar;
+		this.env = env;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Parses every argv and maps the result. The mapper is called with a
+	 * {@link CLIParsed} that is reused for the next argv of the same slice, it
+	 * must not keep it.
+	 *
+	 * @return a stream with one result per argv, in input order
+	 */
+	public <T> Stream<Result<T>> parse(Stream<String[]> argvs, Function<? super CLIParsed, ? extends T> mapper) {
+		return StreamSupport.stream(new ChunkSpliterator<T>(argvs.iterator(), mapper), false).onClose(argvs::close);
+	}
+
+	/**
+	 * @return the argv vectors that do not parse, in input order
+	 */
+	public Stream<Result<Void>> failures(Stream<String[]> argvs) {
+		return parse(argvs, p -> (Void) null).filter(r -> !r.isOk());
+	}
+
+	public CLIGrammar getGrammar() {
+		return grammar;
+	}
+
+	public Map<String, String> getEnv() {
+		return env;
+	}
+
+	// one argv, processed by a worker thread
+	private <T> Result<T> parseOne(CLIParsed parsed, long index, String[] args,
+			Function<? super CLIParsed, ? extends T> mapper) {
+		try {
+			CLIParseResult r = parsed.tryParse(args);
+			if (!r.isOk())
+				return new Result<T>(index, args, null, r.getDiagnostics());
+			return new Result<T>(index, args, mapper.apply(parsed), Collections.emptyList());
+		} finally {
+			parsed.reset();
+		}
+	}
+
+	// Reads the source in chunks of batchSize * parallelism on the consuming
+	// thread and parses them on the common pool. While one chunk is consumed the
+	// next one is already parsed, so at most three chunks are held in memory.
+	private final class ChunkSpliterator<T> extends Spliterators.AbstractSpliterator<Result<T>> {
+		private final Iterator<String[]> source;
+		private final Function<? super CLIParsed, ? extends T> mapper;
+		private final int chunkSize;
+		private final ArrayDeque<CompletableFuture<Result<T>[]>> running = new ArrayDeque<>();
+		private Result<T>[] current;
+		private int pos;
+		private long next;
+
+		ChunkSpliterator(Iterator<String[]> source, Function<? super CLIParsed, ? extends T> mapper) {
+			super(Long.MAX_VALUE, ORDERED | NONNULL);
+			this.source = source;
+			this.mapper = mapper;
+			this.chunkSize = batchSize * Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Result<T>> action) {
+			while (current == null || pos == current.length) {
+				while (running.size() < 2 && submit())
+					;
+				if (running.isEmpty())
+					return false;
+				current = join(running.poll());
+				pos = 0;
+			}
+			action.accept(current[pos]);
+			current[pos++] = null;
+			return true;
+		}
+
+		private boolean submit() {
+			if (!source.hasNext())
+				return false;
+			String[][] chunk = new String[chunkSize][];
+			int n = 0;
+			while (n < chunkSize && source.hasNext())
+				chunk[n++] = source.next();
+			long base = next;
+			next += n;
+			int size = n;
+			// with a single core handing chunks to other threads only costs
+			if (Runtime.getRuntime().availableProcessors() == 1)
+				running.add(CompletableFuture.completedFuture(parseChunk(chunk, size, base, false)));
+			else
+				running.add(CompletableFuture.supplyAsync(() -> parseChunk(chunk, size, base, true),
+						ForkJoinPool.commonPool()));
+			return true;
+		}
+
+		private Result<T>[] parseChunk(String[][] chunk, int size, long base, boolean parallel) {
+			@SuppressWarnings("unchecked")
+			Result<T>[] res = (Result<T>[]) new Result<?>[size];
+			// one parse state per slice of batchSize argvs, local to the task
+			IntStream slices = IntStream.range(0, (size + batchSize - 1) / batchSize);
+			(parallel ? slices.parallel() : slices).forEach(s -> {
+				CLIParsed parsed = new CLIParsed(grammar, env);
+				for (int i = s * batchSize, end = Math.min(size, i + batchSize); i < end; i++)
+					res[i] = parseOne(parsed, base + i, chunk[i], mapper);
+			});
+			return res;
+		}
+
+		private Result<T>[] join(CompletableFuture<Result<T>[]> f) {
+			try {
+				return f.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				if (e.getCause() instanceof Error)
+					throw (Error) e.getCause();
+				throw e;
+			}
+		}
+	}
+}
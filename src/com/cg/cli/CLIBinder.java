@@ -0,0 +1,252 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binds parse results into instances of a record or class whose fields are
+ * annotated with {@link CLIOption}, the runtime counterpart of the parsers
+ * generated by {@link CLIProcessor}. The rules are derived from the
+ * annotations, see {@link CLIRules#from(Class)}.
+ * <p>
+ * A binder is built once per class and cached. It is a single method handle
+ * that calls the canonical constructor of a record, or the no-arg constructor
+ * and the field setters of a class, with the converted arguments. Parameters
+ * are resolved when the binder is built, so binding does no name lookups and
+ * no reflection. Numbers without argument and default are 0, like in generated
+ * parsers.
+ */
+public final class CLIBinder<T> {
+
+	private static final ClassValue<CLIBinder<?>> BINDERS = new ClassValue<CLIBinder<?>>() {
+		@Override
+		protected CLIBinder<?> computeValue(Class<?> type) {
+			return new CLIBinder<>(type);
+		}
+	};
+
+	private static final MethodType BINDER = MethodType.methodType(Object.class, CLIParsed.class);
+
+	// one annotated field, in declaration order
+	private static final class Option {
+		final Field field;
+		final CLIOption annotation;
+		final String name;
+
+		Option(Field field, CLIOption annotation) {
+			this.field = field;
+			this.annotation = annotation;
+			this.name = annotation.name().isEmpty() ? field.getName() : annotation.name();
+		}
+	}
+
+	private final Class<T> type;
+	private final CLICommand command;
+	private final List<Option> options = new ArrayList<>();
+	private final CLIGrammar grammar;
+	private final MethodHandle handle;
+
+	@SuppressWarnings("unchecked")
+	private CLIBinder(Class<?> type) {
+		this.type = (Class<T>) type;
+		this.command = type.getAnnotation(CLICommand.class);
+		for (Field f : type.getDeclaredFields()) {
+			CLIOption o = f.getAnnotation(CLIOption.class);
+			if (o == null || Modifier.isStatic(f.getModifiers()))
+				continue;
+			if (!type.isRecord() && Modifier.isFinal(f.getModifiers()))
+				throw new IllegalArgumentException("@CLIOption field " + f.getName() + " must not be final");
+			options.add(new Option(f, o));
+		}
+		if (options.isEmpty())
+			throw new IllegalArgumentException("no @CLIOption field in " + type.getName());
+		this.grammar = rules().compile();
+		this.handle = build(grammar);
+	}
+
+	/**
+	 * @return the binder of type, built on first use
+	 * @throws IllegalArgumentException if the annotations of type are invalid
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> CLIBinder<T> of(Class<T> type) {
+		return (CLIBinder<T>) BINDERS.get(type);
+	}
+
+	/**
+	 * @return new rules with one parameter per annotated field, they may be
+	 *         extended before they are compiled
+	 */
+	public CLIRules rules() {
+		CLIRules rules = new CLIRules(command == null || command.value().isEmpty() ? null : command.value());
+		if (command != null)
+			rules.setListSeparator(command.listSeparator());
+		for (Option o : options)
+			add(rules, o);
+		return rules;
+	}
+
+	/**
+	 * @return the compiled rules of {@link #rules()}
+	 */
+	public CLIGrammar grammar() {
+		return grammar;
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	/**
+	 * @return a new instance with the values of parsed. The grammar of parsed
+	 *         needs a parameter of the same name and a matching type for every
+	 *         annotated field.
+	 */
+	public T bind(CLIParsed parsed) {
+		CLIGrammar g = parsed.getGrammar();
+		// binders for other grammars, like the rules of a subcommand, are cached
+		// by the grammar per type
+		MethodHandle h = g == grammar ? handle : g.binder(type);
+		try {
+			return type.cast((Object) h.invokeExact(parsed));
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException("cannot create " + type.getName(), e);
+		}
+	}
+
+	/**
+	 * Parses args with {@link #grammar()} and binds the result.
+	 */
+	public T parse(String[] args) throws CLIParsedException {
+		return bind(new CLIParsed(grammar, args));
+	}
+
+	private static void add(CLIRules rules, Option o) {
+		CLIOption a = o.annotation;
+		Class<?> t = o.field.getType();
+		String abbr = a.abbreviation().isEmpty() ? null : a.abbreviation();
+		String def = a.defaultValue().isEmpty() ? null : a.defaultValue();
+		Parameter p;
+		if (t == boolean.class) {
+			if (a.required() || def != null)
+				throw new IllegalArgumentException("flag " + o.name + " (boolean) cannot be required or have a default");
+			p = rules.addFlag(o.name, abbr);
+		} else if (a.required()) {
+			p = rules.addRequired(o.name, abbr);
+		} else {
+			p = rules.addOptional(o.name, abbr, def);
+		}
+		if (t == int.class)
+			p.asInt();
+		else if (t == long.class)
+			p.asLong();
+		else if (t == double.class)
+			p.asDouble();
+		else if (t == Path.class)
+			p.asPath();
+		else if (t == Duration.class)
+			p.asDuration();
+		else if (t.isEnum())
+			asEnum(p, t);
+		else if (t == String[].class || t == List.class || t == ArgumentList.class)
+			p.treatArgumentAsList();
+		else if (t != boolean.class && t != String.class)
+			throw new IllegalArgumentException("unsupported type " + t.getName() + " for @CLIOption " + o.name);
+		if (a.min() != Long.MIN_VALUE)
+			p.setMinValue(a.min());
+		if (a.max() != Long.MAX_VALUE)
+			p.setMaxValue(a.max());
+		if (a.validValues().length > 0)
+			p.setValidValues(a.validValues());
+		if (a.hideValue())
+			p.hideValue();
+		if (!a.description().isEmpty())
+			p.setDescription(a.description());
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void asEnum(Parameter p, Class<?> t) {
+		p.asEnum((Class) t);
+	}
+
+	// (CLIParsed)Object for the parameters of g
+	MethodHandle build(CLIGrammar g) {
+		try {
+			MethodHandle h = type.isRecord() ? record(g) : pojo(g);
+			return h.asType(BINDER);
+		} catch (IllegalAccessException | NoSuchMethodException | RuntimeException e) {
+			if (e instanceof IllegalArgumentException)
+				throw (IllegalArgumentException) e;
+			throw new IllegalArgumentException("cannot bind " + type.getName() + ": " + e, e);
+		}
+	}
+
+	private MethodHandle extractor(CLIGrammar g, Option o) {
+		Parameter p = g.get(o.name);
+		if (p == null)
+			throw new IllegalArgumentException("no parameter " + o.name + " for field " + o.field.getName() + " of "
+					+ type.getName());
+		return Extractors.of(p, o.field.getType());
+	}
+
+	// new T(c0, c1, ...), components without @CLIOption get 0, false or null
+	private MethodHandle record(CLIGrammar g) throws IllegalAccessException, NoSuchMethodException {
+		RecordComponent[] rc = type.getRecordComponents();
+		Class<?>[] types = new Class<?>[rc.length];
+		for (int i = 0; i < rc.length; i++)
+			types[i] = rc[i].getType();
+		Constructor<T> c = type.getDeclaredConstructor(types);
+		c.setAccessible(true);
+		MethodHandle h = MethodHandles.lookup().unreflectConstructor(c);
+		MethodHandle[] filters = new MethodHandle[rc.length];
+		for (int i = 0; i < rc.length; i++) {
+			Option o = option(rc[i].getName());
+			filters[i] = o != null ? extractor(g, o)
+					: MethodHandles.dropArguments(MethodHandles.zero(types[i]), 0, CLIParsed.class);
+		}
+		h = MethodHandles.filterArguments(h, 0, filters);
+		// every argument of the constructor is computed from the same CLIParsed
+		return MethodHandles.permuteArguments(h, MethodType.methodType(type, CLIParsed.class), new int[rc.length]);
+	}
+
+	// o = new T(); o.f0 = c0; o.f1 = c1; ...
+	private MethodHandle pojo(CLIGrammar g) throws IllegalAccessException, NoSuchMethodException {
+		Constructor<T> c = type.getDeclaredConstructor();
+		c.setAccessible(true);
+		MethodHandle h = MethodHandles.dropArguments(MethodHandles.lookup().unreflectConstructor(c), 0,
+				CLIParsed.class);
+		// (T, CLIParsed)T
+		MethodHandle self = MethodHandles.dropArguments(MethodHandles.identity(type), 1, CLIParsed.class);
+		for (Option o : options) {
+			o.field.setAccessible(true);
+			// (T, CLIParsed)void
+			MethodHandle set = MethodHandles.filterArguments(MethodHandles.lookup().unreflectSetter(o.field), 1,
+					extractor(g, o));
+			h = MethodHandles.foldArguments(MethodHandles.foldArguments(self, set), h);
+		}
+		return h;
+	}
+
+	private Option option(String field) {
+		for (Option o : options)
+			if (o.field.getName().equals(field))
+				return o;
+		return null;
+	}
+}
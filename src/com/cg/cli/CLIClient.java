@@ -0,0 +1,140 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client for a {@link CLIServer}. Sends argv, cwd and environment, copies the
+ * output of the server to stdout/stderr and exits with the exit code of the
+ * server. The socket is taken from the system property "gcli.socket" or the
+ * environment variable GCLI_SOCKET.
+ * <p>
+ * Called as "CLIClient __complete cursorIndex word*" it asks the server for
+ * the completions of argv, see {@link CLICompletion#script(CLICompletion.Shell,
+ * String, String)}.
+ * <p>
+ * The client uses only the protocol constants and string framing of
+ * {@link CLIServer}, no rules are built and no parser classes are loaded. The
+ * protocol is documented in {@link CLIServer} for native clients.
+ */
+public class CLIClient {
+
+	public static void main(String[] args) throws IOException {
+		String socket = System.getProperty("gcli.socket", System.getenv("GCLI_SOCKET"));
+		if (socket == null) {
+			System.err.println("no server socket, set -Dgcli.socket or GCLI_SOCKET");
+			System.exit(1);
+		}
+		if (args.length >= 2 && args[0].equals(CLICompletion.REQUEST)) {
+			String[] argv = Arrays.copyOfRange(args, 2, args.length);
+			for (String s : complete(Paths.get(socket), argv, Integer.parseInt(args[1])))
+				System.out.println(s);
+			return;
+		}
+		int exit = run(Paths.get(socket), args, Paths.get("").toAbsolutePath(), System.getenv(), System.out,
+				System.err);
+		System.out.flush();
+		System.err.flush();
+		System.exit(exit);
+	}
+
+	/**
+	 * Asks the server on socket for the completions of argv[cursorIndex].
+	 */
+	public static List<String> complete(Path socket, String[] argv, int cursorIndex) throws IOException {
+		try (SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+			ch.connect(UnixDomainSocketAddress.of(socket));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+			out.writeByte(CLIServer.COMPLETE);
+			out.writeInt(argv.length);
+			for (String a : argv)
+				CLIServer.writeString(out, a);
+			out.writeInt(cursorIndex);
+			out.flush();
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+			// a completion may be split over frames, the lines are cut at the end.
+			// The answer is bounded like a request.
+			StringBuilder text = new StringBuilder();
+			byte type;
+			while ((type = in.readByte()) != CLIServer.EXIT) {
+				String s = CLIServer.readString(in, CLIServer.MAX_STRING);
+				if (type != CLIServer.STDOUT)
+					continue;
+				if (text.length() + s.length() > CLIServer.MAX_REQUEST)
+					throw new IOException("completions of more than " + CLIServer.MAX_REQUEST + " characters");
+				text.append(s);
+			}
+			in.readInt();
+			List<String> res = new ArrayList<>();
+			for (int start = 0, end; start < text.length(); start = end + 1) {
+				end = text.indexOf("\n", start);
+				if (end < 0)
+					end = text.length();
+				res.add(text.substring(start, end));
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * Runs one request on the server listening on socket.
+	 *
+	 * @return the exit code of the server side handler
+	 */
+	public static int run(Path socket, String[] args, Path cwd, Map<String, String> env, OutputStream stdout,
+			OutputStream stderr) throws IOException {
+		try (SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+			ch.connect(UnixDomainSocketAddress.of(socket));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+			out.writeByte(CLIServer.RUN);
+			out.writeInt(args.length);
+			for (String a : args)
+				CLIServer.writeString(out, a);
+			CLIServer.writeString(out, cwd.toString());
+			out.writeInt(env.size());
+			for (Map.Entry<String, String> e : env.entrySet()) {
+				CLIServer.writeString(out, e.getKey());
+				CLIServer.writeString(out, e.getValue());
+			}
+			out.flush();
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+			byte[] buf = new byte[8192];
+			while (true) {
+				byte type = in.readByte();
+				if (type == CLIServer.EXIT)
+					return in.readInt();
+				OutputStream target = type == CLIServer.STDERR ? stderr : stdout;
+				int len = in.readInt();
+				while (len > 0) {
+					int n = in.read(buf, 0, Math.min(len, buf.length));
+					if (n < 0)
+						throw new IOException("server closed the connection");
+					target.write(buf, 0, n);
+					len -= n;
+				}
+				target.flush();
+			}
+		}
+	}
+}
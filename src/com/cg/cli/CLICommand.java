@@ -0,0 +1,35 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a class or record as command line spec. Its fields annotated with
+ * {@link CLIOption} are the parameters. {@link CLIProcessor} generates a
+ * parser class "&lt;Name&gt;Parser" for it at build time, {@link CLIBinder}
+ * binds into it at runtime.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface CLICommand {
+
+	/**
+	 * @return the purpose, printed by printHelp()
+	 */
+	String value() default "";
+
+	/**
+	 * @return simple name of the generated parser, default is the name of the
+	 *         annotated type plus "Parser"
+	 */
+	String parserName() default "";
+
+	char listSeparator() default ',';
+}
@@ -0,0 +1,307 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shell completion for a {@link CLIGrammar}, created once per grammar by
+ * {@link CLIGrammar#completion()}. All option tokens, valid values and
+ * subcommand names are kept in sorted arrays, so {@link #complete(String[], int)}
+ * is a walk over argv plus binary searches.
+ * <p>
+ * {@link #script(Shell, String)} creates a completion script with everything
+ * compiled in, the shell never starts a JVM for it.
+ * {@link #script(Shell, String, String)} creates a script that asks a program
+ * (usually {@link CLIClient} talking to a warm {@link CLIServer}), for rules
+ * that are only known at runtime.
+ */
+public final class CLICompletion {
+
+	public enum Shell {
+		BASH, ZSH, FISH
+	}
+
+	/** first argument of a program that is asked for completions */
+	public static final String REQUEST = "__complete";
+
+	private final CLIGrammar grammar;
+	// "--name" and "-abbreviation", sorted
+	private final String[] tokens;
+	private final Parameter[] tokenParams;
+	// sorted valid values per parameter index, null if the argument is free
+	private final String[][] values;
+	private final String[] commands;
+
+	CLICompletion(CLIGrammar grammar) {
+		this.grammar = grammar;
+		Parameter[] params = grammar.parameters();
+		List<String> ts = new ArrayList<>(params.length * 2);
+		for (Parameter p : params) {
+			ts.add("--" + p.getName());
+			if (p.getAbbreviation() != null && p.getAbbreviation().length() > 0)
+				ts.add("-" + p.getAbbreviation());
+		}
+		tokens = ts.toArray(new String[ts.size()]);
+		Arrays.sort(tokens);
+		tokenParams = new Parameter[tokens.length];
+		for (int i = 0; i < tokens.length; i++)
+			tokenParams[i] = grammar.lookup(tokens[i]);
+
+		values = new String[params.length][];
+		for (Parameter p : params)
+			values[p.index] = values(p);
+		commands = grammar.subcommandNames();
+	}
+
+	private static String[] values(Parameter p) {
+		String[] v = null;
+		if (!p.getValidValues().isEmpty()) {
+			v = p.getValidValues().toArray(new String[0]);
+		} else if (p.getType() == Parameter.Type.ENUM) {
+			Enum<?>[] constants = p.getEnumType().getEnumConstants();
+			v = new String[constants.length];
+			for (int i = 0; i < v.length; i++)
+				v[i] = constants[i].name();
+		}
+		if (v != null)
+			Arrays.sort(v);
+		return v;
+	}
+
+	/**
+	 * @param argv        the words after the program name
+	 * @param cursorIndex index of the word to complete in argv, argv.length for a
+	 *                    new, empty word
+	 * @return the words that may replace argv[cursorIndex], sorted. Empty if
+	 *         nothing is known, for example for a path argument.
+	 */
+	public List<String> complete(String[] argv, int cursorIndex) {
+		if (cursorIndex < 0 || cursorIndex > argv.length)
+			throw new IllegalArgumentException("cursorIndex " + cursorIndex + " is outside of argv");
+		boolean[] seen = new boolean[values.length];
+		Parameter pending = null;
+		for (int i = 0; i < cursorIndex; i++) {
+			String t = argv[i];
+			if (pending != null) {
+				pending = null;
+				continue;
+			}
+			Parameter p = grammar.lookup(t);
+			if (p == null)
+				p = grammar.lookupPrefix(t);
+			if (p != null) {
+				seen[p.index] = true;
+				if (!p.isFlag())
+					pending = p;
+			} else if (commands.length > 0 && !t.startsWith("-")) {
+				CLIRules.Subcommand sub = grammar.subcommand(t);
+				if (sub == null)
+					return Collections.emptyList();
+				return sub.grammar().completion().complete(Arrays.copyOfRange(argv, i + 1, argv.length),
+						cursorIndex - i - 1);
+			}
+		}
+
+		String word = cursorIndex < argv.length ? argv[cursorIndex] : "";
+		List<String> res = new ArrayList<>();
+		if (pending != null) {
+			String[] v = values[pending.index];
+			if (v == null)
+				return res;
+			// a list completes its last item
+			int head = pending.isArgumentList() ? word.lastIndexOf(grammar.getListSeparator()) + 1 : 0;
+			String prefix = word.substring(0, head);
+			for (int i = first(v, word, head); i < v.length && v[i].regionMatches(0, word, head, word.length() - head); i++)
+				res.add(prefix + v[i]);
+			return res;
+		}
+		if (word.startsWith("-")) {
+			for (int i = first(tokens, word, 0); i < tokens.length && tokens[i].startsWith(word); i++)
+				if (!seen[tokenParams[i].index])
+					res.add(tokens[i]);
+			return res;
+		}
+		if (commands.length > 0) {
+			for (int i = first(commands, word, 0); i < commands.length && commands[i].startsWith(word); i++)
+				res.add(commands[i]);
+			return res;
+		}
+		// nothing typed yet, offer the long names only
+		if (word.isEmpty())
+			for (int i = first(tokens, "--", 0); i < tokens.length && tokens[i].startsWith("--"); i++)
+				if (!seen[tokenParams[i].index])
+					res.add(tokens[i]);
+		return res;
+	}
+
+	// index of the first element >= word[start..]
+	private static int first(String[] sorted, String word, int start) {
+		String prefix = start == 0 ? word : word.substring(start);
+		int i = Arrays.binarySearch(sorted, prefix);
+		return i >= 0 ? i : -i - 1;
+	}
+
+	/**
+	 * Answers a completion request "__complete cursorIndex word*", as sent by the
+	 * scripts of {@link #script(Shell, String, String)}.
+	 *
+	 * @return the completions, one per line
+	 */
+	public String answer(String[] request) {
+		if (request.length < 2 || !REQUEST.equals(request[0]))
+			throw new IllegalArgumentException("not a completion request");
+		int cursor;
+		try {
+			cursor = Integer.parseInt(request[1]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid cursor index " + request[1]);
+		}
+		String[] argv = Arrays.copyOfRange(request, 2, request.length);
+		StringBuilder sb = new StringBuilder();
+		for (String s : complete(argv, Math.min(Math.max(cursor, 0), argv.length)))
+			sb.append(s).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * @return a completion script for command with all names and values compiled
+	 *         in, subcommands included
+	 */
+	public String script(Shell shell, String command) {
+		StringBuilder sb = new StringBuilder(1024);
+		String fn = "_" + command.replaceAll("[^A-Za-z0-9_]", "_");
+		switch (shell) {
+		case BASH:
+			bash(sb, fn);
+			sb.append("complete -o default -F ").append(fn).append(' ').append(command).append('\n');
+			break;
+		case ZSH:
+			// zsh runs the bash function through its bash compatibility layer
+			sb.append("autoload -U +X bashcompinit && bashcompinit\n");
+			bash(sb, fn);
+			sb.append("complete -o default -F ").append(fn).append(' ').append(command).append('\n');
+			break;
+		case FISH:
+			fish(sb, command, null);
+			break;
+		default:
+			throw new IllegalArgumentException("unsupported shell " + shell);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return a completion script for command that calls
+	 *         "completer __complete cursorIndex word*" and offers its output
+	 *         lines
+	 */
+	public static String script(Shell shell, String command, String completer) {
+		String fn = "_" + command.replaceAll("[^A-Za-z0-9_]", "_");
+		switch (shell) {
+		case BASH:
+		case ZSH:
+			return (shell == Shell.ZSH ? "autoload -U +X bashcompinit && bashcompinit\n" : "") + fn + "() {\n"
+					+ "\tlocal IFS=$'\\n'\n" + "\tCOMPREPLY=($(" + completer + " " + REQUEST
+					+ " $((COMP_CWORD-1)) \"${COMP_WORDS[@]:1}\" 2>/dev/null))\n" + "}\n"
+					+ "complete -o default -F " + fn + " " + command + "\n";
+		case FISH:
+			return "function " + fn + "\n" + "\tset -l words (commandline -opc)[2..-1]\n" + "\t" + completer + " "
+					+ REQUEST + " (count $words) $words (commandline -ct) 2>/dev/null\n" + "end\n" + "complete -c "
+					+ command + " -f -a '(" + fn + ")'\n";
+		default:
+			throw new IllegalArgumentException("unsupported shell " + shell);
+		}
+	}
+
+	private void bash(StringBuilder sb, String fn) {
+		List<String[]> subs = new ArrayList<>();
+		for (String c : commands)
+			subs.add(new String[] { c, fn + "_" + c.replaceAll("[^A-Za-z0-9_]", "_") });
+		for (String[] s : subs)
+			grammar.subcommand(s[0]).grammar().completion().bash(sb, s[1]);
+
+		sb.append(fn).append("() {\n");
+		sb.append("\tlocal cur=\"${COMP_WORDS[COMP_CWORD]}\" prev=\"${COMP_WORDS[COMP_CWORD-1]}\"\n");
+		if (!subs.isEmpty()) {
+			// hand over to the function of the first subcommand left of the cursor,
+			// $1 is the index of the first word of this command
+			sb.append("\tlocal i\n\tfor ((i = ${1:-1}; i < COMP_CWORD; i++)); do\n");
+			sb.append("\t\tcase \"${COMP_WORDS[i]}\" in\n");
+			for (String[] s : subs)
+				sb.append("\t\t").append(quote(s[0])).append(") ").append(s[1])
+						.append(" $((i + 1)); return;;\n");
+			sb.append("\t\tesac\n\tdone\n");
+		}
+		sb.append("\tcase \"$prev\" in\n");
+		for (Parameter p : grammar.parameters()) {
+			if (p.isFlag())
+				continue;
+			sb.append("\t").append(quote("--" + p.getName()));
+			if (p.getAbbreviation() != null && p.getAbbreviation().length() > 0)
+				sb.append('|').append(quote("-" + p.getAbbreviation()));
+			sb.append(")\n\t\t");
+			String[] v = values[p.index];
+			if (v != null)
+				sb.append("COMPREPLY=($(compgen -W ").append(quote(String.join(" ", v))).append(" -- \"$cur\"))");
+			else if (p.getType() == Parameter.Type.PATH)
+				sb.append("COMPREPLY=($(compgen -f -- \"$cur\"))");
+			else
+				sb.append("COMPREPLY=()");
+			sb.append("\n\t\treturn;;\n");
+		}
+		sb.append("\tesac\n");
+		List<String> words = new ArrayList<>(Arrays.asList(tokens));
+		words.addAll(Arrays.asList(commands));
+		sb.append("\tCOMPREPLY=($(compgen -W ").append(quote(String.join(" ", words))).append(" -- \"$cur\"))\n");
+		sb.append("}\n");
+	}
+
+	private void fish(StringBuilder sb, String command, String subcommand) {
+		String condition = null;
+		if (subcommand != null)
+			condition = "__fish_seen_subcommand_from " + subcommand;
+		else if (commands.length > 0)
+			condition = "__fish_use_subcommand";
+		for (Parameter p : grammar.parameters()) {
+			sb.append("complete -c ").append(command);
+			if (condition != null)
+				sb.append(" -n ").append(quote(condition));
+			sb.append(" -l ").append(quote(p.getName()));
+			if (p.getAbbreviation() != null && p.getAbbreviation().length() > 0)
+				// fish takes single letters with -s, longer abbreviations as old style options
+				sb.append(p.getAbbreviation().length() == 1 ? " -s " : " -o ").append(quote(p.getAbbreviation()));
+			if (!p.isFlag()) {
+				sb.append(" -r");
+				String[] v = values[p.index];
+				if (v != null)
+					sb.append(" -f -a ").append(quote(String.join(" ", v)));
+				else if (p.getType() != Parameter.Type.PATH)
+					sb.append(" -f");
+			}
+			if (p.getDescription() != null)
+				sb.append(" -d ").append(quote(p.getDescription()));
+			sb.append('\n');
+		}
+		for (String c : commands) {
+			CLIRules.Subcommand sub = grammar.subcommand(c);
+			sb.append("complete -c ").append(command).append(" -n '__fish_use_subcommand' -f -a ").append(quote(c));
+			if (sub.description != null)
+				sb.append(" -d ").append(quote(sub.description));
+			sb.append('\n');
+		}
+		for (String c : commands)
+			grammar.subcommand(c).grammar().completion().fish(sb, command, c);
+	}
+
+	// single quotes for bash, zsh and fish
+	private static String quote(String s) {
+		return "'" + s.replace("'", "'\\''") + "'";
+	}
+}
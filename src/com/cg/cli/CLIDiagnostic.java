@@ -0,0 +1,88 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.io.Serializable;
+
+/**
+ * One problem found while parsing, see {@link CLIParsed#tryParse(String[])}.
+ */
+@SuppressWarnings("serial")
+public final class CLIDiagnostic implements Serializable {
+
+	public enum Kind {
+		/** an option that is not declared, or an ambiguous prefix */
+		UNKNOWN_TOKEN,
+		/** an operand that is not a subcommand */
+		UNKNOWN_COMMAND,
+		/** a parameter given more than once */
+		DUPLICATE,
+		/** a parameter at the end of the command line without its argument */
+		MISSING_ARGUMENT,
+		/** an argument attached to a flag, like --force=yes */
+		UNEXPECTED_ARGUMENT,
+		/** a mandatory parameter that was not given */
+		MISSING_MANDATORY,
+		/** an argument that cannot be converted to the type of its parameter */
+		INVALID_FORMAT,
+		/** a number outside of minValue..maxValue */
+		OUT_OF_RANGE,
+		/** an argument that is not a valid value or does not match the pattern */
+		INVALID_VALUE,
+		/** an argument file that cannot be read */
+		ARGUMENT_FILE,
+		/** a quote without its closing quote in a command string */
+		UNTERMINATED_QUOTE
+	}
+
+	private final Kind kind;
+	private final String parameter, argument;
+	private String message;
+	// set for UNKNOWN_TOKEN only, the suggestions are computed on first use
+	private transient CLIGrammar grammar;
+
+	CLIDiagnostic(Kind kind, String parameter, String argument, String message) {
+		this.kind = kind;
+		this.parameter = parameter;
+		this.argument = argument;
+		this.message = message;
+	}
+
+	CLIDiagnostic(CLIGrammar grammar, String token) {
+		this(Kind.UNKNOWN_TOKEN, null, token, null);
+		this.grammar = grammar;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the name of the parameter, null if the problem is not bound to a
+	 *         declared parameter
+	 */
+	public String getParameter() {
+		return parameter;
+	}
+
+	/**
+	 * @return the offending token or argument, null for a missing one
+	 */
+	public String getArgument() {
+		return argument;
+	}
+
+	public String getMessage() {
+		if (message == null)
+			message = grammar != null ? grammar.unknownMessage(argument) : "Unknown parameter: " + argument;
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return kind + ": " + getMessage();
+	}
+}
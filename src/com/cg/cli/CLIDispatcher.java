@@ -0,0 +1,384 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the handler that belongs to a parse result. A route is a subcommand (or
+ * the command itself) plus the flags that must be given. When several routes
+ * match, the one with the most flags wins.
+ * <p>
+ * Handlers are methods annotated with {@link CLIRoute}, {@link CLIHandler}s or
+ * method handles. Their parameters are bound once to extractors of the
+ * converted arguments, and all routes are compiled into one table per
+ * subcommand, indexed by the bit set of the given route flags. A dispatch reads
+ * those flags, does one table lookup and one method handle call, no names are
+ * looked up.
+ * <p>
+ * The table of a subcommand is built when the subcommand is dispatched for the
+ * first time, so the rules of unused subcommands are never compiled. Unknown
+ * flags and parameters of a subcommand route are reported then.
+ */
+public final class CLIDispatcher implements CLIHandler {
+
+	// (CLIParsed, Context)int, the type of every bound handler
+	private static final MethodType HANDLER = MethodType.methodType(int.class, CLIParsed.class,
+			CLIServer.Context.class);
+	private static final MethodHandle HANDLE;
+	static {
+		try {
+			HANDLE = MethodHandles.lookup().findVirtual(CLIHandler.class, "handle", HANDLER);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	private static final int MAX_ROUTE_FLAGS = 16;
+
+	// a registered handler, bound to the grammar of its command when the table
+	// of the command is built. command is 0 for the command itself, else the
+	// subcommand index + 1.
+	private static final class Definition {
+		final int command;
+		final String commandName;
+		final String[] flags;
+		final MethodHandle handler;
+		final String[] names;
+		final String name;
+
+		Definition(int command, String commandName, String[] flags, MethodHandle handler, String[] names,
+				String name) {
+			this.command = command;
+			this.commandName = commandName;
+			this.flags = flags;
+			this.handler = handler;
+			this.names = names;
+			this.name = name;
+		}
+	}
+
+	private static final class Route {
+		final Parameter[] flags;
+		final MethodHandle handle;
+		final String name;
+
+		Route(Parameter[] flags, MethodHandle handle, String name) {
+			this.flags = flags;
+			this.handle = handle;
+			this.name = name;
+		}
+	}
+
+	// the routes of one command by the bit set of the given route flags. An
+	// entry with a null handle is a conflict, its name is the message.
+	private static final class Table {
+		final Parameter[] flags;
+		final Route[] routes;
+
+		Table(Parameter[] flags, Route[] routes) {
+			this.flags = flags;
+			this.routes = routes;
+		}
+	}
+
+	private final CLIGrammar grammar;
+	private final List<Definition> definitions = new ArrayList<>();
+	// by command, a table is built on the first dispatch to its command
+	private volatile Table[] tables;
+
+	public CLIDispatcher(CLIRules rules) {
+		this(rules.compile());
+	}
+
+	public CLIDispatcher(CLIGrammar grammar) {
+		this.grammar = grammar;
+	}
+
+	public CLIGrammar getGrammar() {
+		return grammar;
+	}
+
+	/**
+	 * Registers all methods of handler annotated with {@link CLIRoute}, static
+	 * methods too. Pass a Class to register only its static methods.
+	 *
+	 * @return this
+	 */
+	public CLIDispatcher register(Object handler) {
+		Class<?> type = handler instanceof Class ? (Class<?>) handler : handler.getClass();
+		boolean found = false;
+		for (Method m : type.getDeclaredMethods()) {
+			CLIRoute route = m.getAnnotation(CLIRoute.class);
+			if (route == null)
+				continue;
+			boolean isStatic = Modifier.isStatic(m.getModifiers());
+			if (!isStatic && handler instanceof Class)
+				throw new IllegalArgumentException("instance method " + m.getName() + " needs an instance of "
+						+ type.getName());
+			MethodHandle h;
+			try {
+				if (!Modifier.isPublic(m.getModifiers()) || !Modifier.isPublic(type.getModifiers()))
+					m.setAccessible(true);
+				h = MethodHandles.lookup().unreflect(m);
+			} catch (IllegalAccessException | RuntimeException e) {
+				throw new IllegalArgumentException("cannot access handler " + m, e);
+			}
+			if (!isStatic)
+				h = h.bindTo(handler);
+			String name = (type.isAnonymousClass() ? type.getName() : type.getSimpleName()) + "." + m.getName();
+			add(route.command(), route.flags(), h, parameterNames(m, route), name);
+			found = true;
+		}
+		if (!found)
+			throw new IllegalArgumentException("no @CLIRoute method in " + type.getName());
+		return this;
+	}
+
+	/**
+	 * Registers a handler that gets the parse result as it is.
+	 *
+	 * @param command subcommand, "" for the command itself
+	 * @param flags   flags that must be given
+	 * @return this
+	 */
+	public CLIDispatcher register(String command, String[] flags, CLIHandler handler) {
+		add(command, flags, HANDLE.bindTo(handler), new String[] { "", "" }, "handler for " + route(command, flags));
+		return this;
+	}
+
+	/**
+	 * Registers a method handle, parameters has one name per parameter of the
+	 * handle ("" for CLIParsed and CLIServer.Context parameters).
+	 *
+	 * @return this
+	 */
+	public CLIDispatcher register(String command, String[] flags, MethodHandle handler, String... parameters) {
+		add(command, flags, handler, parameters, handler.toString());
+		return this;
+	}
+
+	private static String[] parameterNames(Method m, CLIRoute route) {
+		if (route.parameters().length > 0) {
+			if (route.parameters().length != m.getParameterCount())
+				throw new IllegalArgumentException("@CLIRoute of " + m.getName() + " names "
+						+ route.parameters().length + " parameters, the method has " + m.getParameterCount());
+			return route.parameters();
+		}
+		java.lang.reflect.Parameter[] ps = m.getParameters();
+		String[] names = new String[ps.length];
+		for (int i = 0; i < ps.length; i++) {
+			Class<?> t = ps[i].getType();
+			if (t == CLIParsed.class || t == CLIServer.Context.class)
+				names[i] = "";
+			else if (ps[i].isNamePresent())
+				names[i] = ps[i].getName();
+			else
+				throw new IllegalArgumentException("parameter names of " + m.getName()
+						+ " are unknown, compile with -parameters or use @CLIRoute(parameters = ...)");
+		}
+		return names;
+	}
+
+	private synchronized void add(String command, String[] flags, MethodHandle handler, String[] names, String name) {
+		int c = 0;
+		if (command != null && !command.isEmpty()) {
+			CLIRules.Subcommand sub = grammar.hasSubcommands() ? grammar.subcommand(command) : null;
+			if (sub == null)
+				throw new IllegalArgumentException("unknown subcommand: " + command);
+			c = sub.index + 1;
+		}
+		for (Definition d : definitions)
+			if (d.command == c && sameFlags(d.flags, flags))
+				throw new IllegalArgumentException(route(command, flags) + " is already handled by " + d.name);
+		Definition d = new Definition(c, command, flags.clone(), handler, names, name);
+		// routes of the command itself are checked now, the grammar is compiled
+		if (c == 0)
+			route(d, grammar);
+		definitions.add(d);
+		tables = null;
+	}
+
+	private static boolean sameFlags(String[] a, String[] b) {
+		return Arrays.asList(a).containsAll(Arrays.asList(b)) && Arrays.asList(b).containsAll(Arrays.asList(a));
+	}
+
+	// d bound to g, the grammar of its command
+	private Route route(Definition d, CLIGrammar g) {
+		Parameter[] fs = new Parameter[d.flags.length];
+		for (int i = 0; i < fs.length; i++) {
+			fs[i] = g.get(d.flags[i]);
+			if (fs[i] == null || !fs[i].isFlag())
+				throw new IllegalArgumentException("not a flag of " + route(d.commandName, null) + ": " + d.flags[i]);
+		}
+		return new Route(fs, bind(d.handler, d.names, g, d.command > 0, d.name), d.name);
+	}
+
+	private static String route(String command, String[] flags) {
+		String s = command == null || command.isEmpty() ? "the command" : "command " + command;
+		if (flags != null && flags.length > 0)
+			s += " with --" + String.join(" --", flags);
+		return s;
+	}
+
+	// adapts handler to (CLIParsed, Context)int, every parameter gets its
+	// extractor with the Parameter bound
+	private MethodHandle bind(MethodHandle handler, String[] names, CLIGrammar g, boolean subcommand, String name) {
+		MethodType type = handler.type();
+		if (names.length != type.parameterCount())
+			throw new IllegalArgumentException(names.length + " parameter names for " + type.parameterCount()
+					+ " parameters of " + name);
+		MethodHandle[] filters = new MethodHandle[names.length];
+		int[] reorder = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			Class<?> t = type.parameterType(i);
+			if (t == CLIServer.Context.class) {
+				filters[i] = MethodHandles.identity(CLIServer.Context.class);
+				reorder[i] = 1;
+			} else if (t == CLIParsed.class) {
+				filters[i] = MethodHandles.identity(CLIParsed.class);
+			} else {
+				Parameter p = g.get(names[i]);
+				MethodHandle ex;
+				if (p != null) {
+					ex = Extractors.of(p, t);
+					if (subcommand)
+						ex = MethodHandles.filterArguments(ex, 0, Extractors.SUBCOMMAND);
+				} else if (subcommand && (p = grammar.get(names[i])) != null) {
+					// a parameter of the command itself
+					ex = Extractors.of(p, t);
+				} else {
+					throw new IllegalArgumentException("unknown parameter " + names[i] + " in " + name);
+				}
+				filters[i] = ex;
+			}
+		}
+		MethodHandle h = MethodHandles.filterArguments(handler, 0, filters);
+		if (type.returnType() == void.class)
+			h = MethodHandles.filterReturnValue(h, MethodHandles.constant(int.class, 0));
+		else if (type.returnType() != int.class)
+			throw new IllegalArgumentException("a handler returns int or void: " + name);
+		return MethodHandles.permuteArguments(h, HANDLER, reorder);
+	}
+
+	// the table of command c, g is the grammar of the command
+	private Table table(int c, CLIGrammar g) {
+		Table[] ts = tables;
+		Table t = ts != null ? ts[c] : null;
+		if (t == null) {
+			synchronized (this) {
+				ts = tables;
+				if (ts == null) {
+					ts = new Table[grammar.hasSubcommands() ? grammar.subcommandNames().length + 1 : 1];
+					tables = ts;
+				}
+				t = ts[c];
+				if (t == null) {
+					t = compile(c, g);
+					ts[c] = t;
+				}
+			}
+		}
+		return t;
+	}
+
+	// for every subset of the route flags of command c the route with the most
+	// flags among the routes whose flags are all given
+	private Table compile(int c, CLIGrammar g) {
+		List<Parameter> fs = new ArrayList<>();
+		List<Route> rs = new ArrayList<>();
+		for (Definition d : definitions) {
+			if (d.command != c)
+				continue;
+			Route r = route(d, g);
+			rs.add(r);
+			for (Parameter p : r.flags)
+				if (!fs.contains(p))
+					fs.add(p);
+		}
+		if (fs.size() > MAX_ROUTE_FLAGS)
+			throw new IllegalStateException("more than " + MAX_ROUTE_FLAGS + " route flags for one command");
+		int[] masks = new int[rs.size()];
+		for (int i = 0; i < masks.length; i++)
+			for (Parameter p : rs.get(i).flags)
+				masks[i] |= 1 << fs.indexOf(p);
+		Route[] table = new Route[1 << fs.size()];
+		for (int given = 0; given < table.length; given++) {
+			Route best = null;
+			int bestCount = -1;
+			for (int i = 0; i < masks.length; i++) {
+				if ((masks[i] & ~given) != 0)
+					continue;
+				int n = Integer.bitCount(masks[i]);
+				if (n > bestCount) {
+					best = rs.get(i);
+					bestCount = n;
+				} else if (n == bestCount) {
+					best = new Route(null, null, "Options " + options(best, rs.get(i).flags) + " and "
+							+ options(rs.get(i), best.flags) + " cannot be combined");
+				}
+			}
+			table[given] = best;
+		}
+		return new Table(fs.toArray(new Parameter[fs.size()]), table);
+	}
+
+	// the flags of r that are not in other, a conflict keeps the flags of the
+	// first route
+	private static String options(Route r, Parameter[] other) {
+		Parameter[] flags = r.flags != null ? r.flags : new Parameter[0];
+		StringBuilder sb = new StringBuilder();
+		for (Parameter p : flags)
+			if (other == null || !Arrays.asList(other).contains(p))
+				sb.append(sb.length() > 0 ? " " : "").append("--").append(p.getName());
+		return sb.length() > 0 ? sb.toString() : r.name;
+	}
+
+	/**
+	 * Runs the handler of the route that matches parsed.
+	 *
+	 * @return the exit code of the handler
+	 * @throws CLIParsedException if no route or more than one route with the
+	 *                            same number of flags matches
+	 */
+	public int dispatch(CLIParsed parsed) throws Exception {
+		return handle(parsed, null);
+	}
+
+	@Override
+	public int handle(CLIParsed parsed, CLIServer.Context context) throws Exception {
+		if (parsed.getGrammar() != grammar)
+			throw new IllegalArgumentException("parsed with another grammar");
+		int c = parsed.subcommandIndex() + 1;
+		CLIParsed target = c == 0 ? parsed : parsed.getSubcommandParsed();
+		Table t = table(c, target.getGrammar());
+		Parameter[] flags = t.flags;
+		int given = 0;
+		for (int i = 0; i < flags.length; i++)
+			if (target.flag(flags[i]))
+				given |= 1 << i;
+		Route r = t.routes[given];
+		if (r == null)
+			throw new CLIParsedException("Nothing to do for "
+					+ (c == 0 ? "these options" : "command " + parsed.getSubcommand()));
+		if (r.handle == null)
+			throw new CLIParsedException(r.name);
+		try {
+			return (int) r.handle.invokeExact(parsed, context);
+		} catch (Exception | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new UndeclaredThrowableException(e);
+		}
+	}
+}
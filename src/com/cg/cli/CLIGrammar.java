@@ -0,0 +1,506 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Immutable, compiled form of a {@link CLIRules}. Created by
+ * {@link CLIRules#compile()}. All option tokens ("--name" and "-abbreviation")
+ * are stored in an open addressing hash table, so a token resolves with one
+ * hash probe sequence and without creating any strings. The grammar holds
+ * frozen copies of the parameters, a change of the rules takes effect with
+ * the next compile.
+ */
+public final class CLIGrammar {
+
+	private final CLIRules rules;
+	private final Parameter[] params;
+	private final char listSeparator;
+	private final CLIRules.ArgumentFiles argumentFiles;
+	private final HashMap<String, CLIRules.Subcommand> subcommands;
+	private final boolean prefixMatching;
+	// prefix and suggestion index, built on first unknown token
+	private volatile OptionIndex optionIndex;
+	private volatile CLICompletion completion;
+	// parameters with an environment or config source, the config read on first use
+	private final boolean hasSources;
+	private final Path configFile;
+	private volatile Map<String, String> config;
+	private final int modCount;
+
+	// open addressing table, size is a power of two, load factor <= 0.5
+	private final String[] tokens;
+	private final Parameter[] tokenParams;
+	private final String[] names;
+	private final Parameter[] nameParams;
+	private final int mask;
+
+	// typed defaults, converted once
+	private final long[] defaultNumbers;
+	private final Object[] defaultObjects;
+	private final ArgumentList[] defaultLists;
+	private final boolean hasNumbers, hasObjects, hasLists, hasRepeated;
+	// properties parameters with abbreviation, their pairs may follow it directly
+	private final Parameter[] attached;
+	private final ValidationPlan validationPlan;
+	private final Parameter[] mandatory;
+	// CLIBinder handles for this grammar by target type, built on first use
+	private final ClassValue<MethodHandle> binders = new ClassValue<MethodHandle>() {
+		@Override
+		protected MethodHandle computeValue(Class<?> type) {
+			return CLIBinder.of(type).build(CLIGrammar.this);
+		}
+	};
+	// optional parameters with an environment or config source
+	private final Parameter[] sourced;
+
+	/**
+	 * @param slots positions of the tokens in the hash tables as returned by
+	 *              {@link #slots()}, taken from a grammar cache (see
+	 *              {@link CLISpec}), or null to hash and check the tokens
+	 */
+	CLIGrammar(CLIRules rules, Collection<Parameter> params, Map<String, CLIRules.Subcommand> subcommands,
+			char listSeparator, CLIRules.ArgumentFiles argumentFiles, boolean prefixMatching, Path configFile, int modCount,
+			int[] slots) {
+		this.rules = rules;
+		this.configFile = configFile;
+		this.prefixMatching = prefixMatching;
+		this.subcommands = subcommands.isEmpty() ? null : new HashMap<>(subcommands);
+		// frozen copies, the parameters of rules may change after compile
+		this.params = new Parameter[params.size()];
+		int n = 0;
+		for (Parameter p : params)
+			this.params[n++] = new Parameter(p);
+		this.listSeparator = listSeparator;
+		this.argumentFiles = argumentFiles;
+		this.modCount = modCount;
+
+		int size = 4;
+		while (size < this.params.length * 4)
+			size <<= 1;
+		mask = size - 1;
+		tokens = new String[size];
+		tokenParams = new Parameter[size];
+		names = new String[size];
+		nameParams = new Parameter[size];
+		if (slots == null) {
+			for (Parameter p : this.params) {
+				put(tokens, tokenParams, "--" + p.getName(), p);
+				if (p.getAbbreviation() != null && p.getAbbreviation().length() > 0)
+					put(tokens, tokenParams, "-" + p.getAbbreviation(), p);
+				put(names, nameParams, p.getName(), p);
+			}
+		} else {
+			if (slots.length != this.params.length * 3)
+				throw new IllegalArgumentException("slots do not match the parameters");
+			for (Parameter p : this.params) {
+				int s = p.index * 3;
+				place(tokens, tokenParams, slots[s], "--" + p.getName(), p);
+				if (slots[s + 1] >= 0)
+					place(tokens, tokenParams, slots[s + 1], "-" + p.getAbbreviation(), p);
+				place(names, nameParams, slots[s + 2], p.getName(), p);
+			}
+		}
+
+		defaultNumbers = new long[this.params.length];
+		defaultObjects = new Object[this.params.length];
+		defaultLists = new ArgumentList[this.params.length];
+		boolean numbers = false, objects = false, lists = false, sources = false, repeated = false;
+		ArrayList<Parameter> attached = new ArrayList<>();
+		for (Parameter p : this.params) {
+			repeated |= p.isRepeatable();
+			if (p.isProperties() && p.getAbbreviation() != null && p.getAbbreviation().length() > 0)
+				attached.add(p);
+			sources |= p.hasSource();
+			numbers |= p.isNumber();
+			objects |= p.isObject();
+			lists |= p.isArgumentList();
+			if (p.isArgumentList())
+				defaultLists[p.index] = ArgumentList.split(p.getDefault(), listSeparator);
+			if (p.getDefault() == null || "".equals(p.getDefault()) || p.isArgumentList())
+				continue;
+			try {
+				if (p.isNumber())
+					defaultNumbers[p.index] = p.toNumber(p.getDefault());
+				else if (p.isObject())
+					defaultObjects[p.index] = p.toObject(p.getDefault());
+			} catch (CLIParsedException e) {
+				throw new IllegalArgumentException("invalid default: " + e.getMessage(), e);
+			}
+		}
+		hasNumbers = numbers;
+		hasObjects = objects;
+		hasLists = lists;
+		hasRepeated = repeated;
+		this.attached = attached.toArray(new Parameter[attached.size()]);
+		hasSources = sources;
+		validationPlan = new ValidationPlan(this.params);
+		int m = 0;
+		for (Parameter p : this.params)
+			if (p.isMandatory())
+				m++;
+		mandatory = new Parameter[m];
+		m = 0;
+		for (Parameter p : this.params)
+			if (p.isMandatory())
+				mandatory[m++] = p;
+		ArrayList<Parameter> s = new ArrayList<>();
+		for (Parameter p : this.params)
+			if (p.hasSource() && !p.isMandatory())
+				s.add(p);
+		sourced = s.toArray(new Parameter[s.size()]);
+	}
+
+	private void put(String[] keys, Parameter[] values, String key, Parameter p) {
+		int i = key.hashCode() & mask;
+		while (keys[i] != null) {
+			if (keys[i].equals(key))
+				throw new IllegalArgumentException("token " + key + " is used by " + values[i].getName() + " and "
+						+ p.getName());
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = p;
+	}
+
+	// a slot computed by an earlier grammar with the same parameters
+	private void place(String[] keys, Parameter[] values, int slot, String key, Parameter p) {
+		if (slot < 0 || slot > mask || keys[slot] != null)
+			throw new IllegalArgumentException("invalid slot " + slot + " for token " + key);
+		keys[slot] = key;
+		values[slot] = p;
+	}
+
+	/**
+	 * @return per parameter index the slots of "--name", "-abbreviation" (-1 for
+	 *         none) and the name, so an equal grammar can be rebuilt without
+	 *         hashing and checking the tokens
+	 */
+	int[] slots() {
+		int[] slots = new int[params.length * 3];
+		Arrays.fill(slots, -1);
+		for (int i = 0; i <= mask; i++) {
+			if (tokens[i] != null)
+				slots[tokenParams[i].index * 3 + (tokens[i].startsWith("--") ? 0 : 1)] = i;
+			if (names[i] != null)
+				slots[nameParams[i].index * 3 + 2] = i;
+		}
+		return slots;
+	}
+
+	/**
+	 * @return the parameter the token ("--name" or "-abbreviation") refers to, or
+	 *         null
+	 */
+	public Parameter lookup(String token) {
+		if (token == null)
+			return null;
+		int i = token.hashCode() & mask;
+		String k;
+		while ((k = tokens[i]) != null) {
+			if (k.equals(token))
+				return tokenParams[i];
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Same as {@link #lookup(String)}, but for the token s[start..end), so
+	 * tokens can be resolved without creating a substring.
+	 */
+	public Parameter lookup(CharSequence s, int start, int end) {
+		int i = slot(s, start, end);
+		return i < 0 ? null : tokenParams[i];
+	}
+
+	/**
+	 * @return the option token equal to s[start..end), or null, so a parser can
+	 *         keep a matched token without copying it
+	 */
+	String token(CharSequence s, int start, int end) {
+		int i = slot(s, start, end);
+		return i < 0 ? null : tokens[i];
+	}
+
+	private int slot(CharSequence s, int start, int end) {
+		int h = 0;
+		for (int j = start; j < end; j++)
+			h = 31 * h + s.charAt(j);
+		int i = h & mask;
+		String k;
+		while ((k = tokens[i]) != null) {
+			if (regionEquals(k, s, start, end))
+				return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	static boolean regionEquals(String k, CharSequence s, int start, int end) {
+		if (k.length() != end - start)
+			return false;
+		for (int j = 0; j < k.length(); j++)
+			if (k.charAt(j) != s.charAt(start + j))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return the parameter with the given long name (without "--"), or null
+	 */
+	public Parameter get(String name) {
+		if (name == null)
+			return null;
+		int i = name.hashCode() & mask;
+		String k;
+		while ((k = names[i]) != null) {
+			if (k.equals(name))
+				return nameParams[i];
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the properties parameter whose "-abbreviation" is followed directly
+	 *         by a pair in token, like "-Dkey=value", or null
+	 */
+	Parameter attached(String token) {
+		for (Parameter p : attached) {
+			String a = p.getAbbreviation();
+			if (token.length() > a.length() + 1 && token.charAt(0) == '-' && token.startsWith(a, 1))
+				return p;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the parameter with the abbreviation c ("-c"), or null. Resolves a
+	 *         character of "-xVALUE" or of clustered flags without a substring.
+	 */
+	Parameter abbreviation(char c) {
+		// the hash of "-c", like String.hashCode
+		int i = (31 * '-' + c) & mask;
+		String k;
+		while ((k = tokens[i]) != null) {
+			if (k.length() == 2 && k.charAt(1) == c && k.charAt(0) == '-')
+				return tokenParams[i];
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	long defaultNumber(Parameter p) {
+		return defaultNumbers[p.index];
+	}
+
+	Object defaultObject(Parameter p) {
+		return defaultObjects[p.index];
+	}
+
+	/**
+	 * Resolves a long name token ("--tab") by a unique prefix of a name.
+	 *
+	 * @return the parameter, or null if prefix matching is disabled or the prefix
+	 *         is unknown or ambiguous
+	 */
+	public Parameter lookupPrefix(String token) {
+		if (!prefixMatching || token.length() < 3 || !token.startsWith("--"))
+			return null;
+		return optionIndex().uniquePrefix(token, 2);
+	}
+
+	/**
+	 * Same as {@link #lookupPrefix(String)} for the long name token[0..end), like
+	 * "--tab" of "--tab=4".
+	 */
+	Parameter lookupPrefix(String token, int end) {
+		if (!prefixMatching || end < 3 || !token.startsWith("--"))
+			return null;
+		return optionIndex().uniquePrefix(token, 2, end);
+	}
+
+	/**
+	 * @return the message for an unknown option token, with the candidates of an
+	 *         ambiguous prefix or the nearest names
+	 */
+	String unknownMessage(String token) {
+		int start = token.startsWith("--") ? 2 : 1;
+		OptionIndex index = optionIndex();
+		if (prefixMatching && start == 2) {
+			List<String> candidates = index.withPrefix(token, start, 5);
+			if (candidates.size() > 1)
+				return "Ambiguous parameter: " + token + ", candidates are --" + String.join(", --", candidates);
+		}
+		List<String> near = index.suggest(token.substring(start), 3);
+		if (near.isEmpty())
+			return "Unknown parameter: " + token;
+		return "Unknown parameter: " + token + ", did you mean --" + String.join(" or --", near) + "?";
+	}
+
+	private OptionIndex optionIndex() {
+		OptionIndex index = optionIndex;
+		if (index == null) {
+			index = new OptionIndex(params);
+			optionIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * @return the argument of a parameter from its environment variable or config
+	 *         key, or null
+	 */
+	String sourceValue(Parameter p, Map<String, String> env) {
+		if (p.getEnvironmentVariable() != null) {
+			String v = env.get(p.getEnvironmentVariable());
+			if (v != null && v.length() > 0)
+				return v;
+		}
+		if (p.getConfigKey() != null && configFile != null)
+			return config().get(p.getConfigKey());
+		return null;
+	}
+
+	// read once per grammar, with one buffered pass over the file
+	private Map<String, String> config() {
+		Map<String, String> c = config;
+		if (c == null) {
+			synchronized (this) {
+				c = config;
+				if (c == null) {
+					c = readConfig(configFile);
+					config = c;
+				}
+			}
+		}
+		return c;
+	}
+
+	private static Map<String, String> readConfig(Path file) {
+		if (!Files.exists(file))
+			return Collections.emptyMap();
+		Properties props = new Properties();
+		try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			props.load(r);
+		} catch (IOException e) {
+			throw new UncheckedIOException("cannot read config file " + file, e);
+		}
+		HashMap<String, String> c = new HashMap<>(props.size() * 2);
+		for (String key : props.stringPropertyNames())
+			c.put(key, props.getProperty(key));
+		return c;
+	}
+
+	boolean hasSources() {
+		return hasSources;
+	}
+
+	/**
+	 * @return the shell completion of this grammar, built on first use
+	 */
+	public CLICompletion completion() {
+		CLICompletion c = completion;
+		if (c == null) {
+			c = new CLICompletion(this);
+			completion = c;
+		}
+		return c;
+	}
+
+	boolean hasSubcommands() {
+		return subcommands != null;
+	}
+
+	CLIRules.Subcommand subcommand(String name) {
+		return subcommands.get(name);
+	}
+
+	// sorted, empty if there are none
+	String[] subcommandNames() {
+		if (subcommands == null)
+			return new String[0];
+		String[] n = subcommands.keySet().toArray(new String[subcommands.size()]);
+		Arrays.sort(n);
+		return n;
+	}
+
+	MethodHandle binder(Class<?> type) {
+		return binders.get(type);
+	}
+
+	Parameter[] mandatoryParameters() {
+		return mandatory;
+	}
+
+	Parameter[] sourcedParameters() {
+		return sourced;
+	}
+
+	ValidationPlan validationPlan() {
+		return validationPlan;
+	}
+
+	ArgumentList defaultList(Parameter p) {
+		return defaultLists[p.index];
+	}
+
+	boolean hasLists() {
+		return hasLists;
+	}
+
+	boolean hasRepeated() {
+		return hasRepeated;
+	}
+
+	boolean hasNumbers() {
+		return hasNumbers;
+	}
+
+	boolean hasObjects() {
+		return hasObjects;
+	}
+
+	Parameter[] parameters() {
+		return params;
+	}
+
+	public int size() {
+		return params.length;
+	}
+
+	public char getListSeparator() {
+		return listSeparator;
+	}
+
+	public CLIRules.ArgumentFiles getArgumentFiles() {
+		return argumentFiles;
+	}
+
+	public CLIRules getRules() {
+		return rules;
+	}
+
+	boolean isUpToDate(int modCount) {
+		return this.modCount == modCount;
+	}
+}
@@ -0,0 +1,20 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+/**
+ * Code run by a {@link CLIServer} for every client request.
+ */
+@FunctionalInterface
+public interface CLIHandler {
+
+	/**
+	 * @param parsed  the parsed arguments of the client
+	 * @param context cwd, environment and output streams of the client
+	 * @return the exit code for the client
+	 */
+	int handle(CLIParsed parsed, CLIServer.Context context) throws Exception;
+}
@@ -0,0 +1,194 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Timing, allocation and count per parse phase, plus a JDK Flight Recorder
+ * event "com.cg.cli.Phase" for every measured phase. The totals are disabled
+ * by default, enable them with -Dgcli.metrics=true or
+ * {@link #setEnabled(boolean)}. The events are recorded whenever a recording
+ * enables them, independent of the totals. When both are off every measuring
+ * point costs a read of a boolean and the check of the event.
+ */
+public final class CLIMetrics {
+
+	public enum Phase {
+		/** declaring parameters, count is the number of parameters */
+		RULES,
+		/** {@link CLIRules#compile()}, count is the number of parameters */
+		COMPILE,
+		/** matching the tokens, count is the number of tokens */
+		MATCH,
+		/** check of mandatory parameters, count is the number of parameters */
+		MANDATORY,
+		/** conversion, min/max and valid value checks */
+		VALIDATION,
+		/** printHelp rendering, count is the number of printed parameters */
+		HELP
+	}
+
+	private static volatile boolean enabled = Boolean.getBoolean("gcli.metrics");
+
+	private CLIMetrics() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		CLIMetrics.enabled = enabled;
+	}
+
+	/**
+	 * @return a running measurement, or null if neither the totals nor the
+	 *         event are enabled
+	 */
+	static Sample start(Phase phase) {
+		PhaseEvent event = new PhaseEvent();
+		boolean totals = enabled;
+		if (!totals && !event.isEnabled())
+			return null;
+		return new Sample(phase, event, totals);
+	}
+
+	/**
+	 * Ends a measurement started by {@link #start(Phase)}, sample may be null.
+	 */
+	static void stop(Sample sample, long count) {
+		if (sample != null)
+			sample.stop(count);
+	}
+
+	public static long getCalls(Phase phase) {
+		return Totals.calls[phase.ordinal()].sum();
+	}
+
+	public static long getCount(Phase phase) {
+		return Totals.items[phase.ordinal()].sum();
+	}
+
+	public static long getNanos(Phase phase) {
+		return Totals.nanos[phase.ordinal()].sum();
+	}
+
+	/**
+	 * @return bytes allocated by the phase, 0 if the JVM cannot measure thread
+	 *         allocation
+	 */
+	public static long getAllocatedBytes(Phase phase) {
+		return Totals.bytes[phase.ordinal()].sum();
+	}
+
+	public static void reset() {
+		for (int i = 0; i < Totals.PHASES; i++) {
+			Totals.calls[i].reset();
+			Totals.items[i].reset();
+			Totals.nanos[i].reset();
+			Totals.bytes[i].reset();
+		}
+	}
+
+	public static void print(PrintStream out) {
+		StringBuilder sb = new StringBuilder(512);
+		sb.append(String.format("%-10s %10s %12s %14s %14s%n", "phase", "calls", "count", "time(us)", "alloc(bytes)"));
+		for (Phase p : Phase.values())
+			sb.append(String.format("%-10s %10d %12d %14.1f %14d%n", p, getCalls(p), getCount(p), getNanos(p) / 1000.0,
+					getAllocatedBytes(p)));
+		out.print(sb);
+	}
+
+	static final class Sample {
+		private final Phase phase;
+		private final long startNanos, startBytes;
+		private final PhaseEvent event;
+		private final boolean totals;
+
+		Sample(Phase phase, PhaseEvent event, boolean totals) {
+			this.phase = phase;
+			this.event = event;
+			this.totals = totals;
+			event.begin();
+			this.startBytes = Allocation.current();
+			this.startNanos = System.nanoTime();
+		}
+
+		void stop(long count) {
+			long t = System.nanoTime() - startNanos;
+			long b = Allocation.current() - startBytes;
+			if (totals) {
+				int i = phase.ordinal();
+				Totals.calls[i].increment();
+				Totals.items[i].add(count);
+				Totals.nanos[i].add(t);
+				Totals.bytes[i].add(b);
+			}
+			event.end();
+			if (event.shouldCommit()) {
+				event.phase = phase.name();
+				event.count = count;
+				event.allocated = b;
+				event.commit();
+			}
+		}
+	}
+
+	// created on first use, nothing is allocated while metrics stay disabled
+	private static final class Totals {
+		static final int PHASES = Phase.values().length;
+		static final LongAdder[] calls = adders(), items = adders(), nanos = adders(), bytes = adders();
+
+		private static LongAdder[] adders() {
+			LongAdder[] a = new LongAdder[PHASES];
+			for (int i = 0; i < PHASES; i++)
+				a[i] = new LongAdder();
+			return a;
+		}
+	}
+
+	// loads java.management only when metrics are used
+	private static final class Allocation {
+		private static final com.sun.management.ThreadMXBean BEAN;
+		static {
+			java.lang.management.ThreadMXBean b = ManagementFactory.getThreadMXBean();
+			BEAN = b instanceof com.sun.management.ThreadMXBean
+					&& ((com.sun.management.ThreadMXBean) b).isThreadAllocatedMemorySupported()
+							? (com.sun.management.ThreadMXBean) b
+							: null;
+		}
+
+		static long current() {
+			return BEAN != null ? BEAN.getCurrentThreadAllocatedBytes() : 0;
+		}
+	}
+
+	@Name("com.cg.cli.Phase")
+	@Label("gcli Phase")
+	@Category("gcli")
+	@Description("One phase of rule building, parsing or help rendering")
+	static final class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("Count")
+		long count;
+
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+	}
+}
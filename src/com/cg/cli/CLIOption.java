@@ -0,0 +1,46 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A parameter of a {@link CLICommand}. The type of the field defines the kind
+ * of parameter: boolean is a flag, String, int, long, double, Path and enums
+ * take one argument, String[] takes a list argument. {@link CLIBinder} also
+ * accepts Duration, ArgumentList and List.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CLIOption {
+
+	/**
+	 * @return the long name, default is the field name
+	 */
+	String name() default "";
+
+	String abbreviation() default "";
+
+	boolean required() default false;
+
+	/**
+	 * @return the default argument, "" for none
+	 */
+	String defaultValue() default "";
+
+	String description() default "";
+
+	long min() default Long.MIN_VALUE;
+
+	long max() default Long.MAX_VALUE;
+
+	String[] validValues() default {};
+
+	boolean hideValue() default false;
+}
@@ -0,0 +1,68 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of {@link CLIParsed#tryParse(String[])}: the parsed values, or every
+ * problem of the command line.
+ */
+public final class CLIParseResult {
+
+	private final CLIParsed parsed;
+	private final List<CLIDiagnostic> diagnostics;
+
+	CLIParseResult(CLIParsed parsed, List<CLIDiagnostic> diagnostics) {
+		this.parsed = parsed;
+		this.diagnostics = diagnostics;
+	}
+
+	public boolean isOk() {
+		return diagnostics.isEmpty();
+	}
+
+	/**
+	 * @return the parsed values
+	 * @throws IllegalStateException if the command line has problems
+	 */
+	public CLIParsed getParsed() {
+		if (!isOk())
+			throw new IllegalStateException("command line has problems: " + getMessage());
+		return parsed;
+	}
+
+	/**
+	 * @return the problems in the order they were found, empty if ok
+	 */
+	public List<CLIDiagnostic> getDiagnostics() {
+		return diagnostics;
+	}
+
+	/**
+	 * @return all messages separated by "; ", empty if ok
+	 */
+	public String getMessage() {
+		return message(diagnostics);
+	}
+
+	static String message(List<CLIDiagnostic> diagnostics) {
+		StringBuilder sb = new StringBuilder();
+		for (CLIDiagnostic d : diagnostics)
+			sb.append(sb.length() > 0 ? "; " : "").append(d.getMessage());
+		return sb.toString();
+	}
+
+	static CLIParseResult ok(CLIParsed parsed) {
+		return new CLIParseResult(parsed, Collections.emptyList());
+	}
+
+	@Override
+	public String toString() {
+		return isOk() ? "ok" : getMessage();
+	}
+}
@@ -6,139 +6,1040 @@
 package com.cg.cli;
 
 import java.io.PrintStream;
-import java.util.StringTokenizer;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
 
+/**
+ * Result of one parse. All parse state lives here, the {@link CLIGrammar} and
+ * its {@link Parameter}s are only read, so one grammar can be shared by any
+ * number of concurrent parses.
+ */
 public class CLIParsed {
 
-	private CLIRules rules;
+	// argument files may include others up to this depth
+	static final int MAX_ARGUMENT_FILE_DEPTH = 8;
+
+	private final CLIGrammar grammar;
 	private String[] args;
+	// first token of args that belongs to this parse, >0 for subcommands
+	private int from;
+	// indexed by Parameter.index, the arguments are the strings of args (or of
+	// an argument file), nothing is copied
+	private final String[] values;
+	// given on the command line, one bit per Parameter.index
+	private final long[] seen;
+	// converted typed arguments, doubles are stored as raw long bits
+	private final long[] numbers;
+	private final Object[] objects;
+	// list arguments, split on first access
+	private final ArgumentList[] lists;
+	// all arguments of repeatable parameters, created on first use and reused
+	private final ArgumentValues[] repeated;
+	// pattern matchers by Parameter.index, created once and reset per parse
+	private Matcher[] matchers;
+	// parameter waiting for its argument while parsing
+	private Parameter pending;
+	private String pendingToken;
+	// selected subcommand, the tokens for it (argument files only) and its
+	// result, which is kept for the next parse
+	private CLIRules.Subcommand subcommand;
+	private int subcommandFrom;
+	private ArrayList<String> subcommandArgs;
+	private CLIParsed subcommandParsed;
+	// environment for Parameter.fromEnv, and which sources were already looked
+	// up, one bit per Parameter.index
+	private final Map<String, String> env;
+	private final long[] resolved;
+	// problems are collected instead of thrown while collecting is set, see
+	// tryParse. stopped is set after an unknown command and after "--", which
+	// also sets terminated.
+	private boolean collecting, stopped, terminated;
+	// the operands that do not select a subcommand, created on first use
+	private ArgumentValues operands;
+	private ArrayList<CLIDiagnostic> diagnostics;
+	private CLIParseResult okResult;
+	// argument files being read, by real path, to stop an argument file that
+	// includes itself
+	private HashSet<Path> openFiles;
+	// for command strings, created on first use
+	private ShellTokenizer tokenizer;
+	private ShellTokenizer.Sink sink;
+	private int tokenCount;
 
 	public CLIParsed(CLIRules rules, String[] args) throws CLIParsedException {
-		this.rules = rules;
+		this(rules.compile(), args);
+	}
+
+	public CLIParsed(CLIGrammar grammar, String[] args) throws CLIParsedException {
+		this(grammar, args, System.getenv());
+	}
+
+	/**
+	 * Parses args, parameters declared with {@link Parameter#fromEnv(String)}
+	 * take their fallback from env instead of the environment of this process.
+	 */
+	public CLIParsed(CLIGrammar grammar, String[] args, Map<String, String> env) throws CLIParsedException {
+		this(grammar, env);
+		parse(args);
+	}
+
+	/**
+	 * Creates an empty, reusable result, filled by {@link #parse(String[])}.
+	 */
+	public CLIParsed(CLIGrammar grammar) {
+		this(grammar, System.getenv());
+	}
+
+	public CLIParsed(CLIGrammar grammar, Map<String, String> env) {
+		this.grammar = grammar;
+		this.env = env;
+		int words = (grammar.size() + 63) >>> 6;
+		this.resolved = grammar.hasSources() ? new long[words] : null;
+		this.values = new String[grammar.size()];
+		this.seen = new long[words];
+		this.numbers = grammar.hasNumbers() ? new long[grammar.size()] : null;
+		this.objects = grammar.hasObjects() ? new Object[grammar.size()] : null;
+		this.lists = grammar.hasLists() ? new ArgumentList[grammar.size()] : null;
+		this.repeated = grammar.hasRepeated() ? new ArgumentValues[grammar.size()] : null;
+	}
+
+	private static boolean isSet(long[] bits, int i) {
+		return (bits[i >>> 6] & (1L << i)) != 0;
+	}
+
+	private static void set(long[] bits, int i) {
+		bits[i >>> 6] |= 1L << i;
+	}
+
+	/**
+	 * Clears the last result and drops all references to its arguments. Only the
+	 * slots of given parameters are touched, so the cost depends on the number
+	 * of arguments, not of parameters.
+	 */
+	public void reset() {
+		args = null;
+		from = 0;
+		clear(seen);
+		if (resolved != null)
+			clear(resolved);
+		pending = null;
+		pendingToken = null;
+		stopped = false;
+		terminated = false;
+		if (operands != null)
+			operands.reset();
+		if (diagnostics != null)
+			diagnostics.clear();
+		subcommand = null;
+		if (subcommandArgs != null)
+			subcommandArgs.clear();
+		if (subcommandParsed != null)
+			subcommandParsed.reset();
+	}
+
+	private void clear(long[] bits) {
+		for (int w = 0; w < bits.length; w++) {
+			long word = bits[w];
+			while (word != 0) {
+				int i = (w << 6) + Long.numberOfTrailingZeros(word);
+				values[i] = null;
+				if (objects != null)
+					objects[i] = null;
+				if (lists != null)
+					lists[i] = null;
+				if (repeated != null && repeated[i] != null)
+					repeated[i].reset();
+				word &= word - 1;
+			}
+			bits[w] = 0;
+		}
+	}
+
+	/**
+	 * Parses args into this object, the result of the previous parse is
+	 * replaced. After warm-up a successful parse allocates nothing, except for
+	 * doubles, durations and paths, which are objects by nature, for arguments
+	 * attached to their option ("--name=value", "-xVALUE"), which are cut out of
+	 * the token, and for a subcommand when argument files are enabled. After an exception the content
+	 * is undefined until the next parse.
+	 *
+	 * @return this
+	 */
+	public CLIParsed parse(String[] args) throws CLIParsedException {
+		return parse(args, 0);
+	}
+
+	/**
+	 * Like {@link #parse(String[])}, but problems of the command line are not
+	 * thrown. Parsing goes on after a problem, so the result lists all of them.
+	 * No exception and no stack trace is created, an invalid command line costs
+	 * about as much as a valid one.
+	 *
+	 * @return the result, which refers to this object for the values
+	 */
+	public CLIParseResult tryParse(String[] args) {
+		startCollecting();
+		try {
+			parse(args, 0);
+		} catch (CLIParsedException e) {
+			unreported(e);
+		} finally {
+			collecting = false;
+		}
+		return result();
+	}
+
+	/**
+	 * Parses a command string, split by the rules of {@link ShellTokenizer}.
+	 * Option tokens are resolved within the input, only arguments become
+	 * strings, no String[] is created.
+	 *
+	 * @return this
+	 */
+	public CLIParsed parse(CharSequence command) throws CLIParsedException {
+		reset();
+		CLIMetrics.Sample sample = CLIMetrics.start(CLIMetrics.Phase.MATCH);
+		tokenize(command, 0, false);
+		CLIMetrics.stop(sample, tokenCount);
+		return finish(false);
+	}
+
+	/**
+	 * Same as {@link #tryParse(String[])} for a command string, see
+	 * {@link #parse(CharSequence)}.
+	 */
+	public CLIParseResult tryParse(CharSequence command) {
+		startCollecting();
+		try {
+			parse(command);
+		} catch (CLIParsedException e) {
+			unreported(e);
+		} finally {
+			collecting = false;
+		}
+		return result();
+	}
+
+	/**
+	 * Parses the commands of input, one per line (a newline inside quotes does
+	 * not end a command), in a single pass. Blank lines and comment lines are
+	 * skipped. After each command action gets its result, this object is
+	 * refilled by the next command.
+	 *
+	 * @return the number of commands
+	 */
+	public int tryParseLines(CharSequence input, Consumer<? super CLIParseResult> action) {
+		int n = 0;
+		for (int pos = 0; pos < input.length(); n++) {
+			startCollecting();
+			try {
+				reset();
+				CLIMetrics.Sample sample = CLIMetrics.start(CLIMetrics.Phase.MATCH);
+				pos = tokenize(input, pos, true);
+				CLIMetrics.stop(sample, tokenCount);
+				if (pos < 0)
+					break;
+				finish(false);
+			} catch (CLIParsedException e) {
+				unreported(e);
+			} finally {
+				collecting = false;
+			}
+			action.accept(result());
+		}
+		return n;
+	}
+
+	private void startCollecting() {
+		if (diagnostics == null)
+			diagnostics = new ArrayList<>();
+		collecting = true;
+	}
+
+	// all problems are reported, only a conversion the syntax check let pass can
+	// end up here
+	private void unreported(CLIParsedException e) {
+		diagnostics.add(new CLIDiagnostic(CLIDiagnostic.Kind.INVALID_FORMAT, null, null, e.getMessage()));
+	}
+
+	private CLIParseResult result() {
+		if (!diagnostics.isEmpty())
+			return new CLIParseResult(this, Collections.unmodifiableList(new ArrayList<>(diagnostics)));
+		if (okResult == null)
+			okResult = CLIParseResult.ok(this);
+		return okResult;
+	}
+
+	/**
+	 * Parses args with a new result, see {@link #tryParse(String[])}.
+	 */
+	public static CLIParseResult tryParse(CLIGrammar grammar, String[] args) {
+		return new CLIParsed(grammar).tryParse(args);
+	}
+
+	// a problem of the command line, thrown by parse and collected by tryParse
+	private void report(CLIDiagnostic d) throws CLIParsedException {
+		if (!collecting)
+			throw new CLIParsedException(d);
+		diagnostics.add(d);
+	}
+
+	private void report(CLIDiagnostic.Kind kind, Parameter p, String argument, String message)
+			throws CLIParsedException {
+		report(new CLIDiagnostic(kind, p != null ? p.getName() : null, argument, message));
+	}
+
+	private CLIParsed parse(String[] args, int from) throws CLIParsedException {
+		reset();
 		this.args = args;
+		this.from = from;
+		// parse from left to right, every token is resolved by one lookup in the
+		// grammar. Without argument files the tokens after a subcommand are
+		// handed over as a range of args.
+		boolean direct = grammar.getArgumentFiles() == CLIRules.ArgumentFiles.DISABLED;
+		CLIMetrics.Sample sample = CLIMetrics.start(CLIMetrics.Phase.MATCH);
+		for (int i = from; i < args.length; i++) {
+			token(args[i]);
+			if (direct && subcommand != null) {
+				subcommandFrom = i + 1;
+				break;
+			}
+		}
+		CLIMetrics.stop(sample, args.length - from);
+		return finish(direct);
+	}
 
-		// todo empty args
-
-		// parse from left to right
-		for (int i = 0; i < args.length; i++) {
-			String currToken = args[i];
-			// check if currToken is any possible parameter/flag. If parameter, parse
-			// arguments.
-			for (Parameter p : rules.params.values()) {
-				if (p.appliesTo(currToken)) {
-					if (p.wasParsed())
-						throw new CLIParsedException("Parameter given twice: " + currToken);
-
-					if (!p.isFlag()) {
-						i++;
-						if (i > args.length)
-							throw new CLIParsedException("Parameter " + currToken + " needs an argument");
-						p.setArgument(args[i]);
-					}
+	// everything after matching the tokens, direct if the tokens of a subcommand
+	// are a range of args
+	private CLIParsed finish(boolean direct) throws CLIParsedException {
+		if (pending != null)
+			report(CLIDiagnostic.Kind.MISSING_ARGUMENT, pending, pendingToken,
+					"Parameter " + pendingToken + " needs an argument");
+		if (subcommand != null) {
+			CLIGrammar g = subcommand.grammar();
+			if (subcommandParsed == null || subcommandParsed.grammar != g)
+				subcommandParsed = new CLIParsed(g, env);
+			CLIParsed sub = subcommandParsed;
+			if (collecting && sub.diagnostics == null)
+				sub.diagnostics = new ArrayList<>();
+			sub.collecting = collecting;
+			try {
+				if (direct)
+					sub.parse(args, subcommandFrom);
+				else
+					sub.parse(subcommandArgs.toArray(new String[subcommandArgs.size()]), 0);
+			} finally {
+				sub.collecting = false;
+			}
+			if (collecting && !sub.diagnostics.isEmpty())
+				diagnostics.addAll(sub.diagnostics);
+		}
+
+		// check that all mandatory parameters are given. The sources of all
+		// parameters that were not given are looked up and checked now, so a
+		// successful parse has no invalid value left for the getters.
+		CLIMetrics.Sample sample = CLIMetrics.start(CLIMetrics.Phase.MANDATORY);
+		Parameter[] mandatory = grammar.mandatoryParameters();
+		for (Parameter p : mandatory) {
+			if (!isSet(seen, p.index) && (resolved == null || !resolveSource(p)))
+				report(CLIDiagnostic.Kind.MISSING_MANDATORY, p, null, "Missing parameter: " + p.getName());
+		}
+		for (Parameter p : grammar.sourcedParameters())
+			if (!isSet(seen, p.index))
+				resolveSource(p);
+		CLIMetrics.stop(sample, mandatory.length);
+
+		sample = CLIMetrics.start(CLIMetrics.Phase.VALIDATION);
+
+		// convert typed arguments once, check values (min..max), values, regexp
+		ValidationPlan.Step[] steps = grammar.validationPlan().steps;
+		for (ValidationPlan.Step step : steps) {
+			if (isSet(seen, step.index))
+				validate(step);
+		}
+		CLIMetrics.stop(sample, steps.length);
+		return this;
+	}
+
+	private void validate(ValidationPlan.Step step) throws CLIParsedException {
+		int i = step.index;
+		String raw = values[i];
+		boolean given = raw != null && !"".equals(raw);
+		if (step.list || step.repeatable) {
+			if (given && step.checksValue())
+				validateEach(step, raw);
+			return;
+		}
+		String arg = given ? raw : step.p.getDefault();
+		if (arg == null)
+			return;
+		if ((step.number || step.object) && !convert(step, arg, given))
+			return;
+		if (step.checksValue()) {
+			String problem = step.checkValue(arg, 0, arg.length(), matcher(step));
+			if (problem != null)
+				report(CLIDiagnostic.Kind.INVALID_VALUE, step.p, arg, problem);
+		}
+	}
+
+	// every argument of a repeatable parameter, every element of a list. The
+	// elements are checked in place, the list is split on first access.
+	private void validateEach(ValidationPlan.Step step, String raw) throws CLIParsedException {
+		Matcher m = matcher(step);
+		if (step.repeatable) {
+			ArgumentValues v = repeated[step.index];
+			int n = v != null && v.size() > 0 ? v.size() : 1;
+			for (int j = 0; j < n; j++) {
+				String arg = v != null && v.size() > 0 ? v.get(j) : raw;
+				String problem = step.checkValue(arg, 0, arg.length(), m);
+				if (problem != null)
+					report(CLIDiagnostic.Kind.INVALID_VALUE, step.p, arg, problem);
+			}
+			return;
+		}
+		char separator = grammar.getListSeparator();
+		for (int start = 0, end; start <= raw.length(); start = end + 1) {
+			end = raw.indexOf(separator, start);
+			if (end < 0)
+				end = raw.length();
+			if (end > start) {
+				String problem = step.checkValue(raw, start, end, m);
+				if (problem != null)
+					report(CLIDiagnostic.Kind.INVALID_VALUE, step.p, raw.substring(start, end), problem);
+			}
+		}
+	}
 
-					p.setParsed();
+	// converts a typed argument, defaults were already converted by the grammar.
+	// Kept apart from validate, so validate stays small enough to be inlined.
+	private boolean convert(ValidationPlan.Step step, String arg, boolean given) throws CLIParsedException {
+		int i = step.index;
+		if (step.number) {
+			long n = grammar.defaultNumber(step.p);
+			if (given) {
+				String problem = step.p.checkNumber(arg);
+				if (problem != null) {
+					report(CLIDiagnostic.Kind.INVALID_FORMAT, step.p, arg, problem);
+					return false;
 				}
+				n = step.p.parseNumber(arg);
+			}
+			numbers[i] = n;
+			String problem = step.checkRange(arg, n);
+			if (problem != null) {
+				report(CLIDiagnostic.Kind.OUT_OF_RANGE, step.p, arg, problem);
+				return false;
 			}
+		} else if (given) {
+			try {
+				objects[i] = step.p.toObject(arg);
+			} catch (CLIParsedException e) {
+				report(step.p.getType() == Parameter.Type.ENUM ? CLIDiagnostic.Kind.INVALID_VALUE
+						: CLIDiagnostic.Kind.INVALID_FORMAT, step.p, arg, e.getMessage());
+				return false;
+			}
+		} else {
+			objects[i] = grammar.defaultObject(step.p);
 		}
+		return true;
+	}
 
-		// check that all mandatory parameters are given
-		for (Parameter p : rules.params.values()) {
-			if (p.isMandatory() && !p.wasParsed())
-				throw new CLIParsedException("Missing parameter: " + p.getName());
+	private Matcher matcher(ValidationPlan.Step step) {
+		if (step.pattern == null)
+			return null;
+		if (matchers == null)
+			matchers = new Matcher[values.length];
+		Matcher m = matchers[step.index];
+		if (m == null) {
+			m = step.pattern.matcher("");
+			matchers[step.index] = m;
 		}
+		return m;
+	}
 
-		// check values (min..max), values, regexp
-		for (Parameter p : rules.params.values()) {
-			if (p.wasParsed() && !p.isArgumentList() && !p.isFlag() && p.getArgument() != null) {
-				// check min max
-				Long l = null;
-				if (p.getMinValue() != null || p.getMaxValue() != null) {
-					try {
-						l = Long.parseLong(p.getArgument());
-					} catch (NumberFormatException nfe) {
-						throw new CLIParsedException("Argument " + p.getArgument() + " for parameter " + p.getName()
-								+ " must be an integer");
-					}
-				}
-				if (p.getMinValue() != null) {
-					if (p.getMinValue() > l)
-						throw new CLIParsedException("Argument " + l + " for parameter " + p.getName()
-								+ " is less than minValue " + p.getMinValue());
-				}
-				if (p.getMaxValue() != null) {
-					if (p.getMaxValue() < l)
-						throw new CLIParsedException("Argument " + l + " for parameter " + p.getName()
-								+ " is greater than maxValue " + p.getMinValue());
-				}
-				//check valid values
-				if (p.getValidValues().size()>0) {
-					boolean ok = false;
-					for (String s: p.getValidValues())
-						if (s!=null && s.equals(p.getArgument()))
-							ok = true;
-					if (!ok) {
-						StringBuffer sb = new StringBuffer(100);
-						boolean first = true;
-						for (String s: p.getValidValues())
-							sb.append(first!=true?",":"").append(s);
-						throw new CLIParsedException("Argument " + l + " for parameter " + p.getName()
-						+ " is not a valid value, valid values are=" + sb.toString());
-					}
+	/**
+	 * Looks up the environment variable and config key of a parameter that was
+	 * not given, at most once per parse, and converts and checks the value.
+	 *
+	 * @return true if a source had a value
+	 */
+	private boolean resolveChecked(Parameter p) throws CLIParsedException {
+		int i = p.index;
+		if (isSet(resolved, i))
+			return values[i] != null;
+		set(resolved, i);
+		String v = grammar.sourceValue(p, env);
+		if (v == null)
+			return false;
+		values[i] = v;
+		ValidationPlan.Step step = grammar.validationPlan().step(p);
+		if (step != null)
+			validate(step);
+		return true;
+	}
+
+	// resolveChecked, a config file that cannot be read is a problem of p
+	private boolean resolveSource(Parameter p) throws CLIParsedException {
+		try {
+			return resolveChecked(p);
+		} catch (UncheckedIOException e) {
+			report(CLIDiagnostic.Kind.INVALID_VALUE, p, null, e.getMessage());
+			return false;
+		}
+	}
+
+	// resolves the sources of p if the parse ended before finish
+	private void resolve(Parameter p) {
+		if (resolved == null || isSet(seen, p.index) || isSet(resolved, p.index) || !p.hasSource())
+			return;
+		try {
+			resolveChecked(p);
+		} catch (CLIParsedException e) {
+			values[p.index] = null;
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	// the given argument or the value of a source, null if there is none
+	private String value(Parameter p) {
+		resolve(p);
+		String v = values[p.index];
+		return v == null || "".equals(v) ? null : v;
+	}
+
+	// tokenizes a command string, or with line the next command of input, see
+	// ShellTokenizer.tokenizeLine
+	private int tokenize(CharSequence input, int start, boolean line) throws CLIParsedException {
+		if (tokenizer == null) {
+			tokenizer = new ShellTokenizer();
+			sink = this::token;
+		}
+		tokenCount = 0;
+		try {
+			if (line)
+				return tokenizer.tokenizeLine(input, start, input.length(), sink);
+			tokenizer.tokenize(input, start, input.length(), sink);
+		} catch (CLIParsedException e) {
+			// problems of the tokens were reported already
+			if (e.getDiagnostic() != null)
+				throw e;
+			report(CLIDiagnostic.Kind.UNTERMINATED_QUOTE, null, null, e.getMessage());
+		}
+		return input.length();
+	}
+
+	// a token of a command string, a known option resolves to the token string of
+	// the grammar, so only arguments and unknown tokens are copied
+	private void token(CharSequence s, int start, int end) throws CLIParsedException {
+		tokenCount++;
+		String t = grammar.token(s, start, end);
+		token(t != null ? t : s.subSequence(start, end).toString());
+	}
+
+	// kept apart from token, so token stays small enough to be inlined
+	private void argumentFile(String currToken) throws CLIParsedException {
+		String path = currToken.substring(1);
+		Path file = ArgumentFile.canonical(path);
+		if (openFiles == null)
+			openFiles = new HashSet<>();
+		try {
+			if (file != null && openFiles.contains(file))
+				throw new CLIParsedException("Argument file " + path + " includes itself");
+			if (openFiles.size() >= MAX_ARGUMENT_FILE_DEPTH)
+				throw new CLIParsedException(
+						"Argument file " + path + " is nested deeper than " + MAX_ARGUMENT_FILE_DEPTH + " files");
+			if (file != null)
+				openFiles.add(file);
+			try {
+				ArgumentFile.read(path, grammar.getArgumentFiles(), this::token);
+			} finally {
+				if (file != null)
+					openFiles.remove(file);
+			}
+		} catch (CLIParsedException e) {
+			// problems of the tokens in the file were reported already
+			if (e.getDiagnostic() != null)
+				throw e;
+			report(CLIDiagnostic.Kind.ARGUMENT_FILE, null, currToken, e.getMessage());
+		}
+	}
+
+	private void token(String currToken) throws CLIParsedException {
+		if (stopped) {
+			if (terminated)
+				operand(currToken);
+			return;
+		}
+		if (grammar.getArgumentFiles() != CLIRules.ArgumentFiles.DISABLED && currToken.length() > 1
+				&& currToken.charAt(0) == '@') {
+			if (currToken.charAt(1) != '@') {
+				argumentFile(currToken);
+				return;
+			}
+			currToken = currToken.substring(1);
+		}
+
+		if (subcommand != null) {
+			subcommandArgs.add(currToken);
+			return;
+		}
+
+		if (pending != null) {
+			assign(pending, currToken);
+			pending = null;
+			return;
+		}
+
+		// an exact "--name" or "-abbreviation" is one hash lookup, all other
+		// option syntax is scanned by option
+		Parameter p = grammar.lookup(currToken);
+		if (p == null && isOption(currToken)) {
+			p = option(currToken);
+			if (p == null)
+				return;
+		}
+		if (p == null) {
+			operand(currToken);
+			return;
+		}
+		given(p, currToken);
+		if (!p.isFlag()) {
+			pending = p;
+			pendingToken = currToken;
+		}
+	}
+
+	// p is given by token, a second time only if p is repeatable
+	private void given(Parameter p, String token) throws CLIParsedException {
+		if (isSet(seen, p.index) && !p.isRepeatable())
+			report(CLIDiagnostic.Kind.DUPLICATE, p, token, "Parameter given twice: " + token);
+		set(seen, p.index);
+	}
+
+	private void assign(Parameter p, String arg) {
+		values[p.index] = arg;
+		if (repeated != null)
+			append(p, arg);
+	}
+
+	// a token that is no option: "--" ends the options, the first operand
+	// selects the subcommand, all other operands are collected
+	private void operand(String token) throws CLIParsedException {
+		if (!terminated && token.length() == 2 && token.charAt(0) == '-' && token.charAt(1) == '-') {
+			stopped = terminated = true;
+			return;
+		}
+		if (!terminated && grammar.hasSubcommands()) {
+			subcommand = grammar.subcommand(token);
+			if (subcommand == null) {
+				// the following tokens belong to the unknown command
+				stopped = true;
+				report(CLIDiagnostic.Kind.UNKNOWN_COMMAND, null, token, "Unknown command: " + token);
+				return;
+			}
+			if (subcommandArgs == null)
+				subcommandArgs = new ArrayList<>();
+			return;
+		}
+		if (operands == null)
+			operands = new ArgumentValues(false);
+		operands.append(token);
+	}
+
+	private void append(Parameter p, String arg) {
+		if (!p.isRepeatable())
+			return;
+		ArgumentValues v = repeated[p.index];
+		if (v == null) {
+			v = new ArgumentValues(p.isProperties());
+			repeated[p.index] = v;
+		}
+		v.append(arg);
+	}
+
+	// an option that is not a token of the grammar, dispatched on its second
+	// character: "--name=value" or a prefix of a long name, else "-Dkey=value",
+	// "-xVALUE" or clustered flags. Kept apart from token, so token stays small
+	// enough to be inlined. Returns the parameter of a long name prefix, or null
+	// if the token is done.
+	private Parameter option(String token) throws CLIParsedException {
+		if (token.charAt(1) == '-')
+			return longOption(token);
+		if (repeated != null && attached(token))
+			return null;
+		return shortOptions(token);
+	}
+
+	// "--name=value", "--prefix" or "--prefix=value"
+	private Parameter longOption(String token) throws CLIParsedException {
+		int eq = token.indexOf('=', 3);
+		if (eq < 0) {
+			Parameter p = grammar.lookupPrefix(token);
+			if (p == null)
+				report(new CLIDiagnostic(grammar, token));
+			return p;
+		}
+		Parameter p = grammar.lookup(token, 0, eq);
+		if (p == null)
+			p = grammar.lookupPrefix(token, eq);
+		if (p == null) {
+			report(new CLIDiagnostic(grammar, token.substring(0, eq)));
+			return null;
+		}
+		given(p, token);
+		if (p.isFlag())
+			report(CLIDiagnostic.Kind.UNEXPECTED_ARGUMENT, p, token,
+					"Parameter --" + p.getName() + " takes no argument");
+		else
+			assign(p, token.substring(eq + 1));
+		return null;
+	}
+
+	// "-xVALUE" or clustered flags "-abc": every character is an abbreviation,
+	// the first that takes an argument ends the cluster, its argument is the rest
+	// of the token or the next token
+	private Parameter shortOptions(String token) throws CLIParsedException {
+		int n = token.length(), i = 1;
+		// check the cluster first, so an unknown one marks nothing as given
+		for (Parameter p; i < n; i++) {
+			p = grammar.abbreviation(token.charAt(i));
+			if (p == null) {
+				report(new CLIDiagnostic(grammar, token));
+				return null;
+			}
+			if (!p.isFlag())
+				break;
+		}
+		for (int j = 1; j < n; j++) {
+			Parameter p = grammar.abbreviation(token.charAt(j));
+			given(p, token);
+			if (j == i) {
+				if (j + 1 < n) {
+					assign(p, token.substring(j + 1));
+				} else {
+					pending = p;
+					pendingToken = token;
 				}
+				return null;
 			}
 		}
+		return null;
+	}
+
+	// "-Dkey=value" of a properties parameter
+	private boolean attached(String token) throws CLIParsedException {
+		Parameter p = grammar.attached(token);
+		if (p == null)
+			return false;
+		given(p, token);
+		assign(p, token.substring(p.getAbbreviation().length() + 1));
+		return true;
+	}
+
+	// "-x" and "--name" are options, "-", "--" and negative numbers are not
+	private static boolean isOption(String token) {
+		if (token.length() < 2 || token.charAt(0) != '-')
+			return false;
+		char c = token.charAt(1);
+		if (c == '-')
+			return token.length() > 2;
+		return !(c >= '0' && c <= '9') && c != '.';
+	}
+
+	// the given argument, or the default if none was given
+	String argument(Parameter p) {
+		String argument = value(p);
+		return argument != null ? argument : p.getDefault();
 	}
-	
+
 	public Integer getIntegerArgument(String parameter) {
+		Parameter p = grammar.get(parameter);
+		if (p != null && (p.getType() == Parameter.Type.INT || p.getType() == Parameter.Type.LONG)
+				&& hasTypedValue(p)) {
+			long n = number(p);
+			if (n != (int) n)
+				throw new IllegalStateException("argument " + n + " of parameter " + parameter + " is not an int");
+			return (int) n;
+		}
 		String s = getArgument(parameter);
 		if (s==null) return null;
 		return Integer.parseInt(s);
 	}
 
+	private Parameter typed(String parameter, Parameter.Type... types) {
+		Parameter p = grammar.get(parameter);
+		if (p == null)
+			throw new IllegalArgumentException("unknown parameter: " + parameter);
+		for (Parameter.Type t : types)
+			if (p.getType() == t)
+				return p;
+		throw new IllegalStateException("parameter " + parameter + " is of type " + p.getType());
+	}
+
+	private boolean hasTypedValue(Parameter p) {
+		if (value(p) != null)
+			return true;
+		return p.getDefault() != null && !"".equals(p.getDefault());
+	}
+
+	long number(Parameter p) {
+		if (value(p) != null)
+			return numbers[p.index];
+		if (p.getDefault() != null && !"".equals(p.getDefault()))
+			return grammar.defaultNumber(p);
+		throw new IllegalStateException("no argument and no default for parameter " + p.getName());
+	}
+
+	// for DOUBLE the converted value, for INT and LONG the number as double
+	double decimal(Parameter p) {
+		long n = number(p);
+		return p.getType() == Parameter.Type.DOUBLE ? Double.longBitsToDouble(n) : n;
+	}
+
+	// for binding, numbers without argument and default are 0
+	long numberOrZero(Parameter p) {
+		return hasTypedValue(p) ? number(p) : 0;
+	}
+
+	double decimalOrZero(Parameter p) {
+		return hasTypedValue(p) ? decimal(p) : 0;
+	}
+
+	Object object(Parameter p) {
+		if (value(p) != null)
+			return objects[p.index];
+		return grammar.defaultObject(p);
+	}
+
+	/**
+	 * @return the argument of a parameter declared with
+	 *         {@link Parameter#asLong()} or {@link Parameter#asInt()}, converted
+	 *         during parsing
+	 * @throws IllegalStateException if there is neither an argument nor a default
+	 */
+	public long getLong(String parameter) {
+		return number(typed(parameter, Parameter.Type.LONG, Parameter.Type.INT));
+	}
+
+	/**
+	 * @return the argument of a parameter declared with {@link Parameter#asInt()}
+	 * @throws IllegalStateException if there is neither an argument nor a default
+	 */
+	public int getInt(String parameter) {
+		return (int) number(typed(parameter, Parameter.Type.INT));
+	}
+
+	/**
+	 * @return the argument of a parameter declared with
+	 *         {@link Parameter#asDouble()}, {@link Parameter#asLong()} or
+	 *         {@link Parameter#asInt()}
+	 * @throws IllegalStateException if there is neither an argument nor a default
+	 */
+	public double getDouble(String parameter) {
+		return decimal(typed(parameter, Parameter.Type.DOUBLE, Parameter.Type.LONG, Parameter.Type.INT));
+	}
+
+	/**
+	 * @return the argument of a parameter declared with
+	 *         {@link Parameter#asDuration()}, or null
+	 */
+	public Duration getDuration(String parameter) {
+		return (Duration) object(typed(parameter, Parameter.Type.DURATION));
+	}
+
+	/**
+	 * @return the argument of a parameter declared with {@link Parameter#asPath()},
+	 *         or null
+	 */
+	public Path getPath(String parameter) {
+		return (Path) object(typed(parameter, Parameter.Type.PATH));
+	}
+
+	/**
+	 * @return the argument of a parameter declared with
+	 *         {@link Parameter#asEnum(Class)}, or null
+	 */
+	public <E extends Enum<E>> E getEnum(String parameter, Class<E> enumType) {
+		Parameter p = typed(parameter, Parameter.Type.ENUM);
+		if (p.getEnumType() != enumType)
+			throw new IllegalStateException("parameter " + parameter + " is of type " + p.getEnumType().getName());
+		return enumType.cast(object(p));
+	}
+
 	public String getArgument(String parameter) {
-		Parameter p = rules.params.get(parameter);
+		Parameter p = grammar.get(parameter);
 		if (p == null)
 			return null;
 		if (p.isFlag())
 			throw new IllegalStateException(
 					"not a parameter with argument, use hasFlag(String) instead, given name=" + parameter);
-		return p.getArgument();
+		if (p.isArgumentList() && value(p) != null)
+			throw new IllegalStateException(
+					"this a list-argument, please call getArray(String) instead of getArgument(String)");
+		return argument(p);
 	}
 
 	public boolean hasFlag(String name) {
-		Parameter p = rules.params.get(name);
+		Parameter p = grammar.get(name);
 		if (p == null)
 			return false;
 		if (!p.isFlag())
 			throw new IllegalStateException("not a flag, use get(String) instead, given name=" + name);
-		return p.wasParsed();
+		return flag(p);
+	}
+
+	boolean flag(Parameter p) {
+		if (isSet(seen, p.index))
+			return true;
+		String v = value(p);
+		return v != null && (v.equalsIgnoreCase("true") || v.equalsIgnoreCase("yes") || v.equalsIgnoreCase("on")
+				|| v.equals("1"));
+	}
+
+	/**
+	 * @return true if the parameter or flag was given on the command line, values
+	 *         from the environment or config file do not count
+	 */
+	public boolean wasParsed(String name) {
+		Parameter p = grammar.get(name);
+		return p != null && isSet(seen, p.index);
 	}
 
 	public String[] getArray(String parameter) {
-		String all = getArgument(parameter);
-		if (all == null || all.length() == 0)
-			return new String[0];
-		int size = 0;
-		for (int i = 0; i < all.length(); i++)
-			if (all.charAt(i) == rules.listSeparator)
-				size++;
-		String[] arr = new String[size + 1];
-		StringTokenizer st = new StringTokenizer(all, "" + rules.listSeparator);
-		int i = 0;
-		while (st.hasMoreTokens())
-			arr[i++] = st.nextToken();
-		return arr;
+		return getList(parameter).toArray();
+	}
+
+	/**
+	 * @return the list argument (or its default) of a parameter declared with
+	 *         {@link Parameter#treatArgumentAsList()}. The argument is split on
+	 *         the first call and kept until the next parse, a default is split
+	 *         once per grammar. Other parameters are split on every call.
+	 */
+	public ArgumentList getList(String parameter) {
+		Parameter p = grammar.get(parameter);
+		if (p == null)
+			return ArgumentList.EMPTY;
+		if (p.isFlag())
+			throw new IllegalStateException(
+					"not a parameter with argument, use hasFlag(String) instead, given name=" + parameter);
+		return list(p);
+	}
+
+	ArgumentList list(Parameter p) {
+		if (p.isArgumentList()) {
+			ArgumentList l = lists[p.index];
+			if (l == null) {
+				String raw = value(p);
+				if (raw == null)
+					return grammar.defaultList(p);
+				l = ArgumentList.split(raw, grammar.getListSeparator());
+				lists[p.index] = l;
+			}
+			return l;
+		}
+		// not declared as list, split on demand
+		return ArgumentList.split(argument(p), grammar.getListSeparator());
+	}
+
+	/**
+	 * @return all arguments of a parameter declared with
+	 *         {@link Parameter#repeatable()} in the order they were given, or its
+	 *         default as only element. For other parameters the argument as only
+	 *         element. Valid until the next parse.
+	 */
+	public ArgumentValues getValues(String parameter) {
+		Parameter p = grammar.get(parameter);
+		if (p == null)
+			return ArgumentValues.EMPTY;
+		if (p.isFlag())
+			throw new IllegalStateException(
+					"not a parameter with argument, use hasFlag(String) instead, given name=" + parameter);
+		return values(p);
+	}
+
+	/**
+	 * @return the value of key from a parameter declared with
+	 *         {@link Parameter#asProperties()}, or null. The last pair with key
+	 *         wins.
+	 */
+	public String getProperty(String parameter, String key) {
+		Parameter p = grammar.get(parameter);
+		if (p == null)
+			throw new IllegalArgumentException("unknown parameter: " + parameter);
+		if (!p.isProperties())
+			throw new IllegalStateException("parameter " + parameter + " is not declared asProperties()");
+		return values(p).getProperty(key);
+	}
+
+	ArgumentValues values(Parameter p) {
+		if (repeated != null && repeated[p.index] != null && repeated[p.index].size() > 0)
+			return repeated[p.index];
+		String argument = argument(p);
+		return argument == null ? ArgumentValues.EMPTY : ArgumentValues.of(p.isProperties(), argument);
+	}
+
+	Map<String, String> properties(Parameter p) {
+		return values(p).toMap();
+	}
+
+	/**
+	 * @return the operands in the order they were given: tokens that are no
+	 *         option and no argument, and all tokens after "--". With
+	 *         subcommands only the tokens after "--". Valid until the next parse.
+	 */
+	public ArgumentValues getOperands() {
+		return operands != null ? operands : ArgumentValues.EMPTY;
+	}
+
+	/**
+	 * @return the name of the selected subcommand, or null
+	 */
+	public String getSubcommand() {
+		return subcommand != null ? subcommand.name : null;
+	}
+
+	/**
+	 * @return the result of parsing the tokens after the subcommand with its
+	 *         rules, or null if no subcommand was given
+	 */
+	public CLIParsed getSubcommandParsed() {
+		return subcommand != null ? subcommandParsed : null;
+	}
+
+	// declaration index of the selected subcommand, -1 if none was given
+	int subcommandIndex() {
+		return subcommand != null ? subcommand.index : -1;
+	}
+
+	/**
+	 * @return a new instance of a record or class with {@link CLIOption} fields,
+	 *         filled with the values of this result, see {@link CLIBinder}
+	 */
+	public <T> T bind(Class<T> type) {
+		return CLIBinder.of(type).bind(this);
+	}
+
+	public CLIGrammar getGrammar() {
+		return grammar;
 	}
 
 	public void printParams(PrintStream out) {
 		out.println("start: printParams");
 		if (args != null) {
 			String s = "";
-			for (String a : args)
-				s += a + " ";
+			for (int i = from; i < args.length; i++)
+				s += args[i] + " ";
 			out.println("args[]   : " + s);
 		}
-		for (Parameter p : rules.params.values()) {
+		for (Parameter p : grammar.parameters()) {
 			String name = p.getName() + (p.getAbbreviation() != null ? "(" + p.getAbbreviation() + ")" : "");
 			if (p.isFlag()) {
 				out.println("Flag     : " + name);
@@ -149,17 +1050,23 @@ public class CLIParsed {
 				} else {
 					s = "[";
 					boolean first = true;
-					for (String a : p.getArguments()) {
+					for (String a : list(p)) {
 						s += (first ? "\"" : ",\"") + a + "\"";
 						first = false;
 					}
 					s += "]";
 				}
 				out.println("Parameter: " + name + " = " + s);
+			} else if (p.isRepeatable()) {
+				out.println("Parameter: " + name + " = " + (p.hideValueIfPossible() ? "*hidden*" : values(p)));
 			} else {
-				out.println("Parameter: " + name + " = " + (p.hideValueIfPossible() ? "*hidden*" : p.getArgument()));
+				out.println("Parameter: " + name + " = " + (p.hideValueIfPossible() ? "*hidden*" : argument(p)));
 			}
 		}
+		if (subcommand != null) {
+			out.println("Command  : " + subcommand.name);
+			subcommandParsed.printParams(out);
+		}
 		out.println("end: printParams");
 	}
 
@@ -9,6 +9,8 @@ package com.cg.cli;
 @SuppressWarnings("serial")
 public class CLIParsedException extends Exception {
 
+	private CLIDiagnostic diagnostic;
+
 	public CLIParsedException() {
 	}
 
@@ -28,4 +30,21 @@ public class CLIParsedException extends Exception {
 		super(message, cause, enableSuppression, writableStackTrace);
 	}
 
+	/**
+	 * Parse errors found by {@link CLIParsed} carry no stack trace, it would only
+	 * show the parser.
+	 */
+	CLIParsedException(CLIDiagnostic diagnostic) {
+		super(diagnostic.getMessage(), null, false, false);
+		this.diagnostic = diagnostic;
+	}
+
+	/**
+	 * @return the structured problem, null if this exception was not created by
+	 *         the parser
+	 */
+	public CLIDiagnostic getDiagnostic() {
+		return diagnostic;
+	}
+
 }
@@ -0,0 +1,525 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor generating a specialized parser for every
+ * {@link CLICommand}. The generated parser switches on the token strings,
+ * there is no rule building and no reflection at runtime. It accepts the
+ * option syntax of {@link CLIParsed} ("--name=value", prefixes of long names,
+ * "-xVALUE", clustered flags and "--"), but throws on the first problem,
+ * skips operands and reads no environment, config or argument files.
+ * <p>
+ * The generated class "&lt;Name&gt;Parser" has the methods
+ * {@code parse(String[])}, {@code rules()} (a {@link CLIRules} for printHelp,
+ * only built when called) and {@code printHelp()}.
+ */
+@SupportedAnnotationTypes({ "com.cg.cli.CLICommand", "com.cg.cli.CLIOption" })
+public class CLIProcessor extends AbstractProcessor {
+
+	private enum Kind {
+		FLAG, STRING, INT, LONG, DOUBLE, PATH, ENUM, LIST
+	}
+
+	private static final class Option {
+		String field, name, abbreviation, defaultValue, description, enumType;
+		boolean required, hideValue;
+		long min, max;
+		String[] validValues;
+		Kind kind;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element e : roundEnv.getElementsAnnotatedWith(CLICommand.class)) {
+			if (e.getKind() != ElementKind.CLASS && e.getKind() != ElementKind.RECORD) {
+				error(e, "@CLICommand is only allowed on classes and records");
+				continue;
+			}
+			try {
+				generate((TypeElement) e);
+			} catch (IOException ex) {
+				error(e, "cannot write parser: " + ex);
+			}
+		}
+		return true;
+	}
+
+	private void error(Element e, String msg) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, e);
+	}
+
+	private void generate(TypeElement type) throws IOException {
+		CLICommand cmd = type.getAnnotation(CLICommand.class);
+		boolean record = type.getKind() == ElementKind.RECORD;
+		List<Option> options = new ArrayList<>();
+		List<VariableElement> fields = new ArrayList<>();
+		// the options are declared like at runtime, so invalid or duplicate names
+		// are reported on the field instead of breaking the generated source
+		CLIRules check = new CLIRules(null);
+		for (Element e : type.getEnclosedElements()) {
+			if (e.getKind() != ElementKind.FIELD || e.getModifiers().contains(Modifier.STATIC))
+				continue;
+			fields.add((VariableElement) e);
+			CLIOption o = e.getAnnotation(CLIOption.class);
+			if (o == null)
+				continue;
+			if (!record && (e.getModifiers().contains(Modifier.PRIVATE) || e.getModifiers().contains(Modifier.FINAL))) {
+				error(e, "@CLIOption fields must not be private or final");
+				return;
+			}
+			Option opt = option((VariableElement) e, o);
+			if (opt == null || !declare(check, opt, e))
+				return;
+			options.add(opt);
+		}
+
+		String pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		String target = type.getQualifiedName().toString();
+		String name = cmd.parserName().isEmpty() ? type.getSimpleName() + "Parser" : cmd.parserName();
+		char sep = cmd.listSeparator();
+
+		StringBuilder sb = new StringBuilder(4096);
+		if (!pkg.isEmpty())
+			sb.append("package ").append(pkg).append(";\n\n");
+		sb.append("// generated by ").append(CLIProcessor.class.getName()).append(", do not edit\n");
+		sb.append("public final class ").append(name).append(" {\n\n");
+		sb.append("\tprivate ").append(name).append("() {\n\t}\n\n");
+
+		// parse. An exact token is one string switch, the other option syntax
+		// ("--name=value", prefixes of long names, "-xVALUE", clustered flags) is
+		// resolved in the default branch, "--" ends the options
+		int n = options.size();
+		sb.append("\tpublic static ").append(target)
+				.append(" parse(String[] args) throws com.cg.cli.CLIParsedException {\n");
+		sb.append("\t\tString[] v = new String[").append(n).append("];\n");
+		sb.append("\t\tboolean[] s = new boolean[").append(n).append("];\n");
+		sb.append("\t\tfor (int i = 0; i < args.length; i++) {\n");
+		sb.append("\t\t\tString t = args[i], a = null;\n");
+		sb.append("\t\t\tint o;\n");
+		sb.append("\t\t\tswitch (t) {\n");
+		for (int i = 0; i < n; i++) {
+			Option o = options.get(i);
+			sb.append("\t\t\tcase ").append(literal("--" + o.name)).append(":\n");
+			if (!o.abbreviation.isEmpty())
+				sb.append("\t\t\tcase ").append(literal("-" + o.abbreviation)).append(":\n");
+			sb.append("\t\t\t\to = ").append(i).append(";\n\t\t\t\tbreak;\n");
+		}
+		sb.append("\t\t\tcase \"--\":\n\t\t\t\ti = args.length;\n\t\t\t\tcontinue;\n");
+		// operands are skipped, "-" and negative numbers are operands
+		sb.append("\t\t\tdefault:\n");
+		sb.append("\t\t\t\tif (t.length() < 2 || t.charAt(0) != '-' || t.charAt(1) >= '0' && t.charAt(1) <= '9'\n")
+				.append("\t\t\t\t\t\t|| t.charAt(1) == '.')\n\t\t\t\t\tcontinue;\n");
+		sb.append("\t\t\t\tif (t.charAt(1) == '-') {\n");
+		sb.append("\t\t\t\t\tint eq = t.indexOf('=', 3);\n");
+		sb.append("\t\t\t\t\to = longOption(t, eq < 0 ? t.length() : eq);\n");
+		sb.append("\t\t\t\t\tif (eq >= 0) {\n");
+		sb.append("\t\t\t\t\t\tif (FLAGS[o])\n\t\t\t\t\t\t\tthrow new com.cg.cli.CLIParsedException"
+				+ "(\"Parameter --\" + NAMES[o] + \" takes no argument\");\n");
+		sb.append("\t\t\t\t\t\ta = t.substring(eq + 1);\n\t\t\t\t\t}\n");
+		sb.append("\t\t\t\t\tbreak;\n\t\t\t\t}\n");
+		sb.append("\t\t\t\tfor (int j = 1;; j++) {\n");
+		sb.append("\t\t\t\t\to = abbreviation(t.charAt(j));\n");
+		sb.append("\t\t\t\t\tif (o < 0)\n\t\t\t\t\t\tthrow new com.cg.cli.CLIParsedException"
+				+ "(\"Unknown parameter: \" + t);\n");
+		sb.append("\t\t\t\t\tif (!FLAGS[o]) {\n\t\t\t\t\t\tif (j + 1 < t.length())\n")
+				.append("\t\t\t\t\t\t\ta = t.substring(j + 1);\n\t\t\t\t\t\tbreak;\n\t\t\t\t\t}\n");
+		sb.append("\t\t\t\t\tif (j + 1 == t.length())\n\t\t\t\t\t\tbreak;\n");
+		sb.append("\t\t\t\t\tgiven(s, o, t);\n\t\t\t\t}\n");
+		sb.append("\t\t\t\tbreak;\n\t\t\t}\n");
+		sb.append("\t\t\tgiven(s, o, t);\n");
+		sb.append("\t\t\tif (!FLAGS[o]) {\n\t\t\t\tif (a == null) {\n");
+		sb.append("\t\t\t\t\tif (++i >= args.length)\n\t\t\t\t\t\tthrow new com.cg.cli.CLIParsedException"
+				+ "(\"Parameter \" + t + \" needs an argument\");\n");
+		sb.append("\t\t\t\t\ta = args[i];\n\t\t\t\t}\n\t\t\t\tv[o] = a;\n\t\t\t}\n\t\t}\n");
+
+		for (int i = 0; i < options.size(); i++) {
+			Option o = options.get(i);
+			if (o.required)
+				sb.append("\t\tif (!s[").append(i).append("])\n\t\t\tthrow new com.cg.cli.CLIParsedException(")
+						.append(literal("Missing parameter: " + o.name)).append(");\n");
+		}
+
+		for (int i = 0; i < options.size(); i++)
+			convert(sb, options.get(i), i, sep);
+
+		if (record) {
+			sb.append("\t\treturn new ").append(target).append("(");
+			for (int f = 0; f < fields.size(); f++) {
+				int i = indexOf(options, fields.get(f).getSimpleName().toString());
+				sb.append(f > 0 ? ", " : "").append(i >= 0 ? "c" + i : zero(fields.get(f).asType()));
+			}
+			sb.append(");\n");
+		} else {
+			sb.append("\t\t").append(target).append(" o = new ").append(target).append("();\n");
+			for (int i = 0; i < options.size(); i++)
+				sb.append("\t\to.").append(options.get(i).field).append(" = c").append(i).append(";\n");
+			sb.append("\t\treturn o;\n");
+		}
+		sb.append("\t}\n\n");
+
+		// rules, only for help
+		sb.append("\tpublic static com.cg.cli.CLIRules rules() {\n");
+		sb.append("\t\tcom.cg.cli.CLIRules rules = new com.cg.cli.CLIRules(")
+				.append(cmd.value().isEmpty() ? "null" : literal(cmd.value())).append(");\n");
+		sb.append("\t\trules.setListSeparator(").append(literal(sep)).append(");\n");
+		for (Option o : options) {
+			String abbr = o.abbreviation.isEmpty() ? "null" : literal(o.abbreviation);
+			sb.append("\t\t");
+			if (o.kind == Kind.FLAG)
+				sb.append("rules.addFlag(").append(literal(o.name)).append(", ").append(abbr).append(")");
+			else if (o.required)
+				sb.append("rules.addRequired(").append(literal(o.name)).append(", ").append(abbr).append(")");
+			else
+				sb.append("rules.addOptional(").append(literal(o.name)).append(", ").append(abbr).append(", ")
+						.append(o.defaultValue == null ? "null" : literal(o.defaultValue)).append(")");
+			switch (o.kind) {
+			case INT:
+				sb.append(".asInt()");
+				break;
+			case LONG:
+				sb.append(".asLong()");
+				break;
+			case DOUBLE:
+				sb.append(".asDouble()");
+				break;
+			case PATH:
+				sb.append(".asPath()");
+				break;
+			case ENUM:
+				sb.append(".asEnum(").append(o.enumType).append(".class)");
+				break;
+			case LIST:
+				sb.append(".treatArgumentAsList()");
+				break;
+			default:
+				break;
+			}
+			if (o.min != Long.MIN_VALUE)
+				sb.append(".setMinValue(").append(o.min).append("L)");
+			if (o.max != Long.MAX_VALUE)
+				sb.append(".setMaxValue(").append(o.max).append("L)");
+			if (o.validValues.length > 0) {
+				sb.append(".setValidValues(");
+				for (int v = 0; v < o.validValues.length; v++)
+					sb.append(v > 0 ? ", " : "").append(literal(o.validValues[v]));
+				sb.append(")");
+			}
+			if (o.hideValue)
+				sb.append(".hideValue()");
+			if (!o.description.isEmpty())
+				sb.append(".setDescription(").append(literal(o.description)).append(")");
+			sb.append(";\n");
+		}
+		sb.append("\t\treturn rules;\n\t}\n\n");
+
+		sb.append("\tpublic static void printHelp() {\n\t\trules().printHelp(");
+		for (int i = 0; i < options.size(); i++)
+			sb.append(i > 0 ? ", " : "").append(literal(options.get(i).name));
+		sb.append(");\n\t}\n");
+
+		scanner(sb, options);
+
+		if (options.stream().anyMatch(o -> o.kind == Kind.LIST)) {
+			sb.append("\n\tprivate static String[] split(String s, char sep) {\n");
+			sb.append("\t\tif (s == null || s.isEmpty())\n\t\t\treturn new String[0];\n");
+			sb.append("\t\tjava.util.ArrayList<String> l = new java.util.ArrayList<>();\n");
+			sb.append("\t\tint start = 0;\n");
+			sb.append("\t\tfor (int i = 0; i <= s.length(); i++) {\n");
+			sb.append("\t\t\tif (i == s.length() || s.charAt(i) == sep) {\n");
+			sb.append("\t\t\t\tif (i > start)\n\t\t\t\t\tl.add(s.substring(start, i));\n");
+			sb.append("\t\t\t\tstart = i + 1;\n\t\t\t}\n\t\t}\n");
+			sb.append("\t\treturn l.toArray(new String[l.size()]);\n\t}\n");
+		}
+		sb.append("}\n");
+
+		String qualified = pkg.isEmpty() ? name : pkg + "." + name;
+		try (Writer w = processingEnv.getFiler().createSourceFile(qualified, type).openWriter()) {
+			w.write(sb.toString());
+		}
+	}
+
+	// the tables and methods used by parse for options that are not an exact
+	// token
+	private static void scanner(StringBuilder sb, List<Option> options) {
+		sb.append("\n\tprivate static final String[] NAMES = { ");
+		for (int i = 0; i < options.size(); i++)
+			sb.append(i > 0 ? ", " : "").append(literal(options.get(i).name));
+		sb.append(" };\n");
+		sb.append("\tprivate static final boolean[] FLAGS = { ");
+		for (int i = 0; i < options.size(); i++)
+			sb.append(i > 0 ? ", " : "").append(options.get(i).kind == Kind.FLAG);
+		sb.append(" };\n");
+
+		sb.append("\n\tprivate static void given(boolean[] s, int o, String t) throws com.cg.cli.CLIParsedException {\n");
+		sb.append("\t\tif (s[o])\n\t\t\tthrow new com.cg.cli.CLIParsedException(\"Parameter given twice: \" + t);\n");
+		sb.append("\t\ts[o] = true;\n\t}\n");
+
+		// the long name t[2..end) or its unique prefix
+		sb.append("\n\tprivate static int longOption(String t, int end) throws com.cg.cli.CLIParsedException {\n");
+		sb.append("\t\tint len = end - 2, found = -1;\n");
+		sb.append("\t\tfor (int o = 0; o < NAMES.length; o++) {\n");
+		sb.append("\t\t\tif (len > 0 && NAMES[o].length() >= len && NAMES[o].regionMatches(0, t, 2, len)) {\n");
+		sb.append("\t\t\t\tif (NAMES[o].length() == len)\n\t\t\t\t\treturn o;\n");
+		sb.append("\t\t\t\tfound = found == -1 ? o : -2;\n\t\t\t}\n\t\t}\n");
+		sb.append("\t\tif (found < 0)\n\t\t\tthrow new com.cg.cli.CLIParsedException((found == -2 ? "
+				+ "\"Ambiguous parameter: \" : \"Unknown parameter: \")\n\t\t\t\t\t+ t.substring(0, end));\n");
+		sb.append("\t\treturn found;\n\t}\n");
+
+		sb.append("\n\tprivate static int abbreviation(char c) {\n");
+		boolean any = false;
+		for (int i = 0; i < options.size(); i++) {
+			if (options.get(i).abbreviation.length() != 1)
+				continue;
+			if (!any)
+				sb.append("\t\tswitch (c) {\n");
+			any = true;
+			sb.append("\t\tcase ").append(literal(options.get(i).abbreviation.charAt(0))).append(":\n\t\t\treturn ")
+					.append(i).append(";\n");
+		}
+		if (any)
+			sb.append("\t\tdefault:\n\t\t\treturn -1;\n\t\t}\n\t}\n");
+		else
+			sb.append("\t\treturn -1;\n\t}\n");
+	}
+
+	private boolean declare(CLIRules check, Option o, Element e) {
+		String abbreviation = o.abbreviation.isEmpty() ? null : o.abbreviation;
+		try {
+			Parameter p = o.kind == Kind.FLAG ? check.addFlag(o.name, abbreviation)
+					: check.addOptional(o.name, abbreviation, null);
+			if (o.validValues.length > 0)
+				p.setValidValues(o.validValues);
+			return true;
+		} catch (IllegalArgumentException | IllegalStateException ex) {
+			error(e, "invalid @CLIOption " + o.name + ": " + ex.getMessage());
+			return false;
+		}
+	}
+
+	private Option option(VariableElement e, CLIOption a) {
+		Option o = new Option();
+		o.field = e.getSimpleName().toString();
+		o.name = a.name().isEmpty() ? o.field : a.name();
+		o.abbreviation = a.abbreviation();
+		o.required = a.required();
+		o.defaultValue = a.defaultValue().isEmpty() ? null : a.defaultValue();
+		o.description = a.description();
+		o.min = a.min();
+		o.max = a.max();
+		o.validValues = a.validValues();
+		o.hideValue = a.hideValue();
+
+		TypeMirror t = e.asType();
+		switch (t.getKind()) {
+		case BOOLEAN:
+			o.kind = Kind.FLAG;
+			break;
+		case INT:
+			o.kind = Kind.INT;
+			break;
+		case LONG:
+			o.kind = Kind.LONG;
+			break;
+		case DOUBLE:
+			o.kind = Kind.DOUBLE;
+			break;
+		case ARRAY:
+			if (((ArrayType) t).getComponentType().toString().equals("java.lang.String"))
+				o.kind = Kind.LIST;
+			break;
+		case DECLARED:
+			Element el = ((DeclaredType) t).asElement();
+			String n = ((TypeElement) el).getQualifiedName().toString();
+			if (n.equals("java.lang.String"))
+				o.kind = Kind.STRING;
+			else if (n.equals("java.nio.file.Path"))
+				o.kind = Kind.PATH;
+			else if (el.getKind() == ElementKind.ENUM) {
+				o.kind = Kind.ENUM;
+				o.enumType = n;
+			}
+			break;
+		default:
+			break;
+		}
+		if (o.kind == null) {
+			error(e, "unsupported type for @CLIOption: " + t);
+			return null;
+		}
+		if (o.kind == Kind.FLAG && (o.required || o.defaultValue != null)) {
+			error(e, "a flag (boolean) cannot be required or have a default");
+			return null;
+		}
+		return o;
+	}
+
+	private void convert(StringBuilder sb, Option o, int i, char sep) {
+		String v = "v[" + i + "]", c = "c" + i;
+		if (o.kind == Kind.FLAG) {
+			sb.append("\t\tboolean ").append(c).append(" = s[").append(i).append("];\n");
+			return;
+		}
+		sb.append("\t\tif (").append(v).append(" == null || ").append(v).append(".isEmpty())\n\t\t\t").append(v)
+				.append(" = ").append(o.defaultValue == null ? "null" : literal(o.defaultValue)).append(";\n");
+		String prefix = "\"Argument \" + " + v + " + " + literal(" for parameter " + o.name);
+		// valid values are checked on the text like ValidationPlan does, for a
+		// list on every item
+		if (o.validValues.length > 0 && o.kind != Kind.LIST) {
+			sb.append("\t\tif (").append(v).append(" != null)\n");
+			validValues(sb, o, v, "\t\t\t");
+		}
+		switch (o.kind) {
+		case STRING:
+			sb.append("\t\tString ").append(c).append(" = ").append(v).append(";\n");
+			return;
+		case LIST:
+			sb.append("\t\tString[] ").append(c).append(" = split(").append(v).append(", ").append(literal(sep))
+					.append(");\n");
+			if (o.validValues.length > 0) {
+				sb.append("\t\tfor (String e : ").append(c).append(")\n");
+				validValues(sb, o, "e", "\t\t\t");
+			}
+			return;
+		case PATH:
+			sb.append("\t\tjava.nio.file.Path ").append(c).append(" = null;\n");
+			sb.append("\t\tif (").append(v).append(" != null) {\n\t\t\ttry {\n\t\t\t\t").append(c)
+					.append(" = java.nio.file.Paths.get(").append(v)
+					.append(");\n\t\t\t} catch (java.nio.file.InvalidPathException e) {\n")
+					.append("\t\t\t\tthrow new com.cg.cli.CLIParsedException(").append(prefix)
+					.append(" + \" is not a valid path\");\n\t\t\t}\n\t\t}\n");
+			return;
+		case ENUM:
+			sb.append("\t\t").append(o.enumType).append(" ").append(c).append(" = null;\n");
+			sb.append("\t\tif (").append(v).append(" != null) {\n");
+			sb.append("\t\t\tfor (").append(o.enumType).append(" e : ").append(o.enumType).append(".values())\n");
+			sb.append("\t\t\t\tif (e.name().equalsIgnoreCase(").append(v).append("))\n\t\t\t\t\t").append(c)
+					.append(" = e;\n");
+			sb.append("\t\t\tif (").append(c).append(" == null)\n\t\t\t\tthrow new com.cg.cli.CLIParsedException(")
+					.append(prefix).append(" + \" is not a valid value, valid values are=\" + java.util.Arrays.toString(")
+					.append(o.enumType).append(".values()));\n\t\t}\n");
+			return;
+		default:
+			break;
+		}
+
+		// numbers
+		String type = o.kind == Kind.INT ? "int" : o.kind == Kind.LONG ? "long" : "double";
+		String parse = o.kind == Kind.INT ? "Integer.parseInt" : o.kind == Kind.LONG ? "Long.parseLong"
+				: "Double.parseDouble";
+		String what = o.kind == Kind.INT ? "an int" : o.kind == Kind.LONG ? "an integer" : "a number";
+		sb.append("\t\t").append(type).append(" ").append(c).append(" = 0;\n");
+		sb.append("\t\tif (").append(v).append(" != null) {\n\t\t\ttry {\n\t\t\t\t").append(c).append(" = ")
+				.append(parse).append("(").append(v).append(");\n");
+		sb.append("\t\t\t} catch (NumberFormatException e) {\n\t\t\t\tthrow new com.cg.cli.CLIParsedException(")
+				.append(prefix).append(" + ").append(literal(" must be " + what)).append(");\n\t\t\t}\n");
+		if (o.min != Long.MIN_VALUE)
+			sb.append("\t\t\tif (").append(c).append(" < ").append(o.min)
+					.append("L)\n\t\t\t\tthrow new com.cg.cli.CLIParsedException(").append(prefix).append(" + ")
+					.append(literal(" is less than minValue " + o.min)).append(");\n");
+		if (o.max != Long.MAX_VALUE)
+			sb.append("\t\t\tif (").append(c).append(" > ").append(o.max)
+					.append("L)\n\t\t\t\tthrow new com.cg.cli.CLIParsedException(").append(prefix).append(" + ")
+					.append(literal(" is greater than maxValue " + o.max)).append(");\n");
+		sb.append("\t\t}\n");
+	}
+
+	// a switch on the string arg that throws unless it is a valid value of o
+	private static void validValues(StringBuilder sb, Option o, String arg, String indent) {
+		sb.append(indent).append("switch (").append(arg).append(") {\n");
+		for (String valid : o.validValues)
+			sb.append(indent).append("case ").append(literal(valid)).append(":\n");
+		sb.append(indent).append("\tbreak;\n").append(indent).append("default:\n").append(indent)
+				.append("\tthrow new com.cg.cli.CLIParsedException(\"Argument \" + ").append(arg).append(" + ")
+				.append(literal(" for parameter " + o.name + " is not a valid value, valid values are="
+						+ String.join(",", o.validValues)))
+				.append(");\n").append(indent).append("}\n");
+	}
+
+	private static int indexOf(List<Option> options, String field) {
+		for (int i = 0; i < options.size(); i++)
+			if (options.get(i).field.equals(field))
+				return i;
+		return -1;
+	}
+
+	private static String zero(TypeMirror t) {
+		switch (t.getKind()) {
+		case BOOLEAN:
+			return "false";
+		case CHAR:
+			return "'\\0'";
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+		case FLOAT:
+		case DOUBLE:
+			return "(" + t + ") 0";
+		default:
+			return "null";
+		}
+	}
+
+	private static String literal(char c) {
+		return c == '\'' || c == '\\' ? "'\\" + c + "'" : "'" + c + "'";
+	}
+
+	private static String literal(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as handler of a {@link CLIDispatcher}. The method returns int
+ * (the exit code) or void (exit code 0). Its parameters get the converted
+ * arguments of the parameters with the same name, {@link CLIParsed} and
+ * {@link CLIServer.Context} parameters get the parse result and the client.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CLIRoute {
+
+	/**
+	 * @return the subcommand, "" for the command itself
+	 */
+	String command() default "";
+
+	/**
+	 * @return flags that must be given, the route with the most given flags wins
+	 */
+	String[] flags() default {};
+
+	/**
+	 * @return the parameter names for the method parameters, in order. Only
+	 *         needed when the class is not compiled with -parameters, use "" for
+	 *         CLIParsed and CLIServer.Context parameters.
+	 */
+	String[] parameters() default {};
+}
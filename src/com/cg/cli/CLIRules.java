@@ -5,29 +5,183 @@
  */
 package com.cg.cli;
 
-import java.util.Hashtable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public class CLIRules {
 
+	/**
+	 * How "@path" arguments are treated, see
+	 * {@link CLIRules#setArgumentFiles(ArgumentFiles)}.
+	 */
+	public enum ArgumentFiles {
+		/** "@path" is an ordinary argument */
+		DISABLED,
+		/** every line of the file is one argument */
+		LINES,
+		/**
+		 * arguments are separated by whitespace, quoting and escaping as in a POSIX
+		 * shell, # starts a comment, see {@link ShellTokenizer}
+		 */
+		SHELL
+	}
+
 	private String purpose;
-	Hashtable<String, Parameter> params = new Hashtable<>();
+	// definitions only, never changed by a parse
+	LinkedHashMap<String, Parameter> params = new LinkedHashMap<>();
+	LinkedHashMap<String, Subcommand> subcommands = new LinkedHashMap<>();
+	// parameters by abbreviation, to find clashes when they are declared
+	private HashMap<String, Parameter> abbreviations = new HashMap<>();
+	// metrics sample of a bulk registration, see beginBulk
+	private boolean bulk;
+	private CLIMetrics.Sample bulkSample;
+	private int bulkStart;
 	char listSeparator = ',';
+	ArgumentFiles argumentFiles = ArgumentFiles.DISABLED;
+	boolean prefixMatching = true;
+	Path configFile;
+	private int modCount = 0;
+	private volatile CLIGrammar grammar;
+	private volatile HelpCache helpCache;
 
 	public CLIRules(String purpose) {
 		this.purpose = purpose;
 	}
 
+	String getPurpose() {
+		return purpose;
+	}
+
+	void setPurpose(String purpose) {
+		this.purpose = purpose;
+		changed();
+	}
+
 	public void setListSeparator(char arraySeparator) {
 		this.listSeparator = arraySeparator;
+		changed();
+	}
+
+	/**
+	 * Enables "@path" argument files. Every "@path" token is replaced by the
+	 * arguments read from the file, "@@" at the start of a token escapes a
+	 * literal "@". Files are memory mapped and fed to the parser argument by
+	 * argument.
+	 */
+	public void setArgumentFiles(ArgumentFiles mode) {
+		this.argumentFiles = mode;
+		changed();
+	}
+
+	/**
+	 * Allows abbreviating long names by a unique prefix, like "--tab" for
+	 * "--tablenames". Enabled by default.
+	 */
+	public void setPrefixMatching(boolean prefixMatching) {
+		this.prefixMatching = prefixMatching;
+		changed();
+	}
+
+	/**
+	 * Config file for parameters declared with {@link Parameter#fromConfig(String)},
+	 * in {@link java.util.Properties} format. The file is read once, when the
+	 * first of these parameters is looked up. A missing file has no keys.
+	 */
+	public void setConfigFile(Path configFile) {
+		this.configFile = configFile;
+		changed();
+	}
+
+	// called for every change of the rules or one of its parameters
+	void changed() {
+		modCount++;
+	}
+
+	/**
+	 * Freezes the current rules into an immutable {@link CLIGrammar}. The grammar
+	 * is cached and only rebuilt if the rules were changed in the meantime. Call
+	 * this once after all parameters are declared and share the result, a
+	 * grammar can be used by any number of threads in parallel.
+	 */
+	public CLIGrammar compile() {
+		return compile(null);
+	}
+
+	// slots of the token tables from a grammar cache, see CLIGrammar
+	CLIGrammar compile(int[] slots) {
+		CLIGrammar g = grammar;
+		if (g == null || !g.isUpToDate(modCount)) {
+			CLIMetrics.Sample sample = CLIMetrics.start(CLIMetrics.Phase.COMPILE);
+			g = new CLIGrammar(this, params.values(), subcommands, listSeparator, argumentFiles, prefixMatching,
+					configFile, modCount, slots);
+			grammar = g;
+			CLIMetrics.stop(sample, params.size());
+		}
+		return g;
+	}
+
+	/**
+	 * Starts the registration of many parameters, for generated rule sets with
+	 * thousands of them. The tables are sized once for expectedParams, and the
+	 * whole registration is one metrics sample. Every declaration is checked as
+	 * usual, in constant time.
+	 *
+	 * @param expectedParams the number of parameters that will be added
+	 */
+	public void beginBulk(int expectedParams) {
+		if (bulk)
+			throw new IllegalStateException("bulk registration already started");
+		if (expectedParams < 0)
+			throw new IllegalArgumentException("expectedParams must be >= 0: " + expectedParams);
+		int capacity = (int) Math.min(1 << 30, (params.size() + expectedParams) * 4L / 3 + 1);
+		LinkedHashMap<String, Parameter> sized = new LinkedHashMap<>(capacity);
+		sized.putAll(params);
+		params = sized;
+		HashMap<String, Parameter> sizedAbbreviations = new HashMap<>(capacity);
+		sizedAbbreviations.putAll(abbreviations);
+		abbreviations = sizedAbbreviations;
+		bulk = true;
+		bulkStart = params.size();
+		bulkSample = CLIMetrics.start(CLIMetrics.Phase.RULES);
+	}
+
+	/**
+	 * Ends a registration started by {@link #beginBulk(int)}.
+	 *
+	 * @return the compiled rules, see {@link #compile()}
+	 */
+	public CLIGrammar endBulk() {
+		if (!bulk)
+			throw new IllegalStateException("no bulk registration started");
+		bulk = false;
+		CLIMetrics.stop(bulkSample, params.size() - bulkStart);
+		bulkSample = null;
+		return compile();
 	}
 
 	private Parameter addParam(String nameLong, String nameShort, boolean isMandatory, boolean expectsArgument) {
+		CLIMetrics.Sample sample = bulk ? null : CLIMetrics.start(CLIMetrics.Phase.RULES);
 		checkParamName(nameLong);
-		Parameter p = new Parameter(nameLong, nameShort, isMandatory, expectsArgument);
-		if (p.isArgumentList())
-			p.setListSeparator(listSeparator);
+		checkAbbreviation(nameShort, nameLong);
+		Parameter p = addChecked(nameLong, nameShort, isMandatory, expectsArgument);
+		CLIMetrics.stop(sample, 1);
+		return p;
+	}
+
+	// a parameter with checked names, also used for a grammar cache whose names
+	// were checked when the cache was written
+	Parameter addChecked(String nameLong, String nameShort, boolean isMandatory, boolean expectsArgument) {
+		Parameter p = new Parameter(this, nameLong, nameShort, isMandatory, expectsArgument, params.size());
 		params.put(nameLong, p);
+		if (nameShort != null && nameShort.length() > 0)
+			abbreviations.put(nameShort, p);
+		changed();
 		return p;
 	}
 
@@ -57,10 +211,75 @@ public class CLIRules {
 		return addParam(nameLong, nameShort, false, false);
 	}
 
+	/**
+	 * @return rules with one parameter per {@link CLIOption} field of a record
+	 *         or class, see {@link CLIBinder}
+	 */
+	public static CLIRules from(Class<?> type) {
+		return CLIBinder.of(type).rules();
+	}
+
 	public Set<String> getParameterNames() {
 		return params.keySet();
 	}
 
+	/**
+	 * Adds a git style subcommand. The first token that is neither a parameter
+	 * nor an argument selects the subcommand, all following tokens are parsed
+	 * with its rules. The rules are created by the supplier only when the
+	 * subcommand is selected, and then kept.
+	 */
+	public void addSubcommand(String name, String description, Supplier<CLIRules> rules) {
+		if (name == null || name.length() == 0 || name.charAt(0) == '-')
+			throw new IllegalArgumentException("subcommand name must have a value and must not start with '-'");
+		for (int i = 0; i < name.length(); i++)
+			if (Character.isWhitespace(name.charAt(i)))
+				throw new IllegalArgumentException("whitespace characters are not allowed in a subcommand: " + name);
+		if (subcommands.containsKey(name))
+			throw new IllegalArgumentException("subcommand already declared: " + name);
+		subcommands.put(name, new Subcommand(name, description, rules, subcommands.size()));
+		changed();
+	}
+
+	public Set<String> getSubcommandNames() {
+		return subcommands.keySet();
+	}
+
+	/**
+	 * A subcommand, its rules are built on first use.
+	 */
+	static final class Subcommand {
+		final String name, description;
+		// position in declaration order
+		final int index;
+		private final Supplier<CLIRules> supplier;
+		private volatile CLIGrammar grammar;
+
+		Subcommand(String name, String description, Supplier<CLIRules> supplier, int index) {
+			this.name = name;
+			this.description = description;
+			this.supplier = supplier;
+			this.index = index;
+		}
+
+		CLIGrammar grammar() {
+			CLIGrammar g = grammar;
+			if (g == null) {
+				synchronized (this) {
+					g = grammar;
+					if (g == null) {
+						CLIRules rules = supplier.get();
+						if (rules == null)
+							throw new IllegalStateException("no rules for subcommand " + name);
+						g = rules.compile();
+						grammar = g;
+					}
+				}
+			}
+			return g;
+		}
+	}
+
 	private void checkParamName(String pName) {
 		// rules:
 		// (5) must be != null and length>=1
@@ -74,18 +293,17 @@ public class CLIRules {
 			throw new IllegalArgumentException("parameter/option name must have a value");
 		}
 		// (10)
-		for (String paramAlreadyDefined : params.keySet())
-			if (paramAlreadyDefined.equals(pName))
-				throw new IllegalArgumentException("parameter/option already declared");
+		if (params.containsKey(pName))
+			throw new IllegalArgumentException("parameter/option already declared");
 
-		// (15)
-		if (pName.indexOf('-') != -1) {
-			throw new IllegalArgumentException("the character '-' is not allowed in a parameter");
-		}
-		// (20)
-		if (pName.replaceFirst("\\s", "-").indexOf('-') != -1) {
-			throw new IllegalArgumentException(
-					"whitespace characters (space, tabe, newline) are not allowed in a parameter");
+		// (15) and (20) in one scan, whitespace as matched by \s
+		for (int i = 0; i < pName.length(); i++) {
+			char c = pName.charAt(i);
+			if (c == '-')
+				throw new IllegalArgumentException("the character '-' is not allowed in a parameter");
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r')
+				throw new IllegalArgumentException(
+						"whitespace characters (space, tabe, newline) are not allowed in a parameter");
 		}
 		// (30)
 		if (pName.length() >= 40) {
@@ -94,88 +312,216 @@ public class CLIRules {
 		}
 	}
 
+	private void checkAbbreviation(String abbreviation, String pName) {
+		// rules:
+		// (5) null for none, else length>=1
+		// (10) must not start with "-", "--" ends the options
+		// (15) no "=" and no whitespaces, they separate the argument
+		// (20) must be new
+		if (abbreviation == null)
+			return;
+		// (5)
+		if (abbreviation.length() == 0)
+			throw new IllegalArgumentException("abbreviation of " + pName + " must not be empty, use null for none");
+		// (10) and (15) in one scan, whitespace as matched by \s
+		for (int i = 0; i < abbreviation.length(); i++) {
+			char c = abbreviation.charAt(i);
+			if (c == '-' && i == 0)
+				throw new IllegalArgumentException("abbreviation of " + pName + " must not start with '-'");
+			if (c == '=' || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r')
+				throw new IllegalArgumentException(
+						"'=' and whitespace characters are not allowed in the abbreviation of " + pName);
+		}
+		// (20)
+		Parameter other = abbreviations.get(abbreviation);
+		if (other != null)
+			throw new IllegalArgumentException(
+					"abbreviation -" + abbreviation + " of " + pName + " is already used by " + other.getName());
+	}
+
+	/**
+	 * Prints the help for the given parameters to System.out, "" prints an empty
+	 * line.
+	 */
 	public void printHelp(String... parameterOrder) {
+		System.out.print(renderHelp(parameterOrder));
+	}
 
-		if (purpose != null)
-			System.out.println(purpose);
-		/*
-		 * kann das weg? String[] keys = new String[params.size()]; int i=0; for(String
-		 * key: params.keySet()) keys[i++] = key; Arrays.sort(keys);
-		 */
+	/**
+	 * Writes the help with a single append to out.
+	 */
+	public void printHelp(Appendable out, String... parameterOrder) throws IOException {
+		out.append(renderHelp(parameterOrder));
+	}
+
+	public String renderHelp(String... parameterOrder) {
+		return renderHelp(0, parameterOrder);
+	}
+
+	/**
+	 * Renders the help for the given parameters. The result is cached per
+	 * parameter order and width until the rules change.
+	 *
+	 * @param width terminal width, descriptions are wrapped to fit, 0 for no
+	 *              wrapping
+	 */
+	public String renderHelp(int width, String... parameterOrder) {
+		HelpCache cache = helpCache;
+		if (cache == null || cache.modCount != modCount) {
+			cache = new HelpCache(modCount);
+			helpCache = cache;
+		}
+		HelpKey key = new HelpKey(width, parameterOrder);
+		String help = cache.rendered.get(key);
+		if (help == null) {
+			CLIMetrics.Sample sample = CLIMetrics.start(CLIMetrics.Phase.HELP);
+			help = render(width, parameterOrder);
+			cache.rendered.put(key, help);
+			CLIMetrics.stop(sample, parameterOrder.length);
+		}
+		return help;
+	}
+
+	private String render(int width, String[] parameterOrder) {
+		String nl = System.lineSeparator();
 		String argListPattern = " <arg1{" + listSeparator + "arg2...}";
 		int max = 0;
-		for (String k : params.keySet()) {
-			Parameter p = params.get(k);
-			int l = 2 + p.getName().length(); // 2 is for --
-			if (p.getAbbreviation() != null && p.getAbbreviation().length() > 0)
-				l += 2 + p.getAbbreviation().length(); // 2 is for |-
-			if (!p.isMandatory())
-				l += 2; // 2 is for [ and ]
-			if (p.isArgumentList())
-				l += argListPattern.length();
-			if (l > max)
-				max = l;
-		}
+		for (Parameter p : params.values())
+			max = Math.max(max, nameColumn(p, argListPattern).length());
 
 		// distance between name column list and information column
 		max += 4;
 
+		StringBuilder sb = new StringBuilder(64 + parameterOrder.length * (max + 40));
+		if (purpose != null)
+			sb.append(purpose).append(nl);
 		for (String k : parameterOrder) {
 			if ("".equals(k)) {
-				System.out.println();
-			} else {
-				Parameter p = params.get(k);
-				if (p == null) {
-					System.out.print("no param found for key=" + k);
-				} else {
-					if (!p.isMandatory())
-						System.out.print("[");
-					System.out.print("--" + p.getName());
-					int l = p.getName().length();
-					if (p.getAbbreviation() != null && p.getAbbreviation().length() > 0) {
-						System.out.print("|-" + p.getAbbreviation());
-						l += 2;
-					}
+				sb.append(nl);
+				continue;
+			}
+			Parameter p = params.get(k);
+			if (p == null) {
+				sb.append("no param found for key=").append(k).append(nl);
+				continue;
+			}
+			int lineStart = sb.length();
+			sb.append(nameColumn(p, argListPattern));
 
-					if (p.isArgumentList()) {
-						l += argListPattern.length();
-						System.out.print(argListPattern);
-					}
+			String info = p.getDescription() != null ? p.getDescription() : "";
+			if (!p.isMandatory() && !p.isFlag())
+				info += " (default=" + p.getDefault() + ")";
+			if (p.getEnvironmentVariable() != null)
+				info += " (env " + p.getEnvironmentVariable() + ")";
+			if (p.getConfigKey() != null)
+				info += " (config " + p.getConfigKey() + ")";
+			if (info.length() > 0) {
+				while (sb.length() - lineStart < max)
+					sb.append(' ');
+				appendWrapped(sb, info, max, width, nl);
+			}
+			sb.append(nl);
+		}
+		if (!subcommands.isEmpty()) {
+			int cmdMax = 0;
+			for (String name : subcommands.keySet())
+				cmdMax = Math.max(cmdMax, name.length());
+			sb.append(nl).append("Commands:").append(nl);
+			for (Subcommand c : subcommands.values()) {
+				int lineStart = sb.length();
+				sb.append("  ").append(c.name);
+				if (c.description != null && c.description.length() > 0) {
+					while (sb.length() - lineStart < cmdMax + 6)
+						sb.append(' ');
+					appendWrapped(sb, c.description, cmdMax + 6, width, nl);
+				}
+				sb.append(nl);
+			}
+		}
+		return sb.toString();
+	}
 
-					if (p.getMinValue() != null || p.getMaxValue() != null) {
-						String s = " <";
-						if (p.getMinValue() != null)
-							s += p.getMinValue();
-						s += "..";
-						if (p.getMaxValue() != null)
-							s += p.getMaxValue();
-						s += ">";
-						l += s.length();
-						System.out.print(s);
-					}
+	private static String nameColumn(Parameter p, String argListPattern) {
+		StringBuilder sb = new StringBuilder(32);
+		if (!p.isMandatory())
+			sb.append('[');
+		sb.append("--").append(p.getName());
+		if (p.getAbbreviation() != null && p.getAbbreviation().length() > 0)
+			sb.append("|-").append(p.getAbbreviation());
+		if (p.isArgumentList())
+			sb.append(argListPattern);
+		if (p.getMinValue() != null || p.getMaxValue() != null) {
+			sb.append(" <");
+			if (p.getMinValue() != null)
+				sb.append(p.getMinValue());
+			sb.append("..");
+			if (p.getMaxValue() != null)
+				sb.append(p.getMaxValue());
+			sb.append('>');
+		}
+		if (!p.isFlag() && !p.isArgumentList() && p.getMaxValue() == null && p.getMinValue() == null)
+			sb.append(p.isProperties() ? " <key=value>" : " <arg>");
+		if (p.isRepeatable())
+			sb.append("...");
+		if (!p.isMandatory())
+			sb.append(']');
+		return sb.toString();
+	}
 
-					if (!p.isFlag() && !p.isArgumentList() && p.getMaxValue() == null && p.getMinValue() == null) {
-						String s = " <arg>";
-						l += s.length();
-						System.out.print(s);
-					}
-					if (!p.isMandatory()) {
-						System.out.print("]");
-						l += 2;
-					}
+	// wraps text at spaces so no line is longer than width, continuation lines
+	// are indented to the information column
+	private static void appendWrapped(StringBuilder sb, String text, int indent, int width, String nl) {
+		int room = width - indent;
+		if (width <= 0 || room < 10 || text.length() <= room) {
+			sb.append(text);
+			return;
+		}
+		int start = 0;
+		while (text.length() - start > room) {
+			int cut = text.lastIndexOf(' ', start + room);
+			if (cut <= start)
+				cut = start + room;
+			sb.append(text, start, cut).append(nl);
+			for (int i = 0; i < indent; i++)
+				sb.append(' ');
+			start = cut;
+			while (start < text.length() && text.charAt(start) == ' ')
+				start++;
+		}
+		sb.append(text, start, text.length());
+	}
 
-					for (int j = 0; j < max - l; j++)
-						System.out.print(" ");
+	private static final class HelpCache {
+		final int modCount;
+		final ConcurrentHashMap<HelpKey, String> rendered = new ConcurrentHashMap<>();
 
-					if (p.getDescription() != null && p.getDescription().length() > 0)
-						System.out.print(p.getDescription());
+		HelpCache(int modCount) {
+			this.modCount = modCount;
+		}
+	}
 
-					if (!p.isMandatory() && !p.isFlag()) {
-						System.out.print(" (default=" + p.getDefault() + ")");
-					}
-				}
-				System.out.println();
-			}
+	private static final class HelpKey {
+		private final int width;
+		private final String[] order;
+		private final int hash;
+
+		HelpKey(int width, String[] order) {
+			this.width = width;
+			this.order = order.clone();
+			this.hash = 31 * width + Arrays.hashCode(order);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof HelpKey))
+				return false;
+			HelpKey other = (HelpKey) obj;
+			return width == other.width && Arrays.equals(order, other.order);
 		}
 	}
 }
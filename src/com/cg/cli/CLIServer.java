@@ -0,0 +1,372 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Resident server, avoids JVM startup and rule building per invocation. A warm
+ * JVM listens on a unix domain socket, a thin client ({@link CLIClient}) sends
+ * argv, cwd and environment, the server parses them with a prebuilt grammar
+ * (environment fallbacks of parameters come from the client environment),
+ * runs the {@link CLIHandler} and streams stdout, stderr and the exit code
+ * back. Every client is served by its own (virtual, if available) thread.
+ * <p>
+ * Protocol, all numbers are big endian ints, strings are an int length plus
+ * UTF-8 bytes:
+ *
+ * <pre>
+ * request:  'R' argc arg* cwd envc (key value)*
+ * response: ('1' len bytes | '2' len bytes)* 'X' exitCode
+ *
+ * request:  'C' argc arg* cursorIndex
+ * response: '1' len completions 'X' 0
+ * </pre>
+ *
+ * '1' is stdout, '2' is stderr. A 'C' request is answered by
+ * {@link CLICompletion} without calling the handler, the completions are
+ * separated by newlines. A request with more than {@link #MAX_COUNT} arguments
+ * or environment variables, a string longer than {@link #MAX_STRING} bytes or
+ * strings of more than {@link #MAX_REQUEST} bytes in total is rejected by
+ * closing the connection.
+ * <p>
+ * The socket file is readable and writable by its owner only, every user who
+ * can connect runs the handler with a cwd and environment of their choice.
+ */
+public class CLIServer implements Closeable {
+
+	static final byte RUN = 'R', COMPLETE = 'C', STDOUT = '1', STDERR = '2', EXIT = 'X';
+	/** the maximum number of arguments and of environment variables of a request */
+	public static final int MAX_COUNT = 1 << 16;
+	/** the maximum length of a string of a request in bytes */
+	public static final int MAX_STRING = 1 << 20;
+	/** the maximum length of all strings of a request together in bytes */
+	public static final int MAX_REQUEST = 1 << 24;
+
+	private final CLIGrammar grammar;
+	private final CLIHandler handler;
+	private final Path socket;
+	private final ExecutorService executor;
+	private ServerSocketChannel server;
+	private Thread acceptor;
+	private volatile Consumer<? super IOException> errorHandler = e -> {
+	};
+
+	public CLIServer(CLIRules rules, CLIHandler handler, Path socket) {
+		this(rules.compile(), handler, socket, newExecutor());
+	}
+
+	public CLIServer(CLIGrammar grammar, CLIHandler handler, Path socket, ExecutorService executor) {
+		this.grammar = grammar;
+		this.handler = handler;
+		this.socket = socket;
+		this.executor = executor;
+	}
+
+	// virtual threads on JDK 21+, a cached thread pool before
+	static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r, "gcli-client");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	/**
+	 * Binds the socket and accepts clients in a background thread. A stale
+	 * socket file is replaced, the socket of a running server is not.
+	 *
+	 * @throws IOException if another server listens on the socket
+	 */
+	public synchronized CLIServer start() throws IOException {
+		if (listening(socket))
+			throw new IOException("another server listens on " + socket);
+		Files.deleteIfExists(socket);
+		server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(UnixDomainSocketAddress.of(socket));
+		try {
+			Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+		} catch (UnsupportedOperationException e) {
+			// no POSIX permissions (Windows), the directory of the socket decides
+		} catch (IOException e) {
+			server.close();
+			Files.deleteIfExists(socket);
+			throw e;
+		}
+		acceptor = new Thread(this::acceptLoop, "gcli-server " + socket);
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return this;
+	}
+
+	// a socket file that accepts connections belongs to a running server
+	private static boolean listening(Path socket) {
+		if (!Files.exists(socket))
+			return false;
+		try (SocketChannel ch = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+			return ch.isConnected();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Sets the handler for failures of accepting a client, which do not stop
+	 * the server. By default they are ignored.
+	 */
+	public CLIServer setErrorHandler(Consumer<? super IOException> errorHandler) {
+		this.errorHandler = errorHandler;
+		return this;
+	}
+
+	/**
+	 * Blocks until the server is closed.
+	 */
+	public void join() throws InterruptedException {
+		acceptor.join();
+	}
+
+	private void acceptLoop() {
+		while (server.isOpen()) {
+			try {
+				SocketChannel client = server.accept();
+				executor.execute(() -> serve(client));
+			} catch (IOException e) {
+				if (server.isOpen())
+					errorHandler.accept(e);
+			}
+		}
+	}
+
+	private void serve(SocketChannel client) {
+		try (SocketChannel ch = client) {
+			Request in = new Request(new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch))));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+			byte kind = in.in.readByte();
+			if (kind != RUN && kind != COMPLETE)
+				throw new IOException("unknown request " + kind);
+			String[] args = new String[in.count()];
+			for (int i = 0; i < args.length; i++)
+				args[i] = in.string();
+			if (kind == COMPLETE) {
+				complete(args, in.in.readInt(), out);
+				return;
+			}
+			Path cwd = Paths.get(in.string());
+			int envc = in.count();
+			Map<String, String> env = new HashMap<>(envc * 2);
+			for (int i = 0; i < envc; i++)
+				env.put(in.string(), in.string());
+
+			Context context = new Context(args, cwd, Collections.unmodifiableMap(env), out);
+			int exit = run(context);
+			context.out.flush();
+			context.err.flush();
+			out.writeByte(EXIT);
+			out.writeInt(exit);
+			out.flush();
+		} catch (IOException | RuntimeException e) {
+			// client went away or sent an invalid request, nothing to report to
+		}
+	}
+
+	private void complete(String[] args, int cursorIndex, DataOutputStream out) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (String s : grammar.completion().complete(args, Math.min(Math.max(cursorIndex, 0), args.length)))
+			sb.append(s).append('\n');
+		byte[] b = sb.toString().getBytes(StandardCharsets.UTF_8);
+		out.writeByte(STDOUT);
+		out.writeInt(b.length);
+		out.write(b);
+		out.writeByte(EXIT);
+		out.writeInt(0);
+		out.flush();
+	}
+
+	private int run(Context context) {
+		try {
+			CLIParsed parsed = new CLIParsed(grammar, resolveArgumentFiles(context.args, context.cwd), context.env);
+			return handler.handle(parsed, context);
+		} catch (CLIParsedException e) {
+			context.err.println(e.getMessage());
+			return 2;
+		} catch (Exception e) {
+			e.printStackTrace(context.err);
+			return 1;
+		}
+	}
+
+	// "@path" is relative to the cwd of the client, not of the server
+	private String[] resolveArgumentFiles(String[] args, Path cwd) {
+		if (grammar.getArgumentFiles() == CLIRules.ArgumentFiles.DISABLED)
+			return args;
+		String[] resolved = args;
+		for (int i = 0; i < args.length; i++) {
+			String a = args[i];
+			if (a.length() > 1 && a.charAt(0) == '@' && a.charAt(1) != '@' && !Paths.get(a.substring(1)).isAbsolute()) {
+				if (resolved == args)
+					resolved = args.clone();
+				resolved[i] = "@" + cwd.resolve(a.substring(1));
+			}
+		}
+		return resolved;
+	}
+
+	// reads the counts and strings of one request, all strings share a budget
+	// of MAX_REQUEST bytes
+	private static final class Request {
+		final DataInputStream in;
+		private int left = MAX_REQUEST;
+
+		Request(DataInputStream in) {
+			this.in = in;
+		}
+
+		int count() throws IOException {
+			int n = in.readInt();
+			if (n < 0 || n > MAX_COUNT)
+				throw new IOException("invalid count " + n);
+			return n;
+		}
+
+		String string() throws IOException {
+			int len = in.readInt();
+			if (len < 0 || len > MAX_STRING || len > left)
+				throw new IOException("invalid string length " + len + ", " + left + " bytes left");
+			left -= len;
+			return utf8(in, len);
+		}
+	}
+
+	// a string of at most max bytes, the length is checked before anything is
+	// allocated
+	static String readString(DataInputStream in, int max) throws IOException {
+		int len = in.readInt();
+		if (len < 0 || len > max)
+			throw new IOException("invalid string length " + len);
+		return utf8(in, len);
+	}
+
+	private static String utf8(DataInputStream in, int len) throws IOException {
+		byte[] b = new byte[len];
+		in.readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (server != null) {
+			server.close();
+			Files.deleteIfExists(socket);
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Everything a handler knows about the calling client.
+	 */
+	public static final class Context {
+		private final String[] args;
+		private final Path cwd;
+		private final Map<String, String> env;
+		private final PrintStream out, err;
+
+		Context(String[] args, Path cwd, Map<String, String> env, DataOutputStream socket) {
+			this.args = args;
+			this.cwd = cwd;
+			this.env = env;
+			this.out = new PrintStream(new BufferedOutputStream(new FrameOutputStream(socket, STDOUT), 8192), false,
+					StandardCharsets.UTF_8);
+			this.err = new PrintStream(new BufferedOutputStream(new FrameOutputStream(socket, STDERR), 8192), false,
+					StandardCharsets.UTF_8);
+		}
+
+		public String[] getArgs() {
+			return args.clone();
+		}
+
+		/**
+		 * @return the working directory of the client, resolve relative paths
+		 *         against it
+		 */
+		public Path getCwd() {
+			return cwd;
+		}
+
+		public Map<String, String> getEnv() {
+			return env;
+		}
+
+		public PrintStream getOut() {
+			return out;
+		}
+
+		public PrintStream getErr() {
+			return err;
+		}
+	}
+
+	// writes every chunk as one frame, stdout and stderr share the socket
+	private static final class FrameOutputStream extends OutputStream {
+		private final DataOutputStream socket;
+		private final byte type;
+
+		FrameOutputStream(DataOutputStream socket, byte type) {
+			this.socket = socket;
+			this.type = type;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return;
+			synchronized (socket) {
+				socket.writeByte(type);
+				socket.writeInt(len);
+				socket.write(b, off, len);
+				socket.flush();
+			}
+		}
+	}
+}
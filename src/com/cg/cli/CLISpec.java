@@ -0,0 +1,497 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Rules declared in a spec file instead of code, one declaration per line:
+ *
+ * <pre>
+ * # comment
+ * purpose "Copies files"
+ * separator ;
+ * argument-files shell
+ * prefix-matching false
+ * config-file /etc/copy.properties
+ * required source abbreviation=s description="the file to copy"
+ * optional threads type=int default=4 min=1 max=64
+ * optional mode valid=fast,slow env=COPY_MODE
+ * optional tags list pattern=[a-z]+
+ * optional table repeatable
+ * optional define abbreviation=D properties
+ * flag force abbreviation=f hide
+ * </pre>
+ *
+ * Tokens are quoted as in a POSIX shell, see {@link ShellTokenizer}. The types
+ * are string, int, long, double, duration and path, valid values are separated
+ * by ','. Subcommands and enum types need code.
+ * <p>
+ * {@link #load(Path, Path)} keeps a binary cache of the compiled grammar next
+ * to the spec. The cache is memory mapped, and holds the parameters and the
+ * layout of the token tables, so a later start creates the grammar without
+ * reading the spec text, checking names and hashing tokens. It is rebuilt
+ * when the CRC of the spec changes. A cache that cannot be read is ignored,
+ * the grammar is then compiled from the spec.
+ */
+public final class CLISpec {
+
+	private static final int MAGIC = 0x67636c69; // "gcli"
+	private static final int VERSION = 2;
+	private static final Parameter.Type[] TYPES = Parameter.Type.values();
+	private static final CLIRules.ArgumentFiles[] ARGUMENT_FILES = CLIRules.ArgumentFiles.values();
+
+	private CLISpec() {
+	}
+
+	/**
+	 * @return the rules declared by spec
+	 * @throws CLIRuleException with the line number for every syntax error or
+	 *                          invalid declaration
+	 */
+	public static CLIRules parse(CharSequence spec) throws CLIRuleException {
+		CLIRules rules = new CLIRules(null);
+		int line = 0, start = 0, n = spec.length();
+		while (start < n) {
+			int end = start;
+			while (end < n && spec.charAt(end) != '\n')
+				end++;
+			line++;
+			String[] tokens;
+			try {
+				tokens = split(spec, start, end);
+			} catch (CLIParsedException e) {
+				throw new CLIRuleException("line " + line + ": " + e.getMessage());
+			}
+			if (tokens.length > 0) {
+				try {
+					declare(rules, tokens);
+				} catch (IllegalArgumentException | IllegalStateException e) {
+					throw new CLIRuleException("line " + line + ": " + e.getMessage(), e);
+				}
+			}
+			start = end + 1;
+		}
+		return rules;
+	}
+
+	/**
+	 * @return the rules declared by the spec file (UTF-8)
+	 */
+	public static CLIRules read(Path spec) throws IOException, CLIRuleException {
+		return parse(new String(Files.readAllBytes(spec), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Compiles the spec file with the help of a grammar cache, see
+	 * {@link #load(Path, Path, Consumer)}. A cache that cannot be written is
+	 * logged as a warning to the System.Logger "com.cg.cli.CLISpec".
+	 */
+	public static CLIGrammar load(Path spec, Path cache) throws IOException, CLIRuleException {
+		return load(spec, cache, e -> System.getLogger(CLISpec.class.getName()).log(System.Logger.Level.WARNING,
+				"cannot write the grammar cache " + cache, e));
+	}
+
+	/**
+	 * Compiles the spec file with the help of a grammar cache. A missing,
+	 * outdated, damaged or unreadable cache is rewritten from the spec.
+	 *
+	 * @param cache       the cache file, for example "tool.spec.bin" next to the
+	 *                    spec
+	 * @param writeErrors gets the error if the cache cannot be written, the
+	 *                    grammar is returned anyway
+	 * @return the grammar, its rules are available by
+	 *         {@link CLIGrammar#getRules()}
+	 */
+	public static CLIGrammar load(Path spec, Path cache, Consumer<? super IOException> writeErrors)
+			throws IOException, CLIRuleException {
+		byte[] bytes = Files.readAllBytes(spec);
+		CRC32C crc = new CRC32C();
+		crc.update(bytes);
+		long checksum = crc.getValue();
+		CLIGrammar cached = readCache(cache, checksum, bytes.length);
+		if (cached != null)
+			return cached;
+		CLIRules rules = parse(new String(bytes, StandardCharsets.UTF_8));
+		CLIGrammar grammar;
+		try {
+			grammar = rules.compile();
+		} catch (IllegalArgumentException e) {
+			throw new CLIRuleException(spec + ": " + e.getMessage(), e);
+		}
+		if (!cacheable(grammar))
+			return grammar;
+		try {
+			writeCache(cache, checksum, bytes.length, grammar);
+		} catch (IOException e) {
+			// the cache only saves time, the grammar is complete without it
+			writeErrors.accept(e);
+		}
+		return grammar;
+	}
+
+	private static String[] split(CharSequence spec, int start, int end) throws CLIParsedException {
+		List<String> tokens = new ArrayList<>();
+		new ShellTokenizer().tokenize(spec, start, end,
+				(s, from, to) -> tokens.add(s.subSequence(from, to).toString()));
+		return tokens.toArray(new String[tokens.size()]);
+	}
+
+	private static void declare(CLIRules rules, String[] t) {
+		switch (t[0]) {
+		case "purpose":
+			rules.setPurpose(value(t));
+			return;
+		case "separator":
+			if (t.length != 2 || t[1].length() != 1)
+				throw new IllegalArgumentException("separator needs one character");
+			rules.setListSeparator(t[1].charAt(0));
+			return;
+		case "argument-files":
+			rules.setArgumentFiles(CLIRules.ArgumentFiles.valueOf(value(t).toUpperCase(Locale.ROOT)));
+			return;
+		case "prefix-matching":
+			rules.setPrefixMatching(bool(value(t)));
+			return;
+		case "config-file":
+			rules.setConfigFile(Paths.get(value(t)));
+			return;
+		case "required":
+		case "optional":
+		case "flag":
+			if (t.length < 2)
+				throw new IllegalArgumentException(t[0] + " needs a name");
+			parameter(rules, t);
+			return;
+		default:
+			throw new IllegalArgumentException("unknown declaration " + t[0]);
+		}
+	}
+
+	private static void parameter(CLIRules rules, String[] t) {
+		String abbreviation = null, default_ = null;
+		for (int i = 2; i < t.length; i++) {
+			if (t[i].startsWith("abbreviation="))
+				abbreviation = t[i].substring(13);
+			else if (t[i].startsWith("default="))
+				default_ = t[i].substring(8);
+		}
+		Parameter p;
+		if (t[0].equals("required")) {
+			if (default_ != null)
+				throw new IllegalArgumentException("required parameter " + t[1] + " cannot have a default");
+			p = rules.addRequired(t[1], abbreviation);
+		} else if (t[0].equals("optional")) {
+			p = rules.addOptional(t[1], abbreviation, default_);
+		} else {
+			if (default_ != null)
+				throw new IllegalArgumentException("flag " + t[1] + " cannot have a default");
+			p = rules.addFlag(t[1], abbreviation);
+		}
+		// the type first, min and max make a string parameter a long
+		for (int i = 2; i < t.length; i++)
+			if (t[i].startsWith("type="))
+				type(p, t[i].substring(5));
+		for (int i = 2; i < t.length; i++) {
+			String a = t[i];
+			int eq = a.indexOf('=');
+			String key = eq < 0 ? a : a.substring(0, eq), value = eq < 0 ? null : a.substring(eq + 1);
+			if (eq < 0 && key.equals("list"))
+				p.treatArgumentAsList();
+			else if (eq < 0 && key.equals("hide"))
+				p.hideValue();
+			else if (eq < 0 && key.equals("repeatable"))
+				p.repeatable();
+			else if (eq < 0 && key.equals("properties"))
+				p.asProperties();
+			else if (eq < 0)
+				throw new IllegalArgumentException("unknown attribute " + a + ", or missing '='");
+			else if (key.equals("min"))
+				p.setMinValue(number(key, value));
+			else if (key.equals("max"))
+				p.setMaxValue(number(key, value));
+			else if (key.equals("valid"))
+				p.setValidValues(value.split(","));
+			else if (key.equals("pattern"))
+				p.setPattern(value);
+			else if (key.equals("env"))
+				p.fromEnv(value);
+			else if (key.equals("config"))
+				p.fromConfig(value);
+			else if (key.equals("description"))
+				p.setDescription(value);
+			else if (!key.equals("abbreviation") && !key.equals("default") && !key.equals("type"))
+				throw new IllegalArgumentException("unknown attribute " + key);
+		}
+	}
+
+	private static void type(Parameter p, String type) {
+		switch (type) {
+		case "string":
+			return;
+		case "int":
+			p.asInt();
+			return;
+		case "long":
+			p.asLong();
+			return;
+		case "double":
+			p.asDouble();
+			return;
+		case "duration":
+			p.asDuration();
+			return;
+		case "path":
+			p.asPath();
+			return;
+		default:
+			throw new IllegalArgumentException("unknown type " + type + " of parameter " + p.getName());
+		}
+	}
+
+	private static String value(String[] t) {
+		if (t.length != 2)
+			throw new IllegalArgumentException(t[0] + " needs one value");
+		return t[1];
+	}
+
+	private static boolean bool(String s) {
+		if (s.equals("true"))
+			return true;
+		if (s.equals("false"))
+			return false;
+		throw new IllegalArgumentException("true or false expected: " + s);
+	}
+
+	private static long number(String key, String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(key + " must be an integer: " + value);
+		}
+	}
+
+	// enum types cannot be stored, such a grammar is never cached
+	private static boolean cacheable(CLIGrammar grammar) {
+		for (Parameter p : grammar.parameters())
+			if (p.getType() == Parameter.Type.ENUM)
+				return false;
+		return true;
+	}
+
+	// Cache layout, big endian: magic, version, CRC32C and length of the spec,
+	// the rules settings, the parameters in declaration order, the slots of the
+	// token tables and the CRC32C of everything before. Strings are a length (-1
+	// for null) and UTF-8 bytes.
+	private static void writeCache(Path cache, long checksum, int specLength, CLIGrammar grammar)
+			throws IOException {
+		CLIRules rules = grammar.getRules();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(checksum);
+		out.writeInt(specLength);
+		writeString(out, rules.getPurpose());
+		out.writeChar(rules.listSeparator);
+		out.writeByte(rules.argumentFiles.ordinal());
+		out.writeBoolean(rules.prefixMatching);
+		writeString(out, rules.configFile == null ? null : rules.configFile.toString());
+		Parameter[] params = grammar.parameters();
+		out.writeInt(params.length);
+		for (Parameter p : params) {
+			writeString(out, p.getName());
+			writeString(out, p.getAbbreviation());
+			out.writeByte(p.isFlag() ? 0 : p.isMandatory() ? 2 : 1);
+			out.writeByte(p.getType().ordinal());
+			out.writeBoolean(p.isArgumentList());
+			out.writeBoolean(p.hideValueIfPossible());
+			out.writeByte(p.isProperties() ? 2 : p.isRepeatable() ? 1 : 0);
+			writeString(out, p.getDefault());
+			writeString(out, p.getDescription());
+			out.writeBoolean(p.getMinValue() != null);
+			out.writeLong(p.getMinValue() != null ? p.getMinValue() : 0);
+			out.writeBoolean(p.getMaxValue() != null);
+			out.writeLong(p.getMaxValue() != null ? p.getMaxValue() : 0);
+			out.writeInt(p.getValidValues().size());
+			for (String v : p.getValidValues())
+				writeString(out, v);
+			writeString(out, p.getPattern() == null ? null : p.getPattern().pattern());
+			writeString(out, p.getEnvironmentVariable());
+			writeString(out, p.getConfigKey());
+		}
+		for (int slot : grammar.slots())
+			out.writeInt(slot);
+		out.flush();
+		CRC32C crc = new CRC32C();
+		crc.update(bytes.toByteArray());
+		out.writeLong(crc.getValue());
+		out.flush();
+		// replaced atomically, a concurrent start reads the old or the new cache
+		Path dir = cache.toAbsolutePath().getParent();
+		Path tmp = Files.createTempFile(dir, cache.getFileName().toString(), ".tmp");
+		try {
+			Files.write(tmp, bytes.toByteArray());
+			Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	// null if the cache is missing, unreadable, belongs to another spec or is
+	// damaged
+	private static CLIGrammar readCache(Path cache, long checksum, int specLength) {
+		if (!Files.isRegularFile(cache))
+			return null;
+		MappedByteBuffer buf;
+		try (FileChannel ch = FileChannel.open(cache, StandardOpenOption.READ)) {
+			if (ch.size() < 28 || ch.size() > Integer.MAX_VALUE)
+				return null;
+			buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		} catch (IOException | RuntimeException e) {
+			// compiled from the spec
+			return null;
+		}
+		try {
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getLong() != checksum
+					|| buf.getInt() != specLength)
+				return null;
+			int end = buf.limit() - 8;
+			CRC32C crc = new CRC32C();
+			crc.update(buf.duplicate().position(0).limit(end));
+			if (crc.getValue() != buf.getLong(end))
+				return null;
+			buf.limit(end);
+			return decode(buf);
+		} catch (RuntimeException e) {
+			// rewritten from the spec
+			return null;
+		}
+	}
+
+	// the parameters were checked when the cache was written, they are added
+	// without name checks and the token tables are filled by the stored slots
+	private static CLIGrammar decode(ByteBuffer buf) {
+		CLIRules rules = new CLIRules(readString(buf));
+		rules.listSeparator = buf.getChar();
+		rules.argumentFiles = ARGUMENT_FILES[buf.get()];
+		rules.prefixMatching = buf.get() != 0;
+		String configFile = readString(buf);
+		rules.configFile = configFile == null ? null : Paths.get(configFile);
+		int count = buf.getInt();
+		if (count < 0 || count > buf.remaining())
+			return null;
+		for (int i = 0; i < count; i++) {
+			String name = readString(buf), abbreviation = readString(buf);
+			int kind = buf.get();
+			Parameter p = rules.addChecked(name, abbreviation, kind == 2, kind != 0);
+			Parameter.Type type = TYPES[buf.get()];
+			boolean list = buf.get() != 0, hide = buf.get() != 0;
+			int repeat = buf.get();
+			String default_ = readString(buf), description = readString(buf);
+			switch (type) {
+			case INT:
+				p.asInt();
+				break;
+			case LONG:
+				p.asLong();
+				break;
+			case DOUBLE:
+				p.asDouble();
+				break;
+			case DURATION:
+				p.asDuration();
+				break;
+			case PATH:
+				p.asPath();
+				break;
+			case ENUM:
+				// never written, see cacheable
+				return null;
+			default:
+				break;
+			}
+			if (list)
+				p.treatArgumentAsList();
+			if (repeat == 2)
+				p.asProperties();
+			else if (repeat == 1)
+				p.repeatable();
+			if (hide)
+				p.hideValue();
+			if (default_ != null)
+				p.setDefault(default_);
+			if (description != null)
+				p.setDescription(description);
+			boolean hasMin = buf.get() != 0;
+			long min = buf.getLong();
+			if (hasMin)
+				p.setMinValue(min);
+			boolean hasMax = buf.get() != 0;
+			long max = buf.getLong();
+			if (hasMax)
+				p.setMaxValue(max);
+			int valid = buf.getInt();
+			if (valid < 0 || valid > buf.remaining())
+				return null;
+			String[] values = new String[valid];
+			for (int v = 0; v < valid; v++)
+				values[v] = readString(buf);
+			p.setValidValues(values);
+			String pattern = readString(buf), env = readString(buf), config = readString(buf);
+			if (pattern != null)
+				p.setPattern(pattern);
+			if (env != null)
+				p.fromEnv(env);
+			if (config != null)
+				p.fromConfig(config);
+		}
+		int[] slots = new int[count * 3];
+		for (int i = 0; i < slots.length; i++)
+			slots[i] = buf.getInt();
+		if (buf.hasRemaining())
+			return null;
+		return rules.compile(slots);
+	}
+
+	private static String readString(ByteBuffer buf) {
+		int len = buf.getInt();
+		if (len < 0)
+			return null;
+		if (len > buf.remaining())
+			throw new BufferUnderflowException();
+		byte[] b = new byte[len];
+		buf.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+}
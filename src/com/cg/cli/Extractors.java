@@ -0,0 +1,96 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Method handles (CLIParsed)T that read the converted argument of one
+ * parameter by its index, used by {@link CLIDispatcher} and {@link CLIBinder}.
+ * Numbers without argument and default are 0, like in generated parsers.
+ */
+final class Extractors {
+
+	private static final MethodHandle FLAG, ARGUMENT, NUMBER, DECIMAL, OBJECT, LIST, TO_ARRAY, VALUES,
+			VALUES_TO_ARRAY, PROPERTIES;
+	/** (CLIParsed)CLIParsed, the result of the subcommand */
+	static final MethodHandle SUBCOMMAND;
+	static {
+		MethodHandles.Lookup l = MethodHandles.lookup();
+		try {
+			FLAG = l.findVirtual(CLIParsed.class, "flag", MethodType.methodType(boolean.class, Parameter.class));
+			ARGUMENT = l.findVirtual(CLIParsed.class, "argument", MethodType.methodType(String.class, Parameter.class));
+			NUMBER = l.findVirtual(CLIParsed.class, "numberOrZero", MethodType.methodType(long.class, Parameter.class));
+			DECIMAL = l.findVirtual(CLIParsed.class, "decimalOrZero",
+					MethodType.methodType(double.class, Parameter.class));
+			OBJECT = l.findVirtual(CLIParsed.class, "object", MethodType.methodType(Object.class, Parameter.class));
+			LIST = l.findVirtual(CLIParsed.class, "list", MethodType.methodType(ArgumentList.class, Parameter.class));
+			TO_ARRAY = l.findVirtual(ArgumentList.class, "toArray", MethodType.methodType(String[].class));
+			VALUES = l.findVirtual(CLIParsed.class, "values", MethodType.methodType(ArgumentValues.class, Parameter.class));
+			VALUES_TO_ARRAY = l.findVirtual(ArgumentValues.class, "toArray", MethodType.methodType(String[].class));
+			PROPERTIES = l.findVirtual(CLIParsed.class, "properties", MethodType.methodType(Map.class, Parameter.class));
+			SUBCOMMAND = l.findVirtual(CLIParsed.class, "getSubcommandParsed", MethodType.methodType(CLIParsed.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private Extractors() {
+	}
+
+	/**
+	 * @return (CLIParsed)t for parameter p
+	 * @throws IllegalArgumentException if p cannot be passed as t
+	 */
+	static MethodHandle of(Parameter p, Class<?> t) {
+		MethodHandle getter;
+		Parameter.Type pt = p.getType();
+		if (t == boolean.class) {
+			check(p, t, p.isFlag());
+			getter = FLAG;
+		} else if (p.isFlag()) {
+			throw new IllegalArgumentException("flag " + p.getName() + " must be a boolean parameter, not " + t);
+		} else if (t == String.class) {
+			getter = ARGUMENT;
+		} else if (t == int.class || t == long.class) {
+			check(p, t, pt == Parameter.Type.INT || t == long.class && pt == Parameter.Type.LONG);
+			getter = NUMBER;
+		} else if (t == double.class) {
+			check(p, t, p.isNumber());
+			getter = DECIMAL;
+		} else if (t == Path.class || t == Duration.class || t.isEnum()) {
+			check(p, t, t == Path.class && pt == Parameter.Type.PATH
+					|| t == Duration.class && pt == Parameter.Type.DURATION
+					|| pt == Parameter.Type.ENUM && p.getEnumType() == t);
+			getter = OBJECT;
+		} else if (p.isRepeatable() && (t == ArgumentValues.class || t == List.class || t == String[].class)) {
+			getter = t == String[].class ? MethodHandles.filterReturnValue(VALUES, VALUES_TO_ARRAY) : VALUES;
+		} else if (t == Map.class) {
+			check(p, t, p.isProperties());
+			getter = PROPERTIES;
+		} else if (t == ArgumentList.class || t == List.class) {
+			getter = LIST;
+		} else if (t == String[].class) {
+			getter = MethodHandles.filterReturnValue(LIST, TO_ARRAY);
+		} else {
+			throw new IllegalArgumentException("unsupported type " + t.getName() + " for parameter " + p.getName());
+		}
+		MethodHandle ex = MethodHandles.insertArguments(getter, 1, p);
+		return MethodHandles.explicitCastArguments(ex, MethodType.methodType(t, CLIParsed.class));
+	}
+
+	private static void check(Parameter p, Class<?> t, boolean ok) {
+		if (!ok)
+			throw new IllegalArgumentException("parameter " + p.getName() + " of type " + p.getType()
+					+ " cannot be passed as " + t.getName());
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index over the long names of a grammar for unique prefix matching (a sorted
+ * array, searched binary) and "did you mean" suggestions (a BK-tree with
+ * Levenshtein distance). Built once per grammar, on first use.
+ */
+final class OptionIndex {
+
+	private final String[] sorted;
+	private final Parameter[] sortedParams;
+	private final Node root;
+
+	OptionIndex(Parameter[] params) {
+		Parameter[] ps = params.clone();
+		Arrays.sort(ps, (a, b) -> a.getName().compareTo(b.getName()));
+		sortedParams = ps;
+		sorted = new String[ps.length];
+		for (int i = 0; i < ps.length; i++)
+			sorted[i] = ps[i].getName();
+
+		Node r = null;
+		int[][] rows = rows(maxLength());
+		for (Parameter p : params) {
+			if (r == null)
+				r = new Node(p.getName());
+			else
+				r.add(p.getName(), rows);
+		}
+		root = r;
+	}
+
+	private int maxLength() {
+		int max = 0;
+		for (String s : sorted)
+			max = Math.max(max, s.length());
+		return max;
+	}
+
+	/**
+	 * @return the only parameter whose name starts with s[start..], or null if
+	 *         none or more than one do
+	 */
+	Parameter uniquePrefix(String s, int start) {
+		return uniquePrefix(s, start, s.length());
+	}
+
+	/**
+	 * Same as {@link #uniquePrefix(String, int)} for the prefix s[start..end).
+	 */
+	Parameter uniquePrefix(String s, int start, int end) {
+		int len = end - start;
+		if (len == 0)
+			return null;
+		int lo = firstWithPrefix(s, start, end);
+		if (lo >= sorted.length || !sorted[lo].regionMatches(0, s, start, len))
+			return null;
+		if (lo + 1 < sorted.length && sorted[lo + 1].regionMatches(0, s, start, len))
+			return null;
+		return sortedParams[lo];
+	}
+
+	/**
+	 * @return up to max names starting with s[start..], in sorted order
+	 */
+	List<String> withPrefix(String s, int start, int max) {
+		List<String> res = new ArrayList<>();
+		int len = s.length() - start;
+		for (int i = firstWithPrefix(s, start, s.length()); i < sorted.length && res.size() < max
+				&& sorted[i].regionMatches(0, s, start, len); i++)
+			res.add(sorted[i]);
+		return res;
+	}
+
+	// binary search for the first name >= prefix
+	private int firstWithPrefix(String s, int start, int end) {
+		int lo = 0, hi = sorted.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(sorted[mid], s, start, end) < 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	// compares name with the prefix s[start..end), a name starting with the
+	// prefix counts as equal
+	private static int compare(String name, String s, int start, int end) {
+		int len = end - start;
+		int n = Math.min(name.length(), len);
+		for (int i = 0; i < n; i++) {
+			int d = name.charAt(i) - s.charAt(start + i);
+			if (d != 0)
+				return d;
+		}
+		return name.length() >= len ? 0 : -1;
+	}
+
+	/**
+	 * @return up to max names with the smallest edit distance to word, nearest
+	 *         first
+	 */
+	List<String> suggest(String word, int max) {
+		List<String> res = new ArrayList<>();
+		if (root == null || word.length() == 0)
+			return res;
+		int tolerance = word.length() <= 3 ? 1 : word.length() <= 8 ? 2 : 3;
+		int[][] rows = rows(Math.max(word.length(), maxLength()));
+		// matches as distance << 32 | position in found, sorting them sorts by distance
+		List<String> found = new ArrayList<>();
+		List<Long> keys = new ArrayList<>();
+		ArrayList<Node> stack = new ArrayList<>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			Node n = stack.remove(stack.size() - 1);
+			int d = distance(word, n.word, rows);
+			if (d <= tolerance) {
+				keys.add(((long) d << 32) | found.size());
+				found.add(n.word);
+			}
+			for (int i = 0; i < n.size; i++)
+				if (n.dist[i] >= d - tolerance && n.dist[i] <= d + tolerance)
+					stack.add(n.children[i]);
+		}
+		keys.sort(null);
+		for (int i = 0; i < keys.size() && i < max; i++)
+			res.add(found.get((int) keys.get(i).longValue()));
+		return res;
+	}
+
+	private static int[][] rows(int length) {
+		return new int[][] { new int[length + 1], new int[length + 1] };
+	}
+
+	// Levenshtein distance with two reused rows
+	static int distance(String a, String b, int[][] rows) {
+		int[] prev = rows[0], curr = rows[1];
+		for (int j = 0; j <= b.length(); j++)
+			prev[j] = j;
+		for (int i = 1; i <= a.length(); i++) {
+			curr[0] = i;
+			char ca = a.charAt(i - 1);
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = ca == b.charAt(j - 1) ? 0 : 1;
+				curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+			}
+			int[] t = prev;
+			prev = curr;
+			curr = t;
+		}
+		return prev[b.length()];
+	}
+
+	private static final class Node {
+		final String word;
+		int[] dist = new int[2];
+		Node[] children = new Node[2];
+		int size;
+
+		Node(String word) {
+			this.word = word;
+		}
+
+		void add(String w, int[][] rows) {
+			Node n = this;
+			while (true) {
+				int d = distance(w, n.word, rows);
+				if (d == 0)
+					return;
+				Node child = null;
+				for (int i = 0; i < n.size; i++)
+					if (n.dist[i] == d)
+						child = n.children[i];
+				if (child == null) {
+					if (n.size == n.dist.length) {
+						n.dist = Arrays.copyOf(n.dist, n.size * 2);
+						n.children = Arrays.copyOf(n.children, n.size * 2);
+					}
+					n.dist[n.size] = d;
+					n.children[n.size++] = new Node(w);
+					return;
+				}
+				n = child;
+			}
+		}
+	}
+}
@@ -5,44 +5,517 @@
  */
 package com.cg.cli;
 
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.StringTokenizer;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+/**
+ * Definition of a parameter or flag. A Parameter holds no parse state, the
+ * values of a parse are kept by {@link CLIParsed}.
+ */
 public class Parameter {
 
+	/**
+	 * Type of the argument. Typed arguments are converted and validated once
+	 * during parsing, see {@link CLIParsed#getLong(String)} and friends.
+	 */
+	public enum Type {
+		STRING, LONG, INT, DOUBLE, DURATION, PATH, ENUM
+	}
+
+	private final CLIRules rules;
+	// a copy held by a CLIGrammar, it cannot be changed
+	private final boolean frozen;
 	private final String name, abbreviation;
-	private String argument, default_, description;
+	private String default_, description;
 	private final boolean isMandatory, expectsArguments;
-	private boolean hideValue = false, parsed = false, treatArgumentAsList = false;
+	private boolean hideValue = false, treatArgumentAsList = false, repeatable = false, properties = false;
 	private Long min, max;
-	private char listSeparator = ',';
 	private ArrayList<String> validValues = new ArrayList<>();
+	private Pattern pattern;
+	private Type type = Type.STRING;
+	private Class<? extends Enum<?>> enumType;
+	// getEnumConstants() copies the array on every call
+	private Enum<?>[] enumConstants;
+	private String environmentVariable, configKey;
+	// position in CLIRules, used as slot index by CLIParsed
+	final int index;
 
-	Parameter(String parameterLong, String parameterShort, boolean isMandatory, boolean expectsArguments) {
+	Parameter(CLIRules rules, String parameterLong, String parameterShort, boolean isMandatory,
+			boolean expectsArguments, int index) {
+		this.rules = rules;
+		this.frozen = false;
+		this.index = index;
 		this.name = parameterLong;
 		this.isMandatory = isMandatory;
 		this.expectsArguments = expectsArguments;
 		this.abbreviation = parameterShort;
 	}
 
+	/**
+	 * A frozen copy of p for a compiled grammar, later changes of p do not
+	 * affect the grammar.
+	 */
+	Parameter(Parameter p) {
+		this.rules = null;
+		this.frozen = true;
+		this.index = p.index;
+		this.name = p.name;
+		this.abbreviation = p.abbreviation;
+		this.isMandatory = p.isMandatory;
+		this.expectsArguments = p.expectsArguments;
+		this.default_ = p.default_;
+		this.description = p.description;
+		this.hideValue = p.hideValue;
+		this.treatArgumentAsList = p.treatArgumentAsList;
+		this.repeatable = p.repeatable;
+		this.properties = p.properties;
+		this.min = p.min;
+		this.max = p.max;
+		this.validValues = new ArrayList<>(p.validValues);
+		this.pattern = p.pattern;
+		this.type = p.type;
+		this.enumType = p.enumType;
+		this.enumConstants = p.enumConstants;
+		this.environmentVariable = p.environmentVariable;
+		this.configKey = p.configKey;
+	}
+
+	private void mutable() {
+		if (frozen)
+			throw new IllegalStateException("parameter " + name
+					+ " belongs to a compiled grammar, change it in its CLIRules and compile again");
+	}
+
+	// every change of a definition invalidates the compiled grammar
+	private Parameter changed() {
+		if (rules != null)
+			rules.changed();
+		return this;
+	}
+
 	public Parameter setMinValue(long min) {
+		mutable();
+		checkRange();
 		this.min = min;
-		return this;
+		if (type == Type.STRING)
+			type = Type.LONG;
+		return changed();
 	}
 	
+	/**
+	 * The argument (every element for lists) must be one of validValues.
+	 */
 	public Parameter setValidValues(String... validValues) {
+		mutable();
+		for (String value : validValues)
+			if (value == null)
+				throw new IllegalArgumentException("valid values of parameter " + name + " must not contain null");
 		for (String value: validValues)
 			this.validValues.add(value);
-		return this;
+		return changed();
+	}
+
+	private void checkRange() {
+		if (!expectsArguments)
+			throw new IllegalStateException("A flag cannot have a range(" + getName() + ")");
+		if (repeatable)
+			throw new IllegalStateException("A repeatable parameter cannot have a range(" + getName() + ")");
+	}
+
+	private Parameter setType(Type type) {
+		checkType(type);
+		this.type = type;
+		return changed();
+	}
+
+	private void checkType(Type type) {
+		mutable();
+		if (!expectsArguments)
+			throw new IllegalStateException("A flag cannot have a typed argument(" + getName() + ")");
+		if (repeatable && type != Type.STRING)
+			throw new IllegalStateException("A repeatable parameter cannot have a typed argument(" + getName() + ")");
+	}
+
+	/**
+	 * The argument must be a long, read it with {@link CLIParsed#getLong(String)}.
+	 */
+	public Parameter asLong() {
+		return setType(Type.LONG);
+	}
+
+	/**
+	 * The argument must be an int, read it with {@link CLIParsed#getInt(String)}.
+	 */
+	public Parameter asInt() {
+		return setType(Type.INT);
+	}
+
+	/**
+	 * The argument must be a floating point number, read it with
+	 * {@link CLIParsed#getDouble(String)}.
+	 */
+	public Parameter asDouble() {
+		return setType(Type.DOUBLE);
+	}
+
+	/**
+	 * The argument must be a duration like "500ms", "30s", "5m", "2h", "1d" or
+	 * ISO-8601 "PT30S", read it with {@link CLIParsed#getDuration(String)}.
+	 */
+	public Parameter asDuration() {
+		return setType(Type.DURATION);
+	}
+
+	/**
+	 * The argument must be a valid path, read it with
+	 * {@link CLIParsed#getPath(String)}.
+	 */
+	public Parameter asPath() {
+		return setType(Type.PATH);
+	}
+
+	/**
+	 * The argument must be the name of a constant of enumType (case is ignored),
+	 * read it with {@link CLIParsed#getEnum(String, Class)}.
+	 */
+	public <E extends Enum<E>> Parameter asEnum(Class<E> enumType) {
+		checkType(Type.ENUM);
+		this.enumType = enumType;
+		this.enumConstants = enumType.getEnumConstants();
+		return setType(Type.ENUM);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	Class<? extends Enum<?>> getEnumType() {
+		return enumType;
+	}
+
+	boolean isNumber() {
+		return type == Type.LONG || type == Type.INT || type == Type.DOUBLE;
+	}
+
+	boolean isObject() {
+		return type == Type.DURATION || type == Type.PATH || type == Type.ENUM;
+	}
+
+	/**
+	 * Converts a LONG, INT or DOUBLE argument, doubles are returned as raw long
+	 * bits.
+	 */
+	long toNumber(String s) throws CLIParsedException {
+		String problem = checkNumber(s);
+		if (problem != null)
+			throw invalid(problem);
+		return parseNumber(s);
+	}
+
+	// s was accepted by checkNumber
+	long parseNumber(String s) throws CLIParsedException {
+		try {
+			switch (type) {
+			case INT:
+				return Integer.parseInt(s);
+			case DOUBLE:
+				return Double.doubleToRawLongBits(Double.parseDouble(s));
+			default:
+				return Long.parseLong(s);
+			}
+		} catch (NumberFormatException nfe) {
+			throw invalid("Argument " + s + " for parameter " + getName() + " must be "
+					+ (type == Type.DOUBLE ? "a number" : type == Type.INT ? "an int" : "an integer"));
+		}
+	}
+
+	/**
+	 * Checks the syntax of a LONG, INT or DOUBLE argument without throwing a
+	 * NumberFormatException, invalid input is as cheap as valid input.
+	 *
+	 * @return null if s can be converted by {@link #toNumber(String)}, otherwise
+	 *         the message
+	 */
+	String checkNumber(String s) {
+		boolean valid;
+		switch (type) {
+		case INT:
+			valid = isInteger(s, Integer.MIN_VALUE, Integer.MAX_VALUE);
+			break;
+		case DOUBLE:
+			valid = isDecimal(s);
+			break;
+		default:
+			valid = isInteger(s, Long.MIN_VALUE, Long.MAX_VALUE);
+		}
+		if (valid)
+			return null;
+		return "Argument " + s + " for parameter " + getName() + " must be "
+				+ (type == Type.DOUBLE ? "a number" : type == Type.INT ? "an int" : "an integer");
+	}
+
+	// the rules of Long.parseLong, accumulated negative like there
+	private static boolean isInteger(String s, long min, long max) {
+		int len = s.length();
+		if (len == 0)
+			return false;
+		int i = 0;
+		long limit = -max;
+		char first = s.charAt(0);
+		if (first == '-' || first == '+') {
+			if (len == 1)
+				return false;
+			if (first == '-')
+				limit = min;
+			i = 1;
+		}
+		long multmin = limit / 10, r = 0;
+		for (; i < len; i++) {
+			int d = Character.digit(s.charAt(i), 10);
+			if (d < 0 || r < multmin)
+				return false;
+			r *= 10;
+			if (r < limit + d)
+				return false;
+			r -= d;
+		}
+		return true;
+	}
+
+	// the decimal syntax of Double.parseDouble, hex floats are left to it
+	private static boolean isDecimal(String s) {
+		int i = 0, n = s.length();
+		while (i < n && s.charAt(i) <= ' ')
+			i++;
+		while (n > i && s.charAt(n - 1) <= ' ')
+			n--;
+		if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-'))
+			i++;
+		if (s.startsWith("NaN", i) && i + 3 == n || s.startsWith("Infinity", i) && i + 8 == n)
+			return true;
+		if (s.startsWith("0x", i) || s.startsWith("0X", i))
+			return isHexDouble(s);
+		int digits = 0;
+		for (; i < n && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++)
+			digits++;
+		if (i < n && s.charAt(i) == '.')
+			for (i++; i < n && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++)
+				digits++;
+		if (digits == 0)
+			return false;
+		if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+			i++;
+			if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-'))
+				i++;
+			int exponent = 0;
+			for (; i < n && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++)
+				exponent++;
+			if (exponent == 0)
+				return false;
+		}
+		if (i < n && "fFdD".indexOf(s.charAt(i)) >= 0)
+			i++;
+		return i == n;
+	}
+
+	private static boolean isHexDouble(String s) {
+		try {
+			Double.parseDouble(s);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Converts a DURATION, PATH or ENUM argument.
+	 */
+	Object toObject(String s) throws CLIParsedException {
+		switch (type) {
+		case DURATION:
+			return toDuration(s);
+		case PATH:
+			try {
+				return Paths.get(s);
+			} catch (InvalidPathException e) {
+				throw invalid("Argument " + s + " for parameter " + getName() + " is not a valid path");
+			}
+		case ENUM:
+			for (Enum<?> e : enumConstants)
+				if (e.name().equalsIgnoreCase(s))
+					return e;
+			StringBuilder sb = new StringBuilder();
+			for (Enum<?> e : enumConstants)
+				sb.append(sb.length() > 0 ? "," : "").append(e.name());
+			throw invalid("Argument " + s + " for parameter " + getName() + " is not a valid value, valid values are="
+					+ sb);
+		default:
+			throw new IllegalStateException("not an object type: " + type);
+		}
+	}
+
+	private Duration toDuration(String s) throws CLIParsedException {
+		try {
+			if (s.length() > 0 && (s.charAt(0) == 'P' || s.charAt(0) == 'p' || s.charAt(0) == '-'))
+				return Duration.parse(s);
+			int i = 0;
+			while (i < s.length() && Character.isDigit(s.charAt(i)))
+				i++;
+			if (i == 0)
+				throw invalid(durationMessage(s));
+			// no substrings, the Duration is the only object created
+			long amount = Long.parseLong(s, 0, i, 10);
+			int unit = s.length() - i;
+			char c = unit > 0 ? s.charAt(i) : 0;
+			if (unit == 1) {
+				switch (c) {
+				case 's':
+					return Duration.ofSeconds(amount);
+				case 'm':
+					return Duration.ofMinutes(amount);
+				case 'h':
+					return Duration.ofHours(amount);
+				case 'd':
+					return Duration.ofDays(amount);
+				}
+			} else if (unit == 2 && s.charAt(i + 1) == 's') {
+				switch (c) {
+				case 'n':
+					return Duration.ofNanos(amount);
+				case 'u':
+					return Duration.ofNanos(Math.multiplyExact(amount, 1000L));
+				case 'm':
+					return Duration.ofMillis(amount);
+				}
+			}
+		} catch (DateTimeParseException | ArithmeticException | NumberFormatException e) {
+			// reported below
+		}
+		throw invalid(durationMessage(s));
+	}
+
+	private String durationMessage(String s) {
+		return "Argument " + s + " for parameter " + getName()
+				+ " must be a duration like 500ms, 30s, 5m, 2h, 1d or PT30S";
+	}
+
+	// conversion errors are user errors, a stack trace would only show the parser
+	private static CLIParsedException invalid(String message) {
+		return new CLIParsedException(message, null, false, false);
 	}
 	
-	public ArrayList<String> getValidValues() {
-		return validValues;
+	/**
+	 * If the parameter is not given on the command line, the argument is taken
+	 * from this environment variable. For a flag the values true, yes, on and 1
+	 * set it.
+	 */
+	public Parameter fromEnv(String variable) {
+		mutable();
+		if (variable == null || variable.length() == 0)
+			throw new IllegalArgumentException("environment variable of parameter " + name + " must have a value");
+		this.environmentVariable = variable;
+		return changed();
+	}
+
+	/**
+	 * If the parameter is neither given on the command line nor by its
+	 * environment variable, the argument is taken from this key of the config
+	 * file, see {@link CLIRules#setConfigFile(Path)}.
+	 */
+	public Parameter fromConfig(String key) {
+		mutable();
+		if (key == null || key.length() == 0)
+			throw new IllegalArgumentException("config key of parameter " + name + " must have a value");
+		this.configKey = key;
+		return changed();
+	}
+
+	public String getEnvironmentVariable() {
+		return environmentVariable;
+	}
+
+	public String getConfigKey() {
+		return configKey;
+	}
+
+	boolean hasSource() {
+		return environmentVariable != null || configKey != null;
+	}
+
+	/**
+	 * @return the valid values, read only, add values with
+	 *         {@link #setValidValues(String...)}
+	 */
+	public List<String> getValidValues() {
+		return Collections.unmodifiableList(validValues);
+	}
+
+	/**
+	 * The argument (every element for lists) must match the regular expression.
+	 */
+	public Parameter setPattern(String regex) {
+		mutable();
+		try {
+			this.pattern = Pattern.compile(regex);
+		} catch (PatternSyntaxException e) {
+			throw new IllegalArgumentException("invalid pattern for parameter " + name + ": " + e.getMessage(), e);
+		}
+		return changed();
+	}
+
+	public Pattern getPattern() {
+		return pattern;
 	}
 
 	public Parameter treatArgumentAsList() {
+		mutable();
+		if (repeatable)
+			throw new IllegalStateException("A repeatable parameter cannot be a list(" + getName() + ")");
 		this.treatArgumentAsList = true;
-		return this;
+		return changed();
+	}
+
+	/**
+	 * The parameter may be given more than once, all arguments are kept in
+	 * order, read them with {@link CLIParsed#getValues(String)}. The arguments
+	 * are strings, valid values and patterns are checked for each of them.
+	 */
+	public Parameter repeatable() {
+		mutable();
+		if (!expectsArguments)
+			throw new IllegalStateException("A flag cannot be repeatable(" + getName() + ")");
+		if (type != Type.STRING || treatArgumentAsList)
+			throw new IllegalStateException("A typed or list parameter cannot be repeatable(" + getName() + ")");
+		this.repeatable = true;
+		return changed();
+	}
+
+	public boolean isRepeatable() {
+		return repeatable;
+	}
+
+	/**
+	 * A repeatable parameter whose arguments are "key=value" pairs, like the -D
+	 * options of java. With an abbreviation the pair may follow it directly
+	 * ("-Dkey=value"). Read the pairs with
+	 * {@link CLIParsed#getProperty(String, String)}.
+	 */
+	public Parameter asProperties() {
+		repeatable();
+		this.properties = true;
+		return changed();
+	}
+
+	public boolean isProperties() {
+		return properties;
 	}
 
 	public boolean isArgumentList() {
@@ -50,8 +523,12 @@ public class Parameter {
 	}
 
 	public Parameter setMaxValue(long max) {
+		mutable();
+		checkRange();
 		this.max = max;
-		return this;
+		if (type == Type.STRING)
+			type = Type.LONG;
+		return changed();
 	}
 
 	public Long getMinValue() {
@@ -81,50 +558,29 @@ public class Parameter {
 	}
 
 	public Parameter setDescription(String description) {
+		mutable();
 		this.description = description;
-		return this;
+		return changed();
 	}
 
 	public boolean isMandatory() {
 		return isMandatory;
 	}
 
-	public void setArgument(String argument) {
-		this.argument = argument;
-	}
-
-	public String getArgument() {
-		if (!expectsArguments)
-			throw new IllegalStateException("A flag cannot have an argument(" + getName() + ")");
-		if (argument == null || "".equals(argument))
-			return default_;
-		if (treatArgumentAsList)
-			throw new IllegalStateException(
-					"this a list-argument, please call getArguments() instead of getArgument()");
-		return argument;
-	}
-
-	public String[] getArguments() {
-		ArrayList<String> args = new ArrayList<>();
-		StringTokenizer st = new StringTokenizer(argument, "" + listSeparator);
-		while (st.hasMoreTokens())
-			args.add(st.nextToken());
-		String[] res = new String[args.size()];
-		args.toArray(res);
-		return res;
-	}
-
 	public String getDefault() {
 		return default_;
 	}
 
 	void setDefault(String default_) {
+		mutable();
 		this.default_ = default_;
+		changed();
 	}
 
 	public Parameter hideValue() {
+		mutable();
 		this.hideValue = true;
-		return this;
+		return changed();
 	}
 
 	public boolean hideValueIfPossible() {
@@ -154,31 +610,19 @@ public class Parameter {
 	public boolean appliesTo(String currToken) {
 		if (currToken == null || "".equals(currToken))
 			return false;
-		if (currToken.equals("--" + getName()))
+		if (currToken.length() == name.length() + 2 && currToken.startsWith("--") && currToken.endsWith(name))
 			return true;
-		if (currToken.equals(abbreviation))
+		if (abbreviation != null && currToken.length() == abbreviation.length() + 1 && currToken.charAt(0) == '-'
+				&& currToken.endsWith(abbreviation))
 			return true;
 		return false;
 	}
 
-	public boolean wasParsed() {
-		return parsed;
-	}
-
-	public void setParsed() {
-		parsed = true;
-	}
-
 	@Override
 	public String toString() {
-		return "Parameter [name=" + name + ", argument=" + (hideValue ? "(hidden)" : argument) + ", default_="
-				+ default_ + ", description=" + description + ", abbreviation=" + abbreviation + ", isMandatory="
-				+ isMandatory + ", expectsArguments=" + expectsArguments + ", hideValue=" + hideValue + ", parsed="
-				+ parsed + "]";
-	}
-
-	void setListSeparator(char listSeparator) {
-		this.listSeparator = listSeparator;
+		return "Parameter [name=" + name + ", type=" + type + ", default_=" + default_ + ", description=" + description
+				+ ", abbreviation=" + abbreviation + ", isMandatory=" + isMandatory + ", expectsArguments="
+				+ expectsArguments + ", hideValue=" + hideValue + "]";
 	}
 
 }
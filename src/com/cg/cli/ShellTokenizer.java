@@ -0,0 +1,197 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits command strings into tokens by the quoting rules of a POSIX shell:
+ * <ul>
+ * <li>tokens are separated by blanks (space, tab, newline, carriage return)</li>
+ * <li>'...' keeps everything up to the next ' as it is</li>
+ * <li>"..." keeps everything, except that \ escapes $ ` " \ and newline</li>
+ * <li>outside of quotes \ escapes the next character, \ newline continues the
+ * line</li>
+ * <li># at the start of a token starts a comment up to the end of the line</li>
+ * </ul>
+ * Nothing is expanded, $, `, ;, | and &amp; are ordinary characters.
+ * <p>
+ * The input is any {@link CharSequence}, a {@link java.nio.CharBuffer} over a
+ * file as well. A token without quotes and escapes is handed to the
+ * {@link Sink} as a range of the input, only other tokens are copied into a
+ * reused buffer. An instance keeps that buffer and must not be shared between
+ * threads.
+ */
+public final class ShellTokenizer {
+
+	/**
+	 * Receives the tokens. s[start..end) is only valid during the call, s is the
+	 * input or the buffer of the tokenizer.
+	 */
+	public interface Sink {
+		void token(CharSequence s, int start, int end) throws CLIParsedException;
+	}
+
+	private final StringBuilder buffer = new StringBuilder(64);
+
+	/**
+	 * Tokenizes input[start..end) as one command, newlines are blanks.
+	 *
+	 * @throws CLIParsedException for an unterminated quote, and everything the
+	 *                            sink throws
+	 */
+	public void tokenize(CharSequence input, int start, int end, Sink sink) throws CLIParsedException {
+		scan(input, start, end, false, sink);
+	}
+
+	/**
+	 * Tokenizes the next command of input[start..end), a command ends at a
+	 * newline outside of quotes. Blank lines and comment lines before the command
+	 * are skipped.
+	 *
+	 * @return the index after the command, -1 if there is no command left
+	 */
+	public int tokenizeLine(CharSequence input, int start, int end, Sink sink) throws CLIParsedException {
+		int i = start;
+		while (true) {
+			while (i < end && isBlank(input.charAt(i)))
+				i++;
+			if (i < end && input.charAt(i) == '#') {
+				while (i < end && input.charAt(i) != '\n')
+					i++;
+				continue;
+			}
+			break;
+		}
+		if (i == end)
+			return -1;
+		return scan(input, i, end, true, sink);
+	}
+
+	/**
+	 * @return the tokens of command, for callers that want a String[]
+	 */
+	public static String[] split(CharSequence command) throws CLIParsedException {
+		List<String> tokens = new ArrayList<>();
+		new ShellTokenizer().tokenize(command, 0, command.length(),
+				(s, start, end) -> tokens.add(s.subSequence(start, end).toString()));
+		return tokens.toArray(new String[tokens.size()]);
+	}
+
+	private static boolean isBlank(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	// One pass over the input. While a token has neither quotes nor escapes it is
+	// only a range of the input, on the first quote or escape its characters so
+	// far are copied into the buffer and the rest goes there too.
+	private int scan(CharSequence in, int i, int end, boolean line, Sink sink) throws CLIParsedException {
+		StringBuilder buf = buffer;
+		int tokenStart = -1;
+		boolean copied = false;
+		while (i < end) {
+			char c = in.charAt(i);
+			if (isBlank(c)) {
+				if (tokenStart >= 0) {
+					emit(in, tokenStart, i, copied, sink);
+					tokenStart = -1;
+					copied = false;
+				}
+				i++;
+				if (line && c == '\n')
+					return i;
+				continue;
+			}
+			if (tokenStart < 0) {
+				if (c == '#') {
+					while (i < end && in.charAt(i) != '\n')
+						i++;
+					continue;
+				}
+				tokenStart = i;
+			}
+			if (c != '\'' && c != '"' && c != '\\') {
+				if (copied)
+					buf.append(c);
+				i++;
+				continue;
+			}
+			if (!copied) {
+				buf.setLength(0);
+				buf.append(in, tokenStart, i);
+				copied = true;
+			}
+			if (c == '\\') {
+				i++;
+				if (i == end) {
+					buf.append('\\');
+				} else if (in.charAt(i) == '\n') {
+					// line continuation, not part of the token
+					i++;
+					if (buf.length() == 0 && i - tokenStart == 2) {
+						tokenStart = -1;
+						copied = false;
+					}
+				} else {
+					buf.append(in.charAt(i++));
+				}
+			} else if (c == '\'') {
+				int close = i + 1;
+				while (close < end && in.charAt(close) != '\'')
+					close++;
+				if (close == end)
+					throw unterminated('\'', in, tokenStart, end);
+				buf.append(in, i + 1, close);
+				i = close + 1;
+			} else {
+				i = doubleQuoted(in, i + 1, end, tokenStart, buf);
+			}
+		}
+		if (tokenStart >= 0)
+			emit(in, tokenStart, end, copied, sink);
+		return end;
+	}
+
+	// appends the content of "..." starting after the opening quote, returns the
+	// index after the closing quote
+	private static int doubleQuoted(CharSequence in, int i, int end, int tokenStart, StringBuilder buf)
+			throws CLIParsedException {
+		while (i < end) {
+			char c = in.charAt(i);
+			if (c == '"')
+				return i + 1;
+			if (c == '\\' && i + 1 < end) {
+				char n = in.charAt(i + 1);
+				if (n == '\n') {
+					i += 2;
+					continue;
+				}
+				if (n == '$' || n == '`' || n == '"' || n == '\\') {
+					buf.append(n);
+					i += 2;
+					continue;
+				}
+			}
+			buf.append(c);
+			i++;
+		}
+		throw unterminated('"', in, tokenStart, end);
+	}
+
+	private static CLIParsedException unterminated(char quote, CharSequence in, int tokenStart, int end) {
+		int shown = Math.min(end, tokenStart + 40);
+		return new CLIParsedException("Unterminated " + quote + " in " + in.subSequence(tokenStart, shown)
+				+ (shown < end ? "..." : ""));
+	}
+
+	private void emit(CharSequence in, int start, int end, boolean copied, Sink sink) throws CLIParsedException {
+		if (copied)
+			sink.token(buffer, 0, buffer.length());
+		else
+			sink.token(in, start, end);
+	}
+}
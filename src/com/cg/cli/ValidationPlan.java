@@ -0,0 +1,148 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Conversion and validation of all parameters, compiled once per
+ * {@link CLIGrammar}. Only parameters that need work get a step, valid values
+ * are hashed, patterns compiled and min/max unboxed, so a parse only walks a
+ * flat array.
+ */
+final class ValidationPlan {
+
+	static final class Step {
+		final Parameter p;
+		final int index;
+		final boolean list, repeatable, number, object, isDouble;
+		final boolean hasMin, hasMax;
+		final long min, max;
+		// open addressing table of the valid values, null if there is no restriction
+		final String[] validValues;
+		final int validMask;
+		final String validValuesText;
+		final Pattern pattern;
+
+		Step(Parameter p) {
+			this.p = p;
+			this.index = p.index;
+			this.list = p.isArgumentList();
+			this.repeatable = p.isRepeatable();
+			this.number = !list && p.isNumber();
+			this.object = !list && p.isObject();
+			this.isDouble = p.getType() == Parameter.Type.DOUBLE;
+			this.hasMin = p.getMinValue() != null;
+			this.hasMax = p.getMaxValue() != null;
+			this.min = hasMin ? p.getMinValue() : Long.MIN_VALUE;
+			this.max = hasMax ? p.getMaxValue() : Long.MAX_VALUE;
+			if (p.getValidValues().isEmpty()) {
+				this.validValues = null;
+				this.validMask = 0;
+				this.validValuesText = null;
+			} else {
+				int size = 4;
+				while (size < p.getValidValues().size() * 2)
+					size <<= 1;
+				this.validValues = new String[size];
+				this.validMask = size - 1;
+				for (String v : p.getValidValues()) {
+					int i = v.hashCode() & validMask;
+					while (validValues[i] != null && !validValues[i].equals(v))
+						i = (i + 1) & validMask;
+					validValues[i] = v;
+				}
+				this.validValuesText = String.join(",", p.getValidValues());
+			}
+			this.pattern = p.getPattern();
+		}
+
+		boolean checksValue() {
+			return validValues != null || pattern != null;
+		}
+
+		/**
+		 * Checks arg[start..end) without copying it, matcher is a reusable matcher
+		 * of the pattern (null without pattern).
+		 *
+		 * @return null if the value is valid, otherwise the message
+		 */
+		String checkValue(String arg, int start, int end, Matcher matcher) {
+			if (validValues != null && !isValid(arg, start, end))
+				return "Argument " + arg.substring(start, end) + " for parameter " + p.getName()
+						+ " is not a valid value, valid values are=" + validValuesText;
+			if (matcher != null) {
+				matcher.reset(arg).region(start, end);
+				boolean matches = matcher.matches();
+				matcher.reset("");
+				if (!matches)
+					return "Argument " + arg.substring(start, end) + " for parameter " + p.getName()
+							+ " does not match " + pattern.pattern();
+			}
+			return null;
+		}
+
+		// same hash as String.hashCode, computed over the region
+		private boolean isValid(String s, int start, int end) {
+			int h = 0;
+			for (int j = start; j < end; j++)
+				h = 31 * h + s.charAt(j);
+			int i = h & validMask;
+			String k;
+			while ((k = validValues[i]) != null) {
+				if (CLIGrammar.regionEquals(k, s, start, end))
+					return true;
+				i = (i + 1) & validMask;
+			}
+			return false;
+		}
+
+		/**
+		 * @return null if n is within min..max, otherwise the message
+		 */
+		String checkRange(String arg, long n) {
+			if (isDouble) {
+				double d = Double.longBitsToDouble(n);
+				if (hasMin && min > d)
+					return "Argument " + arg + " for parameter " + p.getName() + " is less than minValue " + min;
+				if (hasMax && max < d)
+					return "Argument " + arg + " for parameter " + p.getName() + " is greater than maxValue " + max;
+			} else {
+				if (min > n)
+					return "Argument " + n + " for parameter " + p.getName() + " is less than minValue " + min;
+				if (max < n)
+					return "Argument " + n + " for parameter " + p.getName() + " is greater than maxValue " + max;
+			}
+			return null;
+		}
+	}
+
+	final Step[] steps;
+	// the step of a parameter by Parameter.index, null if it has none
+	private final Step[] byIndex;
+
+	ValidationPlan(Parameter[] params) {
+		int n = 0;
+		Step[] all = new Step[params.length];
+		byIndex = new Step[params.length];
+		for (Parameter p : params) {
+			if (p.isFlag())
+				continue;
+			Step s = new Step(p);
+			if (s.list || s.number || s.object || s.checksValue()) {
+				all[n++] = s;
+				byIndex[p.index] = s;
+			}
+		}
+		steps = new Step[n];
+		System.arraycopy(all, 0, steps, 0, n);
+	}
+
+	Step step(Parameter p) {
+		return byIndex[p.index];
+	}
+}
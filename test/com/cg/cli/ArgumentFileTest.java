@@ -0,0 +1,108 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArgumentFileTest {
+
+	@TempDir
+	Path dir;
+
+	private static CLIGrammar grammar(CLIRules.ArgumentFiles mode) {
+		CLIRules rules = new CLIRules(null);
+		rules.setArgumentFiles(mode);
+		rules.addOptional("user", "u", null);
+		rules.addOptional("name", "n", null);
+		rules.addFlag("verbose", "v");
+		return rules.compile();
+	}
+
+	private Path write(String name, String content) throws IOException {
+		return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void linesAreArguments() throws Exception {
+		Path f = write("args", "--name\na b\n");
+		CLIParsed parsed = new CLIParsed(grammar(CLIRules.ArgumentFiles.LINES), new String[] { "@" + f, "-v" });
+		assertEquals("a b", parsed.getArgument("name"));
+		assertTrue(parsed.hasFlag("verbose"));
+	}
+
+	@Test
+	void shellModeQuotesAndComments() throws Exception {
+		Path f = write("args", "# the user\n--user 'bob smith'\n--name \"x \\\"y\\\"\"\n");
+		CLIParsed parsed = new CLIParsed(grammar(CLIRules.ArgumentFiles.SHELL), new String[] { "@" + f });
+		assertEquals("bob smith", parsed.getArgument("user"));
+		assertEquals("x \"y\"", parsed.getArgument("name"));
+	}
+
+	@Test
+	void nestedFilesAreExpanded() throws Exception {
+		Path inner = write("inner", "--user bob");
+		Path outer = write("outer", "@" + inner + " -v");
+		CLIParsed parsed = new CLIParsed(grammar(CLIRules.ArgumentFiles.SHELL), new String[] { "@" + outer });
+		assertEquals("bob", parsed.getArgument("user"));
+		assertTrue(parsed.hasFlag("verbose"));
+	}
+
+	@Test
+	void disabledKeepsTheToken() throws Exception {
+		CLIParsed parsed = new CLIParsed(grammar(CLIRules.ArgumentFiles.DISABLED),
+				new String[] { "--user", "@nofile" });
+		assertEquals("@nofile", parsed.getArgument("user"));
+	}
+
+	@Test
+	void missingFileIsReported() {
+		CLIParsedException e = assertThrows(CLIParsedException.class, () -> new CLIParsed(
+				grammar(CLIRules.ArgumentFiles.LINES), new String[] { "@" + dir.resolve("missing") }));
+		assertEquals(CLIDiagnostic.Kind.ARGUMENT_FILE, e.getDiagnostic().getKind());
+	}
+
+	@Test
+	void fileIncludingItselfIsReported() throws Exception {
+		Path f = dir.resolve("self");
+		write("self", "-v @" + f);
+		CLIParsedException e = assertThrows(CLIParsedException.class,
+				() -> new CLIParsed(grammar(CLIRules.ArgumentFiles.SHELL), new String[] { "@" + f }));
+		assertEquals(CLIDiagnostic.Kind.ARGUMENT_FILE, e.getDiagnostic().getKind());
+		assertTrue(e.getMessage().contains("includes itself"), e.getMessage());
+	}
+
+	@Test
+	void cycleOfTwoFilesIsReported() throws Exception {
+		Path a = dir.resolve("a"), b = dir.resolve("b");
+		write("a", "@" + b);
+		write("b", "@" + a);
+		CLIParseResult r = new CLIParsed(grammar(CLIRules.ArgumentFiles.SHELL)).tryParse(new String[] { "@" + a });
+		assertFalse(r.isOk());
+		assertEquals(CLIDiagnostic.Kind.ARGUMENT_FILE, r.getDiagnostics().get(0).getKind());
+	}
+
+	@Test
+	void sameFileTwiceIsNoCycle() throws Exception {
+		Path user = write("user", "--user bob");
+		Path f = write("both", "@" + user + "\n");
+		CLIRules rules = new CLIRules(null);
+		rules.setArgumentFiles(CLIRules.ArgumentFiles.SHELL);
+		rules.addOptional("user", null).repeatable();
+		CLIParsed parsed = new CLIParsed(rules.compile(), new String[] { "@" + f, "@" + user });
+		assertEquals(2, parsed.getValues("user").size());
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class ArgumentListTest {
+
+	private static CLIGrammar grammar() {
+		CLIRules rules = new CLIRules(null);
+		rules.addOptional("tables", "t", "a,b").treatArgumentAsList();
+		rules.addOptional("name", null);
+		return rules.compile();
+	}
+
+	@Test
+	void splitSkipsEmptyElements() {
+		assertEquals(List.of("a", "b", "c"), ArgumentList.split(",a,,b,c,", ','));
+		assertEquals(List.of(), ArgumentList.split("", ','));
+		assertEquals(List.of("x;y"), ArgumentList.split("x;y", ','));
+	}
+
+	@Test
+	void listIsSplitOnFirstAccessAndKeptUntilTheNextParse() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(grammar(), new String[] { "-t", "x,y,z" });
+		ArgumentList l = parsed.getList("tables");
+		assertEquals(List.of("x", "y", "z"), l);
+		assertSame(l, parsed.getList("tables"));
+		assertEquals(List.of("x", "y", "z"), List.of(parsed.getArray("tables")));
+		parsed.parse(new String[] { "-t", "u" });
+		assertNotSame(l, parsed.getList("tables"));
+		assertEquals(List.of("u"), parsed.getList("tables"));
+	}
+
+	@Test
+	void defaultIsSplitOncePerGrammar() throws CLIParsedException {
+		CLIGrammar g = grammar();
+		ArgumentList l = new CLIParsed(g, new String[0]).getList("tables");
+		assertEquals(List.of("a", "b"), l);
+		assertSame(l, new CLIParsed(g, new String[0]).getList("tables"));
+	}
+
+	@Test
+	void otherParametersAreSplitOnDemand() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(grammar(), new String[] { "--name", "p,q" });
+		assertEquals(List.of("p", "q"), parsed.getList("name"));
+		assertEquals("p,q", parsed.getArgument("name"));
+		assertThrows(IllegalStateException.class,
+				() -> new CLIParsed(grammar(), new String[] { "-t", "x" }).getArgument("tables"));
+	}
+
+	@Test
+	void streamOfElements() {
+		assertEquals(List.of("A", "B"),
+				ArgumentList.split("a,b", ',').stream().map(String::toUpperCase).collect(Collectors.toList()));
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class CLIBatchTest {
+
+	private static CLIGrammar grammar() {
+		CLIRules rules = new CLIRules(null);
+		rules.addRequired("id", "i").asLong();
+		rules.addOptional("user", "u", null).fromEnv("BATCH_USER");
+		rules.addFlag("verbose", "v");
+		return rules.compile();
+	}
+
+	// argv i is invalid for every multiple of 7
+	private static Stream<String[]> argvs(int n) {
+		return LongStream.range(0, n).mapToObj(i -> i % 7 == 0 ? new String[] { "--id", "x" + i }
+				: i % 2 == 0 ? new String[] { "--id", Long.toString(i), "-v" } : new String[] { "-i", Long.toString(i) });
+	}
+
+	@Test
+	void resultsInInputOrder() {
+		CLIBatch batch = new CLIBatch(grammar(), Map.of("BATCH_USER", "amy"), 3);
+		List<CLIBatch.Result<String>> results = batch
+				.parse(argvs(1000), p -> p.getLong("id") + " " + p.hasFlag("verbose") + " " + p.getArgument("user"))
+				.collect(Collectors.toList());
+		assertEquals(1000, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			CLIBatch.Result<String> r = results.get(i);
+			assertEquals(i, r.getIndex());
+			if (i % 7 == 0) {
+				assertFalse(r.isOk());
+				assertNull(r.getValue());
+			} else {
+				assertTrue(r.isOk(), r.toString());
+				assertEquals(i + " " + (i % 2 == 0) + " amy", r.getValue());
+				assertNull(r.getError());
+			}
+		}
+	}
+
+	@Test
+	void failuresOnly() {
+		List<Long> failed = new CLIBatch(grammar(), Map.of(), 5).failures(argvs(100)).map(CLIBatch.Result::getIndex)
+				.collect(Collectors.toList());
+		assertEquals(LongStream.range(0, 100).filter(i -> i % 7 == 0).boxed().collect(Collectors.toList()), failed);
+	}
+
+	@Test
+	void errorListsAllProblems() {
+		CLIBatch.Result<Void> r = new CLIBatch(grammar(), Map.of(), 4)
+				.failures(Stream.<String[]>of(new String[] { "--nope", "-v", "-v" })).findFirst().get();
+		assertEquals(3, r.getDiagnostics().size());
+		assertEquals(CLIParseResult.message(r.getDiagnostics()), r.getError());
+		assertTrue(r.getError().startsWith("Unknown parameter: --nope; "), r.getError());
+		assertEquals(List.of("--nope", "-v", "-v"), List.of(r.getArgs()));
+	}
+
+	@Test
+	void stateOfTheLastArgvDoesNotLeak() {
+		List<CLIBatch.Result<String>> results = new CLIBatch(grammar(), Map.of(), 2)
+				.parse(Stream.of(new String[] { "-i", "1", "-u", "bob", "-v" }, new String[] { "-i", "2" },
+						new String[] { "-i", "3", "-v" }), p -> p.getArgument("user") + " " + p.hasFlag("verbose"))
+				.collect(Collectors.toList());
+		assertEquals(List.of("bob true", "null false", "null true"),
+				results.stream().map(CLIBatch.Result::getValue).collect(Collectors.toList()));
+	}
+
+	@Test
+	void mapperExceptionIsThrownToTheConsumer() {
+		Stream<CLIBatch.Result<Object>> s = new CLIBatch(grammar(), Map.of(), 2).parse(argvs(10), p -> {
+			throw new IllegalStateException("mapper failed");
+		});
+		assertEquals("mapper failed", assertThrows(IllegalStateException.class, s::count).getMessage());
+	}
+
+	@Test
+	void invalidBatchSize() {
+		assertThrows(IllegalArgumentException.class, () -> new CLIBatch(grammar(), Map.of(), 0));
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CLIBinderTest {
+
+	enum Mode {
+		FAST, SLOW
+	}
+
+	@CLICommand(value = "Copies files", listSeparator = ';')
+	record Copy(@CLIOption(required = true, abbreviation = "s") String source,
+			@CLIOption(defaultValue = "4", min = 1, max = 64) int threads, @CLIOption long limit,
+			@CLIOption(defaultValue = "0.5") double ratio, @CLIOption Path target, @CLIOption Duration timeout,
+			@CLIOption(defaultValue = "FAST") Mode mode, @CLIOption String[] tables, @CLIOption List<String> tags,
+			@CLIOption(name = "force", abbreviation = "f") boolean overwrite, String notAnOption) {
+	}
+
+	static class Sync {
+		@CLIOption(required = true)
+		String source;
+		@CLIOption(defaultValue = "2")
+		int threads;
+		@CLIOption(validValues = { "full", "delta" }, defaultValue = "full")
+		String kind;
+		@CLIOption
+		boolean dry;
+		String unbound = "kept";
+	}
+
+	static class FinalField {
+		@CLIOption
+		final String source = null;
+	}
+
+	record Unsupported(@CLIOption Object value) {
+	}
+
+	record RequiredFlag(@CLIOption(required = true) boolean force) {
+	}
+
+	record Other(@CLIOption String user) {
+	}
+
+	@Test
+	void record() throws CLIParsedException {
+		Copy c = CLIBinder.of(Copy.class).parse(new String[] { "-s", "a.txt", "--threads", "8", "--limit",
+				"100000000000", "--target", "out", "--timeout", "PT2S", "--mode", "SLOW", "--tables", "x;y", "--tags",
+				"p;q;r", "-f" });
+		assertEquals("a.txt", c.source());
+		assertEquals(8, c.threads());
+		assertEquals(100000000000L, c.limit());
+		assertEquals(0.5, c.ratio());
+		assertEquals(Paths.get("out"), c.target());
+		assertEquals(Duration.ofSeconds(2), c.timeout());
+		assertEquals(Mode.SLOW, c.mode());
+		assertArrayEquals(new String[] { "x", "y" }, c.tables());
+		assertEquals(List.of("p", "q", "r"), c.tags());
+		assertTrue(c.overwrite());
+		assertNull(c.notAnOption());
+	}
+
+	@Test
+	void defaultsAndZeros() throws CLIParsedException {
+		Copy c = CLIBinder.of(Copy.class).parse(new String[] { "-s", "a.txt" });
+		assertEquals(4, c.threads());
+		assertEquals(0, c.limit());
+		assertNull(c.target());
+		assertNull(c.timeout());
+		assertEquals(Mode.FAST, c.mode());
+		assertFalse(c.overwrite());
+	}
+
+	@Test
+	void rulesFromTheAnnotations() {
+		CLIBinder<Copy> b = CLIBinder.of(Copy.class);
+		assertSame(b, CLIBinder.of(Copy.class));
+		CLIRules rules = b.rules();
+		assertEquals("Copies files", rules.getPurpose());
+		CLIGrammar g = b.grammar();
+		assertTrue(g.get("source").isMandatory());
+		assertEquals("s", g.get("source").getAbbreviation());
+		assertEquals(64L, g.get("threads").getMaxValue());
+		assertTrue(g.get("force").isFlag());
+		assertNull(g.get("overwrite"));
+		assertNull(g.get("notAnOption"));
+		assertThrows(CLIParsedException.class, () -> b.parse(new String[0]));
+		assertThrows(CLIParsedException.class, () -> b.parse(new String[] { "-s", "a", "--threads", "65" }));
+		assertThrows(CLIParsedException.class, () -> b.parse(new String[] { "-s", "a", "--mode", "MEDIUM" }));
+	}
+
+	@Test
+	void classWithFields() throws CLIParsedException {
+		Sync s = new CLIParsed(CLIRules.from(Sync.class), new String[] { "--source", "dir", "--kind", "delta",
+				"--dry" }).bind(Sync.class);
+		assertEquals("dir", s.source);
+		assertEquals(2, s.threads);
+		assertEquals("delta", s.kind);
+		assertTrue(s.dry);
+		assertEquals("kept", s.unbound);
+		assertThrows(CLIParsedException.class,
+				() -> CLIBinder.of(Sync.class).parse(new String[] { "--source", "d", "--kind", "partial" }));
+	}
+
+	@Test
+	void extendedRules() throws CLIParsedException {
+		CLIRules rules = CLIRules.from(Sync.class);
+		rules.addFlag("verbose", "v");
+		CLIParsed parsed = new CLIParsed(rules, new String[] { "--source", "dir", "-v" });
+		Sync s = parsed.bind(Sync.class);
+		assertEquals("dir", s.source);
+		assertTrue(parsed.hasFlag("verbose"));
+		assertEquals("dir", parsed.bind(Sync.class).source);
+	}
+
+	@Test
+	void subcommandRules() throws CLIParsedException {
+		CLIRules rules = new CLIRules(null);
+		rules.addSubcommand("sync", "syncs", () -> CLIRules.from(Sync.class));
+		rules.addSubcommand("copy", "copies", () -> CLIRules.from(Copy.class));
+		CLIGrammar g = rules.compile();
+		assertEquals("x", new CLIParsed(g, new String[] { "sync", "--source", "x" }).getSubcommandParsed()
+				.bind(Sync.class).source);
+		assertEquals(3, new CLIParsed(g, new String[] { "copy", "-s", "y", "--threads", "3" }).getSubcommandParsed()
+				.bind(Copy.class).threads());
+	}
+
+	@Test
+	void invalidTypesAndGrammars() throws CLIParsedException {
+		assertThrows(IllegalArgumentException.class, () -> CLIBinder.of(FinalField.class));
+		assertThrows(IllegalArgumentException.class, () -> CLIBinder.of(Unsupported.class));
+		assertThrows(IllegalArgumentException.class, () -> CLIBinder.of(RequiredFlag.class));
+		assertThrows(IllegalArgumentException.class, () -> CLIBinder.of(String.class));
+
+		CLIParsed other = new CLIParsed(CLIRules.from(Other.class), new String[] { "--user", "bob" });
+		assertEquals("bob", other.bind(Other.class).user());
+		assertThrows(IllegalArgumentException.class, () -> other.bind(Sync.class));
+		CLIRules rules = new CLIRules(null);
+		rules.addRequired("source", null);
+		rules.addOptional("threads", null, "2");
+		rules.addOptional("kind", null, "full");
+		rules.addFlag("dry", null);
+		// threads is a string parameter here
+		assertThrows(IllegalArgumentException.class,
+				() -> new CLIParsed(rules, new String[] { "--source", "s" }).bind(Sync.class));
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CLICompletionTest {
+
+	enum Level {
+		LOW, HIGH
+	}
+
+	@TempDir
+	Path dir;
+
+	private static CLIRules rules() {
+		CLIRules rules = new CLIRules(null);
+		rules.addOptional("mode", "m", null).setValidValues("slow", "fast", "medium");
+		rules.addOptional("level", null).asEnum(Level.class);
+		rules.addOptional("tags", null).setValidValues("red", "green", "blue").treatArgumentAsList();
+		rules.addOptional("user", "u", null);
+		rules.addFlag("verbose", "v");
+		return rules;
+	}
+
+	private static CLICompletion completion() {
+		return rules().compile().completion();
+	}
+
+	@Test
+	void optionsByPrefix() {
+		CLICompletion c = completion();
+		assertEquals(List.of("--level", "--mode", "--tags", "--user", "--verbose"), c.complete(new String[0], 0));
+		assertEquals(List.of("--level", "--mode", "--tags", "--user", "--verbose"),
+				c.complete(new String[] { "--" }, 0));
+		assertEquals(List.of("--verbose"), c.complete(new String[] { "--v" }, 0));
+		assertEquals(List.of("--level", "--mode", "--tags", "--user", "--verbose", "-m", "-u", "-v"),
+				c.complete(new String[] { "-" }, 0));
+	}
+
+	@Test
+	void givenOptionsAreNotOfferedAgain() {
+		assertEquals(List.of("--level", "--mode", "--tags", "--user"),
+				completion().complete(new String[] { "-v", "" }, 1));
+		assertEquals(List.of("--level", "--tags", "--user", "--verbose"),
+				completion().complete(new String[] { "--mode", "fast", "--" }, 2));
+	}
+
+	@Test
+	void argumentsFromValidValuesAndEnums() {
+		CLICompletion c = completion();
+		assertEquals(List.of("fast", "medium", "slow"), c.complete(new String[] { "--mode", "" }, 1));
+		assertEquals(List.of("medium"), c.complete(new String[] { "-m", "me" }, 1));
+		assertEquals(List.of("HIGH", "LOW"), c.complete(new String[] { "--level" }, 1));
+		assertEquals(List.of(), c.complete(new String[] { "--user", "" }, 1));
+	}
+
+	@Test
+	void listCompletesItsLastItem() {
+		assertEquals(List.of("red,blue", "red,green", "red,red"),
+				completion().complete(new String[] { "--tags", "red," }, 1));
+		assertEquals(List.of("red,green"), completion().complete(new String[] { "--tags", "red,g" }, 1));
+	}
+
+	@Test
+	void subcommands() {
+		CLIRules rules = new CLIRules(null);
+		rules.addFlag("verbose", "v");
+		rules.addSubcommand("copy", null, () -> {
+			CLIRules copy = new CLIRules(null);
+			copy.addOptional("mode", null).setValidValues("fast", "slow");
+			copy.addFlag("force");
+			return copy;
+		});
+		rules.addSubcommand("clean", null, () -> new CLIRules(null));
+		CLICompletion c = rules.compile().completion();
+		assertEquals(List.of("clean", "copy"), c.complete(new String[] { "c" }, 0));
+		assertEquals(List.of("--force", "--mode"), c.complete(new String[] { "-v", "copy", "--" }, 2));
+		assertEquals(List.of("fast"), c.complete(new String[] { "copy", "--mode", "f" }, 2));
+		assertEquals(List.of(), c.complete(new String[] { "move", "" }, 1));
+	}
+
+	@Test
+	void cursorOutsideOfArgvIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> completion().complete(new String[0], 1));
+	}
+
+	@Test
+	void answerOfARequest() {
+		assertEquals("fast\nmedium\nslow\n",
+				completion().answer(new String[] { CLICompletion.REQUEST, "1", "--mode", "" }));
+		assertThrows(IllegalArgumentException.class, () -> completion().answer(new String[] { "--mode" }));
+	}
+
+	@Test
+	void scriptsContainNamesAndValues() {
+		String bash = completion().script(CLICompletion.Shell.BASH, "tool");
+		assertTrue(bash.contains("complete -o default -F _tool tool"), bash);
+		assertTrue(bash.contains("fast medium slow"), bash);
+		String fish = completion().script(CLICompletion.Shell.FISH, "tool");
+		assertTrue(fish.contains("complete -c tool"), fish);
+		String client = CLICompletion.script(CLICompletion.Shell.BASH, "tool", "tool-client");
+		assertTrue(client.contains("tool-client " + CLICompletion.REQUEST), client);
+	}
+
+	@Test
+	void clientAsksTheServer() throws IOException {
+		Path socket = dir.resolve("c.sock");
+		try (CLIServer server = new CLIServer(rules(), (parsed, ctx) -> 0, socket).start()) {
+			assertEquals(List.of("fast", "medium", "slow"),
+					CLIClient.complete(socket, new String[] { "--mode", "" }, 1));
+			assertEquals(List.of(), CLIClient.complete(socket, new String[] { "--user", "" }, 1));
+		}
+	}
+
+	@Test
+	void clientAcceptsALastLineWithoutNewline() throws Exception {
+		Path socket = dir.resolve("n.sock");
+		try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(socket));
+			Thread t = new Thread(() -> {
+				try (SocketChannel ch = server.accept()) {
+					DataInputStream in = new DataInputStream(Channels.newInputStream(ch));
+					in.readByte();
+					for (int n = in.readInt(); n > 0; n--)
+						CLIServer.readString(in, CLIServer.MAX_STRING);
+					in.readInt();
+					DataOutputStream out = new DataOutputStream(Channels.newOutputStream(ch));
+					out.writeByte(CLIServer.STDOUT);
+					CLIServer.writeString(out, "alpha\nbe");
+					out.writeByte(CLIServer.STDOUT);
+					CLIServer.writeString(out, "ta");
+					out.writeByte(CLIServer.EXIT);
+					out.writeInt(0);
+					out.flush();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+			t.start();
+			assertEquals(List.of("alpha", "beta"), CLIClient.complete(socket, new String[] { "" }, 0));
+			t.join();
+		}
+	}
+}
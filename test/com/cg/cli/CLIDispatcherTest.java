@@ -0,0 +1,193 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class CLIDispatcherTest {
+
+	// the tests are not compiled with -parameters, routes name their parameters
+	static class Tool {
+		final List<String> calls = new ArrayList<>();
+
+		@CLIRoute(parameters = { "source", "threads" })
+		int copy(String source, int threads) {
+			calls.add("copy " + source + " " + threads);
+			return threads;
+		}
+
+		@CLIRoute(flags = "dry", parameters = { "source", "" })
+		void dryRun(String source, CLIParsed parsed) {
+			calls.add("dry " + source + " " + parsed.hasFlag("force"));
+		}
+
+		@CLIRoute(flags = { "dry", "force" }, parameters = "force")
+		int forcedDryRun(boolean force) {
+			calls.add("forced dry " + force);
+			return 7;
+		}
+	}
+
+	private static CLIRules rules() {
+		CLIRules rules = new CLIRules(null);
+		rules.addOptional("source", "s", "a.txt");
+		rules.addOptional("threads", "t", "4").asInt();
+		rules.addFlag("dry", null);
+		rules.addFlag("force", "f");
+		rules.addFlag("verbose", "v");
+		return rules;
+	}
+
+	private static CLIParsed parse(CLIGrammar grammar, String... args) throws CLIParsedException {
+		return new CLIParsed(grammar, args);
+	}
+
+	@Test
+	void routeWithTheMostGivenFlagsWins() throws Exception {
+		CLIGrammar g = rules().compile();
+		Tool tool = new Tool();
+		CLIDispatcher d = new CLIDispatcher(g).register(tool);
+		assertEquals(8, d.dispatch(parse(g, "-s", "b.txt", "-t", "8")));
+		assertEquals(4, d.dispatch(parse(g, "-v")));
+		assertEquals(0, d.dispatch(parse(g, "--dry", "-s", "c.txt", "-v")));
+		assertEquals(7, d.dispatch(parse(g, "--dry", "-f")));
+		assertEquals(4, d.dispatch(parse(g, "-f")));
+		assertEquals(List.of("copy b.txt 8", "copy a.txt 4", "dry c.txt false", "forced dry true", "copy a.txt 4"),
+				tool.calls);
+	}
+
+	@Test
+	void routesWithTheSameNumberOfFlagsConflict() throws Exception {
+		CLIGrammar g = rules().compile();
+		CLIDispatcher d = new CLIDispatcher(g);
+		d.register("", new String[] { "dry" }, (p, c) -> 1);
+		d.register("", new String[] { "verbose" }, (p, c) -> 2);
+		assertEquals(1, d.dispatch(parse(g, "--dry")));
+		assertEquals(2, d.dispatch(parse(g, "-v")));
+		CLIParsedException e = assertThrows(CLIParsedException.class, () -> d.dispatch(parse(g, "--dry", "-v")));
+		assertTrue(e.getMessage().contains("cannot be combined"), e.getMessage());
+		e = assertThrows(CLIParsedException.class, () -> d.dispatch(parse(g)));
+		assertEquals("Nothing to do for these options", e.getMessage());
+	}
+
+	@Test
+	void invalidRoutesAreRejectedWhenRegistered() {
+		CLIGrammar g = rules().compile();
+		CLIDispatcher d = new CLIDispatcher(g).register(new Tool());
+		assertThrows(IllegalArgumentException.class, () -> d.register("", new String[0], (p, c) -> 0));
+		assertThrows(IllegalArgumentException.class, () -> d.register("", new String[] { "threads" }, (p, c) -> 0));
+		assertThrows(IllegalArgumentException.class, () -> d.register("copy", new String[0], (p, c) -> 0));
+		assertThrows(IllegalArgumentException.class, () -> new CLIDispatcher(g).register(new Object() {
+			@CLIRoute(flags = "verbose", parameters = "user")
+			void run(String user) {
+			}
+		}));
+		assertThrows(IllegalArgumentException.class, () -> new CLIDispatcher(g).register(new Object() {
+			@CLIRoute(flags = "verbose")
+			void run(String source) {
+			}
+		}));
+		assertThrows(IllegalArgumentException.class, () -> new CLIDispatcher(g).register("no routes"));
+		assertThrows(IllegalArgumentException.class,
+				() -> d.dispatch(parse(rules().compile())));
+	}
+
+	@Test
+	void subcommandTablesAreBuiltOnFirstDispatch() throws Exception {
+		AtomicInteger copyRules = new AtomicInteger(), syncRules = new AtomicInteger();
+		CLIRules rules = new CLIRules(null);
+		rules.addFlag("verbose", "v");
+		rules.addSubcommand("copy", "copies", () -> {
+			copyRules.incrementAndGet();
+			CLIRules r = new CLIRules(null);
+			r.addRequired("source", "s");
+			r.addFlag("force", "f");
+			return r;
+		});
+		rules.addSubcommand("sync", "syncs", () -> {
+			syncRules.incrementAndGet();
+			return new CLIRules(null);
+		});
+		CLIGrammar g = rules.compile();
+		List<String> calls = new ArrayList<>();
+		CLIDispatcher d = new CLIDispatcher(g);
+		d.register("copy", new String[0], MethodHandles.lookup().bind(calls, "add",
+				MethodType.methodType(boolean.class, Object.class)).asType(
+						MethodType.methodType(void.class, String.class)), "source");
+		d.register("copy", new String[] { "force" }, (p, c) -> {
+			calls.add("forced " + p.getSubcommandParsed().getArgument("source"));
+			return 3;
+		});
+		d.register("sync", new String[0], (p, c) -> 5);
+		assertEquals(0, copyRules.get() + syncRules.get());
+
+		assertEquals(0, d.dispatch(parse(g, "-v", "copy", "-s", "x")));
+		assertEquals(3, d.dispatch(parse(g, "copy", "-s", "y", "-f")));
+		assertEquals(List.of("x", "forced y"), calls);
+		assertEquals(1, copyRules.get());
+		assertEquals(0, syncRules.get());
+		assertEquals(5, d.dispatch(parse(g, "sync")));
+		assertEquals(1, syncRules.get());
+		assertThrows(CLIParsedException.class, () -> d.dispatch(parse(g, "-v")));
+	}
+
+	@Test
+	void subcommandRoutesGetParametersOfTheCommand() throws Exception {
+		CLIRules rules = new CLIRules(null);
+		rules.addFlag("verbose", "v");
+		rules.addSubcommand("copy", "copies", () -> {
+			CLIRules r = new CLIRules(null);
+			r.addRequired("source", "s");
+			return r;
+		});
+		CLIGrammar g = rules.compile();
+		CLIDispatcher d = new CLIDispatcher(g).register(new Object() {
+			@CLIRoute(command = "copy", parameters = { "source", "verbose" })
+			int copy(String source, boolean verbose) {
+				return source.length() + (verbose ? 10 : 0);
+			}
+		});
+		assertEquals(13, d.dispatch(parse(g, "-v", "copy", "-s", "abc")));
+		assertEquals(1, d.dispatch(parse(g, "copy", "-s", "a")));
+	}
+
+	@Test
+	void isAHandlerForTheServer() throws Exception {
+		CLIGrammar g = rules().compile();
+		CLIParsed[] seen = new CLIParsed[1];
+		CLIDispatcher d = new CLIDispatcher(g).register("", new String[0], (p, c) -> {
+			seen[0] = p;
+			assertNull(c);
+			return 9;
+		});
+		CLIParsed parsed = parse(g, "-v");
+		CLIHandler h = d;
+		assertEquals(9, h.handle(parsed, null));
+		assertSame(parsed, seen[0]);
+	}
+
+	@Test
+	void handlerExceptionsArePassedOn() throws Exception {
+		CLIGrammar g = rules().compile();
+		CLIDispatcher d = new CLIDispatcher(g).register("", new String[0], (p, c) -> {
+			throw new java.io.IOException("disk full");
+		});
+		assertEquals("disk full",
+				assertThrows(java.io.IOException.class, () -> d.dispatch(parse(g))).getMessage());
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CLIGrammarTest {
+
+	private static CLIRules rules() {
+		CLIRules rules = new CLIRules(null);
+		rules.addOptional("mode", "m", null).setValidValues("fast", "slow");
+		rules.addFlag("verbose", "v");
+		return rules;
+	}
+
+	@Test
+	void lookupOfTokens() {
+		CLIGrammar g = rules().compile();
+		assertEquals("mode", g.lookup("--mode").getName());
+		assertEquals("mode", g.lookup("-m").getName());
+		assertEquals("verbose", g.lookup("x-vx", 1, 3).getName());
+		assertNull(g.lookup("--verb"));
+		assertNull(g.lookup("mode"));
+		assertEquals("verbose", g.lookupPrefix("--verb").getName());
+		assertEquals("mode", g.get("mode").getName());
+	}
+
+	@Test
+	void compileIsCachedUntilTheRulesChange() {
+		CLIRules rules = new CLIRules(null);
+		Parameter mode = rules.addOptional("mode", null);
+		CLIGrammar g = rules.compile();
+		assertSame(g, rules.compile());
+		mode.setValidValues("medium");
+		CLIGrammar changed = rules.compile();
+		assertNotSame(g, changed);
+		rules.addFlag("force");
+		assertNotSame(changed, rules.compile());
+		assertNull(changed.get("force"));
+	}
+
+	@Test
+	void grammarIsNotChangedByItsRules() throws CLIParsedException {
+		CLIRules rules = new CLIRules(null);
+		Parameter mode = rules.addOptional("mode", null).setValidValues("fast", "slow");
+		CLIGrammar g = rules.compile();
+		mode.setValidValues("medium").setDescription("changed");
+		assertEquals(List.of("fast", "slow"), g.get("mode").getValidValues());
+		assertNull(g.get("mode").getDescription());
+		assertEquals(1, new CLIParsed(g).tryParse(new String[] { "--mode", "medium" }).getDiagnostics().size());
+		assertEquals("medium", new CLIParsed(rules.compile(), new String[] { "--mode", "medium" }).getArgument("mode"));
+	}
+
+	@Test
+	void parametersOfAGrammarAreFrozen() {
+		Parameter mode = rules().compile().get("mode");
+		assertThrows(IllegalStateException.class, () -> mode.setValidValues("medium"));
+		assertThrows(IllegalStateException.class, () -> mode.setDescription("x"));
+		assertThrows(IllegalStateException.class, mode::asInt);
+	}
+
+	@Test
+	void validValuesAreReadOnly() {
+		CLIRules rules = new CLIRules(null);
+		Parameter mode = rules.addOptional("mode", null).setValidValues("fast", "slow");
+		CLIGrammar g = rules.compile();
+		assertThrows(UnsupportedOperationException.class, () -> g.get("mode").getValidValues().add("medium"));
+		assertThrows(UnsupportedOperationException.class, () -> mode.getValidValues().clear());
+		assertSame(g, rules.compile());
+		assertEquals(List.of("fast", "slow"), mode.getValidValues());
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cg.cli.CLIMetrics.Phase;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
+class CLIMetricsTest {
+
+	@TempDir
+	Path dir;
+
+	@BeforeEach
+	@AfterEach
+	void off() {
+		CLIMetrics.setEnabled(false);
+		CLIMetrics.reset();
+	}
+
+	private static CLIParsed parse(String... args) throws CLIParsedException {
+		CLIRules rules = new CLIRules(null);
+		rules.addRequired("user", "u");
+		rules.addOptional("threads", "t", "4").asInt();
+		rules.addFlag("verbose", "v");
+		return new CLIParsed(rules.compile(), args);
+	}
+
+	@Test
+	void disabledCollectsNothing() throws CLIParsedException {
+		parse("-u", "scott");
+		for (Phase p : Phase.values())
+			assertEquals(0, CLIMetrics.getCalls(p), p.name());
+	}
+
+	@Test
+	void totalsPerPhase() throws CLIParsedException {
+		CLIMetrics.setEnabled(true);
+		parse("-u", "scott", "-t", "8", "-v");
+		assertEquals(3, CLIMetrics.getCalls(Phase.RULES));
+		assertEquals(3, CLIMetrics.getCount(Phase.RULES));
+		assertEquals(1, CLIMetrics.getCalls(Phase.COMPILE));
+		assertEquals(3, CLIMetrics.getCount(Phase.COMPILE));
+		assertEquals(5, CLIMetrics.getCount(Phase.MATCH));
+		assertEquals(1, CLIMetrics.getCalls(Phase.MANDATORY));
+		assertEquals(1, CLIMetrics.getCalls(Phase.VALIDATION));
+		assertTrue(CLIMetrics.getNanos(Phase.MATCH) > 0);
+		CLIMetrics.reset();
+		assertEquals(0, CLIMetrics.getCalls(Phase.RULES));
+	}
+
+	@Test
+	void printShowsEveryPhase() throws CLIParsedException {
+		CLIMetrics.setEnabled(true);
+		parse("-u", "scott");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CLIMetrics.print(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+		String out = bytes.toString(StandardCharsets.UTF_8);
+		for (Phase p : Phase.values())
+			assertTrue(out.contains(p.name()), p.name());
+	}
+
+	@Test
+	void eventsAreRecordedWithoutTheTotals() throws Exception {
+		Path file = dir.resolve("gcli.jfr");
+		try (Recording r = new Recording()) {
+			r.enable("com.cg.cli.Phase");
+			r.start();
+			parse("-u", "scott", "-v");
+			r.stop();
+			r.dump(file);
+		}
+		List<String> phases = RecordingFile.readAllEvents(file).stream()
+				.filter(e -> e.getEventType().getName().equals("com.cg.cli.Phase"))
+				.map(e -> e.getString("phase")).collect(Collectors.toList());
+		assertTrue(phases.contains("COMPILE"), phases.toString());
+		assertTrue(phases.contains("MATCH"), phases.toString());
+		assertEquals(0, CLIMetrics.getCalls(Phase.MATCH));
+	}
+}
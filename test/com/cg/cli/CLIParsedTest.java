@@ -0,0 +1,207 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CLIParsedTest {
+
+	private static CLIRules rules() {
+		CLIRules rules = new CLIRules("test");
+		rules.addOptional("user", "u", null);
+		rules.addOptional("threads", "t", "1").asInt().setMinValue(1).setMaxValue(64);
+		rules.addFlag("verbose", "v");
+		rules.addFlag("force", "f");
+		return rules;
+	}
+
+	private static List<CLIDiagnostic.Kind> kinds(CLIParseResult r) {
+		List<CLIDiagnostic.Kind> kinds = new ArrayList<>();
+		for (CLIDiagnostic d : r.getDiagnostics())
+			kinds.add(d.getKind());
+		return kinds;
+	}
+
+	@Test
+	void separateArguments() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(rules(), new String[] { "--user", "bob", "-t", "8", "-v" });
+		assertEquals("bob", parsed.getArgument("user"));
+		assertEquals(8, parsed.getInt("threads"));
+		assertTrue(parsed.hasFlag("verbose"));
+		assertFalse(parsed.hasFlag("force"));
+	}
+
+	@Test
+	void attachedArguments() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(rules(), new String[] { "--user=bob=x", "-t4" });
+		assertEquals("bob=x", parsed.getArgument("user"));
+		assertEquals(4, parsed.getInt("threads"));
+		parsed.parse(new String[] { "--user=bob", "--threads=2" });
+		assertEquals(2, parsed.getInt("threads"));
+	}
+
+	@Test
+	void clusters() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(rules(), new String[] { "-vf" });
+		assertTrue(parsed.hasFlag("verbose"));
+		assertTrue(parsed.hasFlag("force"));
+		parsed.parse(new String[] { "-vt", "16" });
+		assertTrue(parsed.hasFlag("verbose"));
+		assertFalse(parsed.hasFlag("force"));
+		assertEquals(16, parsed.getInt("threads"));
+		parsed.parse(new String[] { "-ft32" });
+		assertEquals(32, parsed.getInt("threads"));
+	}
+
+	@Test
+	void flagWithAttachedArgumentIsRejected() {
+		CLIParsedException e = assertThrows(CLIParsedException.class,
+				() -> new CLIParsed(rules(), new String[] { "--force=yes" }));
+		assertEquals(CLIDiagnostic.Kind.UNEXPECTED_ARGUMENT, e.getDiagnostic().getKind());
+	}
+
+	@Test
+	void doubleDashEndsOptions() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(rules(), new String[] { "in", "-v", "--", "-f", "--user=x" });
+		assertTrue(parsed.hasFlag("verbose"));
+		assertFalse(parsed.hasFlag("force"));
+		assertNull(parsed.getArgument("user"));
+		assertEquals(List.of("in", "-f", "--user=x"), parsed.getOperands());
+	}
+
+	@Test
+	void uniquePrefixIsResolved() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(rules(), new String[] { "--us", "bob", "--verb", "--thr=3" });
+		assertEquals("bob", parsed.getArgument("user"));
+		assertTrue(parsed.hasFlag("verbose"));
+		assertEquals(3, parsed.getInt("threads"));
+	}
+
+	@Test
+	void ambiguousPrefixNamesTheCandidates() {
+		CLIRules rules = new CLIRules(null);
+		rules.addFlag("tablenames");
+		rules.addFlag("tables");
+		CLIParsedException e = assertThrows(CLIParsedException.class,
+				() -> new CLIParsed(rules, new String[] { "--tab" }));
+		assertEquals(CLIDiagnostic.Kind.UNKNOWN_TOKEN, e.getDiagnostic().getKind());
+		assertTrue(e.getMessage().startsWith("Ambiguous parameter: --tab"), e.getMessage());
+		assertTrue(e.getMessage().contains("--tablenames") && e.getMessage().contains("--tables"), e.getMessage());
+	}
+
+	@Test
+	void prefixMatchingCanBeDisabled() {
+		CLIRules rules = rules();
+		rules.setPrefixMatching(false);
+		CLIParsedException e = assertThrows(CLIParsedException.class,
+				() -> new CLIParsed(rules, new String[] { "--verb" }));
+		assertEquals(CLIDiagnostic.Kind.UNKNOWN_TOKEN, e.getDiagnostic().getKind());
+	}
+
+	@Test
+	void misspellingSuggestsTheClosestOption() {
+		CLIParsedException e = assertThrows(CLIParsedException.class,
+				() -> new CLIParsed(rules(), new String[] { "--usr", "bob" }));
+		assertEquals("Unknown parameter: --usr, did you mean --user?", e.getMessage());
+	}
+
+	@Test
+	void tryParseCollectsAllProblems() {
+		CLIRules rules = rules();
+		rules.addRequired("source", "s");
+		CLIParseResult r = new CLIParsed(rules.compile())
+				.tryParse(new String[] { "--threads", "x", "--nope", "-v", "-v", "--user" });
+		assertFalse(r.isOk());
+		// arguments are converted after all tokens are matched
+		assertEquals(List.of(CLIDiagnostic.Kind.UNKNOWN_TOKEN, CLIDiagnostic.Kind.DUPLICATE,
+				CLIDiagnostic.Kind.MISSING_ARGUMENT, CLIDiagnostic.Kind.MISSING_MANDATORY,
+				CLIDiagnostic.Kind.INVALID_FORMAT), kinds(r));
+		assertEquals("--nope", r.getDiagnostics().get(0).getArgument());
+		assertEquals("verbose", r.getDiagnostics().get(1).getParameter());
+		assertEquals("source", r.getDiagnostics().get(3).getParameter());
+		CLIDiagnostic format = r.getDiagnostics().get(4);
+		assertEquals("threads", format.getParameter());
+		assertEquals("x", format.getArgument());
+		assertThrows(IllegalStateException.class, r::getParsed);
+	}
+
+	@Test
+	void tryParseReportsRangeAndValidValues() {
+		CLIRules rules = rules();
+		rules.addOptional("mode", null).setValidValues("fast", "slow");
+		CLIParseResult r = new CLIParsed(rules.compile()).tryParse(new String[] { "-t", "100", "--mode", "medium" });
+		assertEquals(List.of(CLIDiagnostic.Kind.OUT_OF_RANGE, CLIDiagnostic.Kind.INVALID_VALUE), kinds(r));
+	}
+
+	@Test
+	void tryParseOfValidLine() {
+		CLIParseResult r = new CLIParsed(rules().compile()).tryParse(new String[] { "-u", "bob" });
+		assertTrue(r.isOk());
+		assertEquals("", r.getMessage());
+		assertEquals("bob", r.getParsed().getArgument("user"));
+	}
+
+	@Test
+	void commandString() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(rules().compile()).parse("--user 'bob smith' -t \"2\"");
+		assertEquals("bob smith", parsed.getArgument("user"));
+		assertEquals(2, parsed.getInt("threads"));
+		CLIParseResult r = new CLIParsed(rules().compile()).tryParse("-v 'bob");
+		assertEquals(List.of(CLIDiagnostic.Kind.UNTERMINATED_QUOTE), kinds(r));
+	}
+
+	@Test
+	void reuseDoesNotKeepValuesOfTheLastParse() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(rules().compile());
+		parsed.parse(new String[] { "--user", "bob", "-vf", "-t", "8", "op" });
+		assertEquals("bob", parsed.getArgument("user"));
+		parsed.parse(new String[] { "-t", "2" });
+		assertNull(parsed.getArgument("user"));
+		assertFalse(parsed.wasParsed("user"));
+		assertFalse(parsed.hasFlag("verbose"));
+		assertFalse(parsed.hasFlag("force"));
+		assertEquals(2, parsed.getInt("threads"));
+		assertTrue(parsed.getOperands().isEmpty());
+		parsed.parse(new String[0]);
+		assertEquals(1, parsed.getInt("threads"));
+	}
+
+	@Test
+	void reuseAfterProblems() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(rules().compile());
+		assertFalse(parsed.tryParse(new String[] { "--user", "bob", "--nope", "-t", "x" }).isOk());
+		CLIParseResult r = parsed.tryParse(new String[] { "-v" });
+		assertTrue(r.isOk(), r.getMessage());
+		assertNull(parsed.getArgument("user"));
+		assertEquals(1, parsed.getInt("threads"));
+		assertThrows(CLIParsedException.class, () -> parsed.parse(new String[] { "-t", "0" }));
+		parsed.parse(new String[] { "-u", "amy" });
+		assertEquals("amy", parsed.getArgument("user"));
+		assertEquals(1, parsed.getInt("threads"));
+		assertFalse(parsed.hasFlag("verbose"));
+	}
+
+	@Test
+	void resetDropsEverything() throws CLIParsedException {
+		CLIRules rules = rules();
+		rules.addOptional("tag", null).repeatable();
+		CLIParsed parsed = new CLIParsed(rules.compile(), new String[] { "--tag", "a", "--tag", "b", "-v", "op" });
+		assertEquals(List.of("a", "b"), parsed.getValues("tag"));
+		parsed.reset();
+		assertTrue(parsed.getValues("tag").isEmpty());
+		assertFalse(parsed.hasFlag("verbose"));
+		assertTrue(parsed.getOperands().isEmpty());
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CLIProcessorTest {
+
+	static final String COPY = "package gen;\n" //
+			+ "import com.cg.cli.*;\n" //
+			+ "@CLICommand(\"copies files\")\n" //
+			+ "public record Copy(@CLIOption(required = true, abbreviation = \"s\") String source,\n" //
+			+ "		@CLIOption(abbreviation = \"t\", defaultValue = \"4\", min = 1, max = 64) int threads,\n" //
+			+ "		@CLIOption(abbreviation = \"f\") boolean force,\n" //
+			+ "		@CLIOption(abbreviation = \"v\") boolean verbose,\n" //
+			+ "		@CLIOption(validValues = { \"red\", \"green\" }) String[] tags,\n" //
+			+ "		@CLIOption(validValues = { \"1\", \"2\" }) long level,\n" //
+			+ "		@CLIOption(validValues = { \"fast\", \"slow\" }) String mode) {\n" //
+			+ "}\n";
+
+	@TempDir
+	Path dir;
+
+	DiagnosticCollector<JavaFileObject> diagnostics;
+
+	@BeforeEach
+	void setup() {
+		diagnostics = new DiagnosticCollector<>();
+	}
+
+	// compiles source with the processor, returns the class loader of the output
+	private ClassLoader compile(String className, String source) throws IOException {
+		Path src = dir.resolve("src"), out = dir.resolve("out");
+		Path file = src.resolve(className.replace('.', '/') + ".java");
+		Files.createDirectories(file.getParent());
+		Files.createDirectories(out);
+		Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		try (StandardJavaFileManager files = javac.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+			boolean ok = javac.getTask(null, files, diagnostics,
+					List.of("-classpath", System.getProperty("java.class.path"), "-processor",
+							CLIProcessor.class.getName(), "-d", out.toString(), "-s", out.toString()),
+					null, files.getJavaFileObjects(file)).call();
+			if (!ok)
+				return null;
+		}
+		return new URLClassLoader(new URL[] { out.toUri().toURL() }, getClass().getClassLoader());
+	}
+
+	private static Object parse(Class<?> parser, String... args) throws Throwable {
+		Method parse = parser.getMethod("parse", String[].class);
+		try {
+			return parse.invoke(null, (Object) args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static Object get(Object record, String component) throws ReflectiveOperationException {
+		return record.getClass().getMethod(component).invoke(record);
+	}
+
+	private Class<?> copyParser() throws Exception {
+		ClassLoader loader = compile("gen.Copy", COPY);
+		assertTrue(loader != null, diagnostics.getDiagnostics().toString());
+		return loader.loadClass("gen.CopyParser");
+	}
+
+	private String parseError(Class<?> parser, String... args) {
+		return assertThrows(CLIParsedException.class, () -> parse(parser, args)).getMessage();
+	}
+
+	@Test
+	void generatedParserAcceptsTheOptionSyntax() throws Throwable {
+		Class<?> parser = copyParser();
+		Object copy = parse(parser, "-s", "a.txt", "-vft8", "--tags=red,green", "--lev", "2", "--", "-x");
+		assertEquals("a.txt", get(copy, "source"));
+		assertEquals(8, get(copy, "threads"));
+		assertEquals(true, get(copy, "force"));
+		assertEquals(true, get(copy, "verbose"));
+		assertArrayEquals(new String[] { "red", "green" }, (String[]) get(copy, "tags"));
+		assertEquals(2L, get(copy, "level"));
+		assertNull(get(copy, "mode"));
+
+		copy = parse(parser, "op", "--source", "b.txt", "--mode", "slow");
+		assertEquals("b.txt", get(copy, "source"));
+		assertEquals(4, get(copy, "threads"));
+		assertEquals(false, get(copy, "force"));
+		assertEquals("slow", get(copy, "mode"));
+	}
+
+	@Test
+	void generatedParserReportsProblems() throws Exception {
+		Class<?> parser = copyParser();
+		assertEquals("Missing parameter: source", parseError(parser, "-f"));
+		assertEquals("Unknown parameter: --nope", parseError(parser, "-s", "x", "--nope"));
+		assertEquals("Unknown parameter: -fq", parseError(parser, "-s", "x", "-fq"));
+		assertTrue(parseError(parser, "-s", "x", "--t", "1").startsWith("Ambiguous parameter: --t"));
+		assertEquals("Parameter given twice: -f", parseError(parser, "-s", "x", "--force", "-f"));
+		assertEquals("Parameter --force takes no argument", parseError(parser, "-s", "x", "--force=yes"));
+		assertEquals("Parameter -t needs an argument", parseError(parser, "-s", "x", "-t"));
+		assertTrue(parseError(parser, "-s", "x", "-t", "x").endsWith("must be an int"));
+		assertTrue(parseError(parser, "-s", "x", "-t", "65").endsWith("is greater than maxValue 64"));
+	}
+
+	@Test
+	void generatedParserChecksValidValuesOfEveryType() throws Exception {
+		Class<?> parser = copyParser();
+		assertEquals("Argument medium for parameter mode is not a valid value, valid values are=fast,slow",
+				parseError(parser, "-s", "x", "--mode", "medium"));
+		assertEquals("Argument 3 for parameter level is not a valid value, valid values are=1,2",
+				parseError(parser, "-s", "x", "--level", "3"));
+		assertEquals("Argument blue for parameter tags is not a valid value, valid values are=red,green",
+				parseError(parser, "-s", "x", "--tags", "red,blue"));
+	}
+
+	@Test
+	void rulesOfTheGeneratedParser() throws Exception {
+		CLIRules rules = (CLIRules) copyParser().getMethod("rules").invoke(null);
+		assertEquals(List.of("source", "threads", "force", "verbose", "tags", "level", "mode"),
+				List.copyOf(rules.getParameterNames()));
+		CLIParsed parsed = new CLIParsed(rules, new String[] { "-s", "x", "--mode", "fast" });
+		assertEquals("fast", parsed.getArgument("mode"));
+	}
+
+	private String compileError(String fields) throws IOException {
+		String source = "package gen;\nimport com.cg.cli.*;\n@CLICommand\npublic class Bad {\n" + fields + "}\n";
+		assertNull(compile("gen.Bad", source));
+		for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+			if (d.getKind() == Diagnostic.Kind.ERROR) {
+				// reported on the field, not in a generated file
+				assertTrue(d.getSource().getName().endsWith("Bad.java"), d.toString());
+				assertFalse(Files.exists(dir.resolve("out/gen/BadParser.java")));
+				return d.getMessage(null);
+			}
+		}
+		throw new AssertionError("no error");
+	}
+
+	@Test
+	void duplicateNamesAreReportedOnTheField() throws IOException {
+		String msg = compileError("@CLIOption String user;\n@CLIOption(name = \"user\") String other;\n");
+		assertTrue(msg.startsWith("invalid @CLIOption user:"), msg);
+	}
+
+	@Test
+	void duplicateAbbreviationsAreReportedOnTheField() throws IOException {
+		String msg = compileError("@CLIOption(abbreviation = \"u\") String user;\n"
+				+ "@CLIOption(abbreviation = \"u\") boolean update;\n");
+		assertTrue(msg.startsWith("invalid @CLIOption update:"), msg);
+	}
+
+	@Test
+	void invalidNamesAreReportedOnTheField() throws IOException {
+		assertTrue(compileError("@CLIOption(name = \"a b\") String user;\n").startsWith("invalid @CLIOption a b:"));
+	}
+
+	@Test
+	void invalidAbbreviationsAreReportedOnTheField() throws IOException {
+		assertTrue(compileError("@CLIOption(abbreviation = \"-u\") String user;\n")
+				.startsWith("invalid @CLIOption user:"));
+	}
+
+	@Test
+	void unsupportedTypeIsReported() throws IOException {
+		assertTrue(compileError("@CLIOption Object user;\n").startsWith("unsupported type for @CLIOption"));
+	}
+}
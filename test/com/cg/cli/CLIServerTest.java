@@ -0,0 +1,136 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CLIServerTest {
+
+	@TempDir
+	Path dir;
+
+	Path socket;
+	CLIServer server;
+
+	@BeforeEach
+	void start() throws IOException {
+		CLIRules rules = new CLIRules(null);
+		rules.addOptional("user", "u", null).fromEnv("TEST_USER");
+		rules.addOptional("exit", "0").asInt();
+		socket = dir.resolve("test.sock");
+		server = new CLIServer(rules, (parsed, ctx) -> {
+			ctx.getOut().print("user " + parsed.getArgument("user") + " in " + ctx.getCwd());
+			ctx.getErr().print("err");
+			return parsed.getInt("exit");
+		}, socket).start();
+	}
+
+	@AfterEach
+	void close() throws IOException {
+		server.close();
+	}
+
+	private int run(String[] args, Map<String, String> env, ByteArrayOutputStream out, ByteArrayOutputStream err)
+			throws IOException {
+		return CLIClient.run(socket, args, dir, env, out, err);
+	}
+
+	@Test
+	void runsTheHandlerWithArgsCwdAndEnv() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+		assertEquals(3, run(new String[] { "--exit", "3" }, Map.of("TEST_USER", "amy"), out, err));
+		assertEquals("user amy in " + dir, out.toString(StandardCharsets.UTF_8));
+		assertEquals("err", err.toString(StandardCharsets.UTF_8));
+
+		out.reset();
+		assertEquals(0, run(new String[] { "-u", "bob" }, Map.of("TEST_USER", "amy"), out, err));
+		assertEquals("user bob in " + dir, out.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void parseProblemsGoToStderr() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+		assertEquals(2, run(new String[] { "--nope" }, Map.of(), out, err));
+		assertEquals(0, out.size());
+		assertTrue(err.toString(StandardCharsets.UTF_8).startsWith("Unknown parameter: --nope"));
+	}
+
+	@Test
+	void socketIsOwnerOnly() throws IOException {
+		assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(socket)));
+	}
+
+	@Test
+	void runningServerIsNotReplaced() throws IOException {
+		CLIServer second = new CLIServer(new CLIRules(null), (parsed, ctx) -> 1, socket);
+		assertThrows(IOException.class, second::start);
+		second.close();
+		assertEquals(0, run(new String[0], Map.of(), new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+	}
+
+	@Test
+	void staleSocketIsReplaced() throws IOException {
+		server.close();
+		Files.createFile(socket);
+		server = new CLIServer(new CLIRules(null), (parsed, ctx) -> 7, socket).start();
+		assertEquals(7, run(new String[0], Map.of(), new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+	}
+
+	@Test
+	void requestOverTheBudgetIsRejected() throws IOException {
+		byte[] big = new byte[CLIServer.MAX_STRING];
+		int count = CLIServer.MAX_REQUEST / CLIServer.MAX_STRING + 1;
+		try (SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+			ch.connect(UnixDomainSocketAddress.of(socket));
+			DataOutputStream out = new DataOutputStream(Channels.newOutputStream(ch));
+			assertThrows(IOException.class, () -> {
+				out.writeByte(CLIServer.RUN);
+				out.writeInt(count);
+				for (int i = 0; i < count; i++) {
+					out.writeInt(big.length);
+					out.write(big);
+				}
+				out.flush();
+				// the server closes the connection instead of answering
+				new DataInputStream(Channels.newInputStream(ch)).readByte();
+			});
+		}
+		assertEquals(0, run(new String[0], Map.of(), new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+	}
+
+	@Test
+	void invalidCountIsRejected() throws IOException {
+		try (SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+			ch.connect(UnixDomainSocketAddress.of(socket));
+			DataOutputStream out = new DataOutputStream(Channels.newOutputStream(ch));
+			out.writeByte(CLIServer.RUN);
+			out.writeInt(CLIServer.MAX_COUNT + 1);
+			out.flush();
+			assertThrows(IOException.class, () -> new DataInputStream(Channels.newInputStream(ch)).readByte());
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CLISpecTest {
+
+	static final String SPEC = "purpose \"Copies files\"\n" //
+			+ "required source abbreviation=s description=\"the file to copy\"\n" //
+			+ "optional threads type=int default=4 min=1 max=64\n" //
+			+ "optional mode valid=fast,slow\n" //
+			+ "flag force abbreviation=f\n";
+
+	@TempDir
+	Path dir;
+
+	private static void assertSameRules(CLIGrammar expected, CLIGrammar actual) {
+		CLIRules e = expected.getRules(), a = actual.getRules();
+		assertEquals(List.copyOf(e.getParameterNames()), List.copyOf(a.getParameterNames()));
+		for (String name : e.getParameterNames()) {
+			Parameter pe = expected.get(name), pa = actual.get(name);
+			assertEquals(pe.getType(), pa.getType(), name);
+			assertEquals(pe.getAbbreviation(), pa.getAbbreviation(), name);
+			assertEquals(pe.getDefault(), pa.getDefault(), name);
+			assertEquals(pe.getDescription(), pa.getDescription(), name);
+			assertEquals(pe.isMandatory(), pa.isMandatory(), name);
+			assertEquals(pe.isFlag(), pa.isFlag(), name);
+			assertEquals(pe.getMinValue(), pa.getMinValue(), name);
+			assertEquals(pe.getMaxValue(), pa.getMaxValue(), name);
+			assertEquals(pe.getValidValues(), pa.getValidValues(), name);
+		}
+		assertEquals(expected.getRules().renderHelp(), actual.getRules().renderHelp());
+	}
+
+	@Test
+	void cacheRoundTrip() throws Exception {
+		Path spec = Files.write(dir.resolve("tool.spec"), SPEC.getBytes(StandardCharsets.UTF_8));
+		Path cache = dir.resolve("tool.spec.bin");
+		CLIGrammar written = CLISpec.load(spec, cache);
+		assertTrue(Files.size(cache) > 0);
+		byte[] bytes = Files.readAllBytes(cache);
+		CLIGrammar read = CLISpec.load(spec, cache);
+		assertArrayEquals(bytes, Files.readAllBytes(cache));
+		assertSameRules(CLISpec.parse(SPEC).compile(), written);
+		assertSameRules(written, read);
+
+		CLIParsed parsed = new CLIParsed(read, new String[] { "-s", "a.txt", "-f", "--threads", "8" });
+		assertEquals("a.txt", parsed.getArgument("source"));
+		assertEquals(8, parsed.getInt("threads"));
+		assertTrue(parsed.hasFlag("force"));
+		CLIParseResult r = new CLIParsed(read).tryParse(new String[] { "--threads", "65", "--mode", "medium" });
+		assertEquals(3, r.getDiagnostics().size(), r.getMessage());
+	}
+
+	@Test
+	void changedSpecRewritesTheCache() throws Exception {
+		Path spec = Files.write(dir.resolve("tool.spec"), SPEC.getBytes(StandardCharsets.UTF_8));
+		Path cache = dir.resolve("tool.spec.bin");
+		CLISpec.load(spec, cache);
+		byte[] before = Files.readAllBytes(cache);
+		Files.write(spec, (SPEC + "flag dry\n").getBytes(StandardCharsets.UTF_8));
+		CLIGrammar grammar = CLISpec.load(spec, cache);
+		assertTrue(grammar.getRules().getParameterNames().contains("dry"));
+		assertNotEquals(new String(before, StandardCharsets.ISO_8859_1),
+				new String(Files.readAllBytes(cache), StandardCharsets.ISO_8859_1));
+		assertTrue(CLISpec.load(spec, cache).getRules().getParameterNames().contains("dry"));
+	}
+
+	@Test
+	void damagedCacheIsRewritten() throws Exception {
+		Path spec = Files.write(dir.resolve("tool.spec"), SPEC.getBytes(StandardCharsets.UTF_8));
+		Path cache = dir.resolve("tool.spec.bin");
+		CLISpec.load(spec, cache);
+		byte[] bytes = Files.readAllBytes(cache);
+		Files.write(cache, Arrays.copyOf(bytes, bytes.length / 2));
+		assertSameRules(CLISpec.parse(SPEC).compile(), CLISpec.load(spec, cache));
+		assertArrayEquals(bytes, Files.readAllBytes(cache));
+	}
+
+	@Test
+	void unreadableCacheFallsBackToTheSpec() throws Exception {
+		Path spec = Files.write(dir.resolve("tool.spec"), SPEC.getBytes(StandardCharsets.UTF_8));
+		// a directory in place of the cache can neither be read nor replaced
+		Path cache = Files.createDirectory(dir.resolve("tool.spec.bin"));
+		Files.createFile(cache.resolve("keep"));
+		List<IOException> errors = new ArrayList<>();
+		CLIGrammar grammar = CLISpec.load(spec, cache, errors::add);
+		assertSameRules(CLISpec.parse(SPEC).compile(), grammar);
+		assertEquals(1, errors.size());
+		assertTrue(Files.isDirectory(cache));
+		assertSameRules(grammar, CLISpec.load(spec, cache, errors::add));
+		assertEquals(2, errors.size());
+	}
+
+	@Test
+	void cacheInAMissingDirectoryIsReported() throws Exception {
+		Path spec = Files.write(dir.resolve("tool.spec"), SPEC.getBytes(StandardCharsets.UTF_8));
+		Path cache = dir.resolve("missing").resolve("tool.spec.bin");
+		List<IOException> errors = new ArrayList<>();
+		assertSameRules(CLISpec.parse(SPEC).compile(), CLISpec.load(spec, cache, errors::add));
+		assertEquals(1, errors.size());
+		assertFalse(Files.exists(cache));
+	}
+
+	@Test
+	void invalidSpecIsRejected() {
+		assertThrows(CLIRuleException.class, () -> CLISpec.parse("optional threads type=number\n"));
+	}
+}
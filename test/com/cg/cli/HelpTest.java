@@ -0,0 +1,98 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class HelpTest {
+
+	private static final String NL = System.lineSeparator();
+
+	private final CLIRules rules = new CLIRules("Copies files");
+	private final Parameter source = rules.addRequired("source", "s").setDescription("the file to copy");
+	private final Parameter threads = rules.addOptional("threads", "t", "4").asInt().setMinValue(1)
+			.setDescription("number of copying threads, more threads help on fast disks with many small files");
+
+	@Test
+	void renderedOncePerOrderAndWidth() {
+		String help = rules.renderHelp("source", "threads");
+		assertSame(help, rules.renderHelp("source", "threads"));
+		assertSame(rules.renderHelp(40, "source", "threads"), rules.renderHelp(40, "source", "threads"));
+		assertNotEquals(help, rules.renderHelp("threads", "source"));
+		assertNotEquals(help, rules.renderHelp(40, "source", "threads"));
+	}
+
+	@Test
+	void changedRulesRenderAgain() {
+		String help = rules.renderHelp("source", "threads");
+		source.setDescription("the source file");
+		String changed = rules.renderHelp("source", "threads");
+		assertTrue(changed.contains("the source file"), changed);
+		assertNotEquals(help, changed);
+		rules.addFlag("force", "f");
+		assertTrue(rules.renderHelp("source", "threads", "force").contains("[--force|-f]"));
+	}
+
+	@Test
+	void orderArrayIsCopied() {
+		String[] order = { "source", "threads" };
+		String help = rules.renderHelp(order);
+		order[0] = "threads";
+		assertSame(help, rules.renderHelp("source", "threads"));
+	}
+
+	@Test
+	void content() {
+		String help = rules.renderHelp("source", "", "threads", "unknown");
+		String[] lines = help.split(NL, -1);
+		assertEquals("Copies files", lines[0]);
+		assertTrue(lines[1].startsWith("--source|-s <arg>"), lines[1]);
+		assertTrue(lines[1].endsWith("the file to copy"), lines[1]);
+		assertEquals("", lines[2]);
+		assertTrue(lines[3].startsWith("[--threads|-t <1..>]"), lines[3]);
+		assertTrue(lines[3].endsWith("(default=4)"), lines[3]);
+		assertEquals("no param found for key=unknown", lines[4]);
+	}
+
+	@Test
+	void wrappedToTheWidth() {
+		String help = rules.renderHelp(60, "source", "threads");
+		String[] lines = help.split(NL);
+		int column = lines[1].indexOf("the file to copy");
+		assertEquals(5, lines.length, help);
+		for (String line : lines)
+			assertTrue(line.length() <= 60, line);
+		assertTrue(lines[3].startsWith(" ".repeat(column)) && lines[3].charAt(column) != ' ', help);
+		assertEquals(help.replace(NL + " ".repeat(column), " "), rules.renderHelp("source", "threads"));
+	}
+
+	@Test
+	void printHelpAppendsTheRenderedHelp() throws Exception {
+		StringBuilder out = new StringBuilder("> ");
+		rules.printHelp(out, "threads");
+		assertEquals("> " + rules.renderHelp("threads"), out.toString());
+	}
+
+	@Test
+	void metricsCountOnlyRendering() {
+		CLIMetrics.setEnabled(true);
+		CLIMetrics.reset();
+		try {
+			rules.renderHelp("source");
+			rules.renderHelp("source");
+			rules.renderHelp("threads");
+			assertEquals(2, CLIMetrics.getCalls(CLIMetrics.Phase.HELP));
+		} finally {
+			CLIMetrics.setEnabled(false);
+			CLIMetrics.reset();
+		}
+	}
+}
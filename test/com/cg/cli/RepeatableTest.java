@@ -0,0 +1,117 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class RepeatableTest {
+
+	private static CLIGrammar grammar() {
+		CLIRules rules = new CLIRules(null);
+		rules.addOptional("table", "t", "all").repeatable().setValidValues("all", "a", "b", "c");
+		rules.addOptional("define", "D", null).asProperties();
+		rules.addOptional("user", "u", null);
+		return rules.compile();
+	}
+
+	@Test
+	void valuesInTheOrderGiven() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(grammar(), new String[] { "--table", "a", "-t", "c", "-t", "b" });
+		assertEquals(List.of("a", "c", "b"), parsed.getValues("table"));
+		assertEquals("b", parsed.getValues("table").get(2));
+		parsed.parse(new String[] { "-t", "c" });
+		assertEquals(List.of("c"), parsed.getValues("table"));
+		parsed.parse(new String[0]);
+		assertEquals(List.of("all"), parsed.getValues("table"));
+		assertSame(ArgumentValues.EMPTY, parsed.getValues("unknown"));
+	}
+
+	@Test
+	void everyValueIsChecked() {
+		CLIParseResult r = new CLIParsed(grammar()).tryParse(new String[] { "-t", "a", "-t", "x", "-t", "y" });
+		assertEquals(2, r.getDiagnostics().size(), r.getMessage());
+		assertEquals(CLIDiagnostic.Kind.INVALID_VALUE, r.getDiagnostics().get(0).getKind());
+	}
+
+	@Test
+	void otherParametersAreGivenOnce() throws CLIParsedException {
+		CLIParseResult r = new CLIParsed(grammar()).tryParse(new String[] { "-u", "a", "-u", "b" });
+		assertFalse(r.isOk());
+		assertEquals(List.of("a"), new CLIParsed(grammar(), new String[] { "-u", "a" }).getValues("user"));
+	}
+
+	@Test
+	void properties() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(grammar(),
+				new String[] { "-Duser.home=/tmp", "-D", "mode=fast", "--define", "debug", "-Dmode=slow" });
+		assertEquals("/tmp", parsed.getProperty("define", "user.home"));
+		assertEquals("slow", parsed.getProperty("define", "mode"));
+		assertEquals("", parsed.getProperty("define", "debug"));
+		assertNull(parsed.getProperty("define", "user"));
+		ArgumentValues values = parsed.getValues("define");
+		assertEquals(4, values.size());
+		assertEquals("mode", values.key(1));
+		assertEquals("fast", values.value(1));
+		assertEquals(Map.of("user.home", "/tmp", "mode", "slow", "debug", ""), values.toMap());
+		assertEquals(List.of("user.home", "mode", "debug"), new ArrayList<>(values.toMap().keySet()));
+
+		parsed.parse(new String[] { "-Dmode=fast" });
+		assertEquals("fast", parsed.getProperty("define", "mode"));
+		assertNull(parsed.getProperty("define", "user.home"));
+		parsed.parse(new String[0]);
+		assertNull(parsed.getProperty("define", "mode"));
+	}
+
+	@Test
+	void collidingAndManyKeys() throws CLIParsedException {
+		// "Aa" and "BB" have the same hash code
+		List<String> args = new ArrayList<>(List.of("-DAa=1", "-DBB=2"));
+		for (int i = 0; i < 100; i++)
+			args.add("-Dkey" + i + "=" + i);
+		CLIParsed parsed = new CLIParsed(grammar(), args.toArray(new String[0]));
+		assertEquals("1", parsed.getProperty("define", "Aa"));
+		assertEquals("2", parsed.getProperty("define", "BB"));
+		for (int i = 0; i < 100; i++)
+			assertEquals(String.valueOf(i), parsed.getProperty("define", "key" + i));
+		assertNull(parsed.getProperty("define", "key100"));
+	}
+
+	@Test
+	void misuse() throws CLIParsedException {
+		CLIParsed parsed = new CLIParsed(grammar(), new String[] { "-t", "a" });
+		assertThrows(IllegalStateException.class, () -> parsed.getProperty("table", "a"));
+		assertThrows(IllegalArgumentException.class, () -> parsed.getProperty("unknown", "a"));
+		assertThrows(IllegalStateException.class, () -> parsed.getValues("table").key(0));
+
+		CLIRules rules = new CLIRules(null);
+		assertThrows(IllegalStateException.class, () -> rules.addFlag("force", "f").repeatable());
+		assertThrows(IllegalStateException.class, () -> rules.addOptional("threads", "4").asInt().repeatable());
+		assertThrows(IllegalStateException.class,
+				() -> rules.addOptional("tags", null).treatArgumentAsList().repeatable());
+		assertThrows(IllegalStateException.class, () -> rules.addOptional("define", "D", null).asProperties().asInt());
+	}
+
+	@Test
+	void help() {
+		CLIRules rules = new CLIRules(null);
+		rules.addOptional("table", "t", null).repeatable();
+		rules.addOptional("define", "D", null).asProperties();
+		String help = rules.renderHelp("table", "define");
+		assertTrue(help.contains("[--table|-t <arg>...]"), help);
+		assertTrue(help.contains("[--define|-D <key=value>...]"), help);
+	}
+}
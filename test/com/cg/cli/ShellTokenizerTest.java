@@ -0,0 +1,71 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ShellTokenizerTest {
+
+	@Test
+	void splitsAtBlanks() throws CLIParsedException {
+		assertArrayEquals(new String[] { "--user", "bob", "-v" }, ShellTokenizer.split("  --user \t bob\n-v "));
+		assertArrayEquals(new String[0], ShellTokenizer.split(""));
+	}
+
+	@Test
+	void singleQuotesKeepEverything() throws CLIParsedException {
+		assertArrayEquals(new String[] { "a b", "c\\d", "\"e\"" }, ShellTokenizer.split("'a b' 'c\\d' '\"e\"'"));
+	}
+
+	@Test
+	void doubleQuotesEscapeQuoteAndBackslash() throws CLIParsedException {
+		assertArrayEquals(new String[] { "a \"b\" c", "d\\e", "f\\g" },
+				ShellTokenizer.split("\"a \\\"b\\\" c\" \"d\\\\e\" \"f\\g\""));
+	}
+
+	@Test
+	void backslashEscapesOutsideQuotes() throws CLIParsedException {
+		assertArrayEquals(new String[] { "a b", "'c'" }, ShellTokenizer.split("a\\ b \\'c\\'"));
+	}
+
+	@Test
+	void adjacentPartsFormOneToken() throws CLIParsedException {
+		assertArrayEquals(new String[] { "--name=a b", "it's" }, ShellTokenizer.split("--name='a b' it\"'\"s"));
+		assertArrayEquals(new String[] { "" }, ShellTokenizer.split("''"));
+	}
+
+	@Test
+	void unterminatedQuoteIsReported() {
+		CLIParsedException e = assertThrows(CLIParsedException.class, () -> ShellTokenizer.split("--name 'abc"));
+		assertTrue(e.getMessage().startsWith("Unterminated"), e.getMessage());
+		e = assertThrows(CLIParsedException.class, () -> ShellTokenizer.split("a \"b\\\""));
+		assertTrue(e.getMessage().startsWith("Unterminated"), e.getMessage());
+	}
+
+	@Test
+	void linesEndAtNewlinesOutsideQuotes() throws CLIParsedException {
+		String input = "# comment\n\na 'b\nc'\n  d\n";
+		List<List<String>> lines = new ArrayList<>();
+		ShellTokenizer tokenizer = new ShellTokenizer();
+		int i = 0;
+		while (true) {
+			List<String> line = new ArrayList<>();
+			i = tokenizer.tokenizeLine(input, i, input.length(), (s, from, to) -> line.add(s.subSequence(from, to).toString()));
+			if (i < 0)
+				break;
+			lines.add(line);
+		}
+		assertEquals(List.of(List.of("a", "b\nc"), List.of("d")), lines);
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SourcesTest {
+
+	@TempDir
+	Path dir;
+
+	private CLIGrammar grammar(String config) throws IOException {
+		Path file = dir.resolve("tool.properties");
+		if (config != null)
+			Files.write(file, config.getBytes(StandardCharsets.UTF_8));
+		CLIRules rules = new CLIRules(null);
+		rules.setConfigFile(file);
+		rules.addRequired("password", "p").fromEnv("DB_PASSWORD").fromConfig("db.password").hideValue();
+		rules.addOptional("threads", "4").asInt().fromEnv("THREADS").fromConfig("threads");
+		rules.addOptional("user", null).fromConfig("user");
+		return rules.compile();
+	}
+
+	private static List<CLIDiagnostic.Kind> kinds(CLIParseResult r) {
+		return r.getDiagnostics().stream().map(CLIDiagnostic::getKind).collect(Collectors.toList());
+	}
+
+	@Test
+	void commandLineWinsOverEnvironmentOverConfig() throws Exception {
+		CLIGrammar g = grammar("db.password=fromconfig\nthreads=2\nuser=amy\n");
+		Map<String, String> env = Map.of("DB_PASSWORD", "fromenv", "THREADS", "3");
+		CLIParsed parsed = new CLIParsed(g, new String[] { "-p", "given" }, env);
+		assertEquals("given", parsed.getArgument("password"));
+		assertEquals(3, parsed.getInt("threads"));
+		assertEquals("amy", parsed.getArgument("user"));
+
+		parsed = new CLIParsed(g, new String[0], env);
+		assertEquals("fromenv", parsed.getArgument("password"));
+
+		parsed = new CLIParsed(g, new String[0], Map.of());
+		assertEquals("fromconfig", parsed.getArgument("password"));
+		assertEquals(2, parsed.getInt("threads"));
+		assertFalse(parsed.wasParsed("password"));
+	}
+
+	@Test
+	void emptyEnvironmentVariableIsNotSet() throws Exception {
+		CLIGrammar g = grammar("db.password=fromconfig\n");
+		assertEquals("fromconfig",
+				new CLIParsed(g, new String[0], Map.of("DB_PASSWORD", "")).getArgument("password"));
+	}
+
+	@Test
+	void defaultWithoutSources() throws Exception {
+		CLIParsed parsed = new CLIParsed(grammar(null), new String[0], Map.of("DB_PASSWORD", "x"));
+		assertEquals(4, parsed.getInt("threads"));
+		assertNull(parsed.getArgument("user"));
+	}
+
+	@Test
+	void missingMandatoryWithoutSource() throws Exception {
+		CLIParseResult r = new CLIParsed(grammar(null), Map.of()).tryParse(new String[0]);
+		assertEquals(List.of(CLIDiagnostic.Kind.MISSING_MANDATORY), kinds(r));
+	}
+
+	@Test
+	void invalidSourceValueIsAParseProblem() throws Exception {
+		CLIGrammar g = grammar("threads=many\n");
+		CLIParseResult r = new CLIParsed(g, Map.of("DB_PASSWORD", "x")).tryParse(new String[0]);
+		assertFalse(r.isOk());
+		assertEquals("threads", r.getDiagnostics().get(0).getParameter());
+
+		r = new CLIParsed(g, Map.of("DB_PASSWORD", "x", "THREADS", "x")).tryParse(new String[0]);
+		assertFalse(r.isOk());
+		assertTrue(new CLIParsed(g, Map.of("DB_PASSWORD", "x")).tryParse(new String[] { "--threads", "1" }).isOk());
+	}
+
+	@Test
+	void unreadableConfigIsAParseProblem() throws Exception {
+		Files.createDirectory(dir.resolve("tool.properties"));
+		CLIParseResult r = new CLIParsed(grammar(null), Map.of()).tryParse(new String[0]);
+		assertFalse(r.isOk());
+		assertTrue(kinds(r).contains(CLIDiagnostic.Kind.INVALID_VALUE), r.getMessage());
+	}
+
+	@Test
+	void configIsReadOncePerGrammar() throws Exception {
+		CLIGrammar g = grammar("user=amy\ndb.password=x\n");
+		assertEquals("amy", new CLIParsed(g, new String[0], Map.of()).getArgument("user"));
+		Files.write(dir.resolve("tool.properties"), "user=bob\ndb.password=x\n".getBytes(StandardCharsets.UTF_8));
+		assertEquals("amy", new CLIParsed(g, new String[0], Map.of()).getArgument("user"));
+		assertEquals("bob", new CLIParsed(grammar(null), new String[0], Map.of()).getArgument("user"));
+	}
+
+	@Test
+	void sourcesAreNotKeptBetweenParses() throws Exception {
+		CLIParsed parsed = new CLIParsed(grammar(null), Map.of("DB_PASSWORD", "x", "THREADS", "9"));
+		parsed.parse(new String[0]);
+		assertEquals(9, parsed.getInt("threads"));
+		parsed.parse(new String[] { "--threads", "1" });
+		assertEquals(1, parsed.getInt("threads"));
+	}
+
+	@Test
+	void helpNamesTheEnvironmentVariable() throws Exception {
+		String help = grammar(null).getRules().renderHelp("password", "threads");
+		assertTrue(help.contains("(env DB_PASSWORD)"), help);
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Author Christian Gausepohl
+ * License: CC0 (no copyright if possible, otherwise fallback to public domain)
+ * https://github.com/cgausepohl/gcli
+ */
+package com.cg.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TypedAccessTest {
+
+	enum Level {
+		LOW, HIGH
+	}
+
+	private static CLIGrammar grammar() {
+		CLIRules rules = new CLIRules(null);
+		rules.addOptional("count", "7").asInt();
+		rules.addOptional("size", null).asLong();
+		rules.addOptional("ratio", "0.5").asDouble();
+		rules.addOptional("timeout", "30s").asDuration();
+		rules.addOptional("dir", null).asPath();
+		rules.addOptional("level", null).asEnum(Level.class);
+		rules.addOptional("name", null);
+		rules.addFlag("force");
+		return rules.compile();
+	}
+
+	private static CLIParsed parse(String... args) throws CLIParsedException {
+		return new CLIParsed(grammar(), args);
+	}
+
+	private static CLIDiagnostic.Kind problem(String... args) {
+		CLIParseResult r = new CLIParsed(grammar()).tryParse(args);
+		assertEquals(1, r.getDiagnostics().size(), r.getMessage());
+		return r.getDiagnostics().get(0).getKind();
+	}
+
+	@Test
+	void convertedArguments() throws CLIParsedException {
+		CLIParsed parsed = parse("--count", "-3", "--size", "5000000000", "--ratio", "1e3", "--timeout", "500ms",
+				"--dir", "/tmp/x", "--level", "high");
+		assertEquals(-3, parsed.getInt("count"));
+		assertEquals(-3L, parsed.getLong("count"));
+		assertEquals(5000000000L, parsed.getLong("size"));
+		assertEquals(1000.0, parsed.getDouble("ratio"));
+		assertEquals(5e9, parsed.getDouble("size"));
+		assertEquals(Duration.ofMillis(500), parsed.getDuration("timeout"));
+		assertEquals(Paths.get("/tmp/x"), parsed.getPath("dir"));
+		assertEquals(Level.HIGH, parsed.getEnum("level", Level.class));
+	}
+
+	@Test
+	void durationUnits() throws CLIParsedException {
+		for (String[] d : new String[][] { { "30s", "PT30S" }, { "5m", "PT5M" }, { "2h", "PT2H" }, { "1d", "PT24H" },
+				{ "PT1M30S", "PT1M30S" } })
+			assertEquals(Duration.parse(d[1]), parse("--timeout", d[0]).getDuration("timeout"), d[0]);
+	}
+
+	@Test
+	void defaults() throws CLIParsedException {
+		CLIParsed parsed = parse();
+		assertEquals(7, parsed.getInt("count"));
+		assertEquals(0.5, parsed.getDouble("ratio"));
+		assertEquals(Duration.ofSeconds(30), parsed.getDuration("timeout"));
+		assertNull(parsed.getPath("dir"));
+		assertNull(parsed.getEnum("level", Level.class));
+		assertThrows(IllegalStateException.class, () -> parsed.getLong("size"));
+		assertNull(parsed.getIntegerArgument("size"));
+	}
+
+	@Test
+	void invalidArgumentsAreParseProblems() {
+		assertEquals(CLIDiagnostic.Kind.INVALID_FORMAT, problem("--count", "x"));
+		assertEquals(CLIDiagnostic.Kind.INVALID_FORMAT, problem("--count", "3000000000"));
+		assertEquals(CLIDiagnostic.Kind.INVALID_FORMAT, problem("--size", "1.5"));
+		assertEquals(CLIDiagnostic.Kind.INVALID_FORMAT, problem("--ratio", "half"));
+		assertEquals(CLIDiagnostic.Kind.INVALID_FORMAT, problem("--timeout", "soon"));
+		assertEquals(CLIDiagnostic.Kind.INVALID_VALUE, problem("--level", "medium"));
+	}
+
+	@Test
+	void wrongAccessorIsRejected() throws CLIParsedException {
+		CLIParsed parsed = parse("--name", "x", "--size", "1");
+		assertThrows(IllegalStateException.class, () -> parsed.getInt("size"));
+		assertThrows(IllegalStateException.class, () -> parsed.getLong("name"));
+		assertThrows(IllegalStateException.class, () -> parsed.getDuration("dir"));
+		assertThrows(IllegalArgumentException.class, () -> parsed.getInt("nope"));
+		assertThrows(IllegalStateException.class, () -> parsed.getArgument("force"));
+	}
+
+	@Test
+	void integerArgumentIsNotTruncated() throws CLIParsedException {
+		assertEquals(12, parse("--size", "12").getIntegerArgument("size"));
+		assertEquals(-3, parse("--count", "-3").getIntegerArgument("count"));
+		CLIParsed parsed = parse("--size", "5000000000");
+		assertThrows(IllegalStateException.class, () -> parsed.getIntegerArgument("size"));
+	}
+
+	@Test
+	void rangeIsChecked() {
+		CLIRules rules = new CLIRules(null);
+		rules.addOptional("threads", null).setMinValue(1).setMaxValue(8);
+		CLIParseResult r = new CLIParsed(rules.compile()).tryParse(new String[] { "--threads", "9" });
+		assertEquals(CLIDiagnostic.Kind.OUT_OF_RANGE, r.getDiagnostics().get(0).getKind());
+		assertEquals(Parameter.Type.LONG, rules.compile().get("threads").getType());
+	}
+
+	@Test
+	void flagsCannotHaveARangeOrAType() {
+		CLIRules rules = new CLIRules(null);
+		Parameter force = rules.addFlag("force");
+		assertThrows(IllegalStateException.class, () -> force.setMinValue(1));
+		assertThrows(IllegalStateException.class, () -> force.setMaxValue(1));
+		assertThrows(IllegalStateException.class, force::asInt);
+		assertThrows(IllegalStateException.class, () -> force.asEnum(Level.class));
+		assertEquals(Parameter.Type.STRING, force.getType());
+		assertNull(force.getEnumType());
+	}
+
+	@Test
+	void rejectedEnumLeavesTheParameterUnchanged() {
+		CLIRules rules = new CLIRules(null);
+		Parameter tag = rules.addOptional("tag", null).repeatable();
+		assertThrows(IllegalStateException.class, () -> tag.asEnum(Level.class));
+		assertEquals(Parameter.Type.STRING, tag.getType());
+		assertNull(tag.getEnumType());
+		CLIParsed parsed = new CLIParsed(rules.compile());
+		assertEquals(List.of(), parsed.tryParse(new String[] { "--tag", "x" }).getDiagnostics());
+	}
+}